@@ -0,0 +1,32 @@
+package com.example.redislock.api.lock;
+
+import lombok.Data;
+
+/**
+ * Represents a lock currently held in Redis.
+ */
+@Data
+public class HeldLock {
+    /**
+     * The full Redis key of the lock, including its prefix.
+     */
+    private String key;
+
+    /**
+     * The id of the node holding the lock.
+     */
+    private String owner;
+
+    /**
+     * The id of the session the lock belongs to, null unless taken with the {@code redis-session} backend.
+     */
+    private String session;
+
+    /**
+     * The remaining time to live of the lock in milliseconds.
+     * <p>
+     * A value of -1 means the lock never expires.
+     * </p>
+     */
+    private long ttl;
+}
@@ -0,0 +1,24 @@
+package com.example.redislock.api.lock;
+
+import lombok.Data;
+
+/**
+ * Represents a lock key with its estimated contention.
+ */
+@Data
+public class HotKey {
+    /**
+     * The full key of the lock, including its prefix.
+     */
+    private String key;
+
+    /**
+     * Estimated number of acquisitions that found the lock held by someone else.
+     */
+    private long contended;
+
+    /**
+     * Estimated number of acquisitions that failed with an error.
+     */
+    private long failed;
+}
@@ -0,0 +1,19 @@
+package com.example.redislock.api.lock;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+/**
+ * Rate Limitable Interface
+ * <p> You need to implement the `getRateLimitKey` method in the request
+ * to define whose rate is limited, e.g. the customer.
+ */
+public interface IRateLimitable {
+
+    /**
+     * This method should be implemented to provide the rate limit key.
+     *
+     * @return the rate limit key as a String, blank to not limit the request
+     */
+    @JsonIgnore
+    String getRateLimitKey();
+}
@@ -1,5 +1,8 @@
 package com.example.redislock.api.lock;
 
+import com.example.redislock.utils.ConflictPolicy;
+import com.example.redislock.utils.DegradePolicy;
+import com.example.redislock.utils.LockMode;
 import lombok.Data;
 
 /**
@@ -23,4 +26,30 @@ public class LockKey {
      * </p>
      */
     private int timeout;
+
+    /**
+     * What the lock does while the lock backend is unavailable.
+     */
+    private DegradePolicy degrade = DegradePolicy.FAIL_CLOSED;
+
+    /**
+     * Maximum wait for the lock in milliseconds, 0 fails at once if it is held.
+     * Only asynchronous endpoints wait, see {@link com.example.redislock.aspect.paramter.RedisLockCheck#waitTimeout()}.
+     */
+    private int waitTimeout;
+
+    /**
+     * Whether the key is locked, or its version is checked when the work is done.
+     */
+    private LockMode mode = LockMode.PESSIMISTIC;
+
+    /**
+     * What an optimistic request does when the version changed while it ran.
+     */
+    private ConflictPolicy onConflict = ConflictPolicy.REJECT;
+
+    /**
+     * Maximum number of reruns of an optimistic request with {@link ConflictPolicy#RETRY}.
+     */
+    private int retries;
 }
@@ -1,14 +1,17 @@
 package com.example.redislock.api.order;
 
 import com.example.redislock.api.lock.ILockable;
+import com.example.redislock.api.lock.IRateLimitable;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import io.swagger.annotations.ApiModelProperty;
 import jakarta.validation.constraints.NotBlank;
+import lombok.Data;
 
 /**
  * This class represents the request to submit an order.
  */
-public class SubmitOrderReq implements ILockable {
+@Data
+public class SubmitOrderReq implements ILockable, IRateLimitable {
 
     /**
      * The ID of the order to be modified.
@@ -17,6 +20,12 @@ public class SubmitOrderReq implements ILockable {
     @NotBlank
     private String orderId;
 
+    /**
+     * The ID of the customer submitting the order.
+     */
+    @ApiModelProperty("The ID of the customer submitting the order.")
+    private String customerId;
+
     /**
      * Remark for the order.
      */
@@ -33,4 +42,15 @@ public class SubmitOrderReq implements ILockable {
     public String getLockKey() {
         return orderId;
     }
-}
\ No newline at end of file
+
+    /**
+     * Gets the rate limit key which is the customer ID.
+     *
+     * @return the customer ID as the rate limit key.
+     */
+    @Override
+    @JsonIgnore
+    public String getRateLimitKey() {
+        return customerId;
+    }
+}
@@ -1,5 +1,7 @@
 package com.example.redislock.aspect.any;
 
+import com.example.redislock.utils.DegradePolicy;
+
 import java.lang.annotation.ElementType;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
@@ -40,4 +42,25 @@ public @interface RedisLock {
      * @return the time unit as a {@code TimeUnit}
      */
     TimeUnit timeUnit() default TimeUnit.SECONDS; // Default time unit is seconds
+
+    /**
+     * Whether triggers arriving while the method runs are coalesced instead of rejected.
+     * <p> A trigger that finds the lock held marks it dirty and returns {@code null} at once,
+     * the current holder (on any node) runs the method exactly once more before releasing the lock.
+     * Any number of triggers during a run collapse into at most one follow-up run.
+     * Intended for {@code void} methods such as synchronization jobs.
+     * A trigger that finds Redis failing runs once under the {@link #degrade()} policy instead of being dropped.
+     * Default value is {@code false}: a trigger finding the lock held fails with a {@code BizError}.
+     *
+     * @return whether triggers are coalesced
+     */
+    boolean coalesce() default false;
+
+    /**
+     * What the lock does while Redis is unavailable, i.e. the circuit breaker is open.
+     * Default value is {@code DegradePolicy.FAIL_CLOSED}: the lock fails at once with a {@code BizError}.
+     *
+     * @return the degrade policy as a {@code DegradePolicy}
+     */
+    DegradePolicy degrade() default DegradePolicy.FAIL_CLOSED;
 }
\ No newline at end of file
@@ -1,7 +1,10 @@
 package com.example.redislock.aspect.any;
 
 import com.example.redislock.service.lock.base.LockService;
+import com.example.redislock.utils.AcquireResult;
+import com.example.redislock.utils.DegradePolicy;
 import com.example.redislock.utils.errorinfo.ErrorCodes;
+import com.example.redislock.utils.jfr.LockContentionEvent;
 import com.example.redislock.utils.exception.BizError;
 import org.aspectj.lang.ProceedingJoinPoint;
 import org.aspectj.lang.annotation.Around;
@@ -42,15 +45,61 @@ public class RedisLockAspect {
         int timeout = redisLock.timeout();
         TimeUnit timeUnit = redisLock.timeUnit();
 
-        boolean locked = lockService.lock(key, (int) timeUnit.toSeconds(timeout));
-        if (!locked) {
+        if (redisLock.coalesce()) {
+            return coalesce(joinPoint, key, (int) timeUnit.toSeconds(timeout), redisLock.degrade());
+        }
+
+        LockService.LockHandle handle = lockService.lock(key, (int) timeUnit.toSeconds(timeout), redisLock.degrade());
+        if (handle == null) {
+            LockContentionEvent.emit(key, "@RedisLock", signature);
             throw new BizError(ErrorCodes.FAIL, "Unable to acquire lock");
         }
 
         try {
             return joinPoint.proceed();
         } finally {
-            lockService.unlock(key);
+            lockService.unlock(handle);
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Run the method, or mark the lock dirty if it is running elsewhere.
+     * <p> The holder runs the method again as long as triggers arrived during the previous run.
+     * If the method fails the lock is released, a pending trigger then runs on its next occurrence.
+     * <p> If the backend failed, no dirty mark is known to be set: the trigger runs once under the degrade policy,
+     * or fails with a {@link BizError}, instead of being dropped.
+     */
+    private Object coalesce(ProceedingJoinPoint joinPoint, String key, int timeout, DegradePolicy policy) throws Throwable {
+        AcquireResult acquired = lockService.tryLockOrMarkDirty(key, timeout);
+        if (acquired.status() == AcquireResult.Status.CONTENDED) {
+            // The current holder runs once more for this trigger
+            LockContentionEvent.emit(key, "@RedisLock(coalesce)", joinPoint.getSignature());
+            return null;
+        }
+        if (acquired.status() == AcquireResult.Status.ERROR) {
+            LockService.LockHandle handle = lockService.degrade(key, timeout, policy);
+            if (handle == null) {
+                throw new BizError(ErrorCodes.FAIL, "Unable to acquire lock");
+            }
+            try {
+                return joinPoint.proceed();
+            } finally {
+                lockService.unlock(handle);
+            }
+        }
+
+        Object result;
+        do {
+            boolean completed = false;
+            try {
+                result = joinPoint.proceed();
+                completed = true;
+            } finally {
+                if (!completed) {
+                    lockService.unlock(key);
+                }
+            }
+        } while (lockService.unlockUnlessDirty(key, timeout));
+        return result;
+    }
+}
@@ -0,0 +1,51 @@
+package com.example.redislock.aspect.any;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Annotation for scheduled tasks that should run once per cluster.
+ *
+ * <p>Every node fires the task, the first node to acquire the lock runs it, the others skip the tick silently.
+ * The lock is held for at least {@code lockAtLeastFor}, so a fast task is not run again by a node
+ * whose clock fires slightly later, and for at most {@code lockAtMostFor}, so a dead node does not block the task.
+ * </p>
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface ScheduledLock {
+
+    /**
+     * The key used for the Redis lock, unique per task.
+     *
+     * @return the key as a {@code String}
+     */
+    String key();
+
+    /**
+     * How long the lock is held at most in the specified {@code timeUnit}, should exceed the run time of the task.
+     * Default value is 600 seconds.
+     *
+     * @return the maximum hold time as a {@code long}
+     */
+    long lockAtMostFor() default 600;
+
+    /**
+     * How long the lock is held at least in the specified {@code timeUnit}, should cover the clock skew between nodes.
+     * Default value is 0, the lock is released as soon as the task ends.
+     *
+     * @return the minimum hold time as a {@code long}
+     */
+    long lockAtLeastFor() default 0;
+
+    /**
+     * The time unit for the hold times.
+     * Default value is {@code TimeUnit.SECONDS}.
+     *
+     * @return the time unit as a {@code TimeUnit}
+     */
+    TimeUnit timeUnit() default TimeUnit.SECONDS;
+}
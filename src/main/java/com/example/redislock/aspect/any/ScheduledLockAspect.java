@@ -0,0 +1,60 @@
+package com.example.redislock.aspect.any;
+
+import com.example.redislock.service.lock.base.LockService;
+import com.example.redislock.utils.jfr.LockContentionEvent;
+import lombok.extern.slf4j.Slf4j;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Aspect running scheduled tasks once per cluster.
+ * <p> Each tick costs one SET NX per node, plus one script call on the winning node when the task ends.
+ */
+@Slf4j
+@Order(99)
+@Aspect
+@Component
+public class ScheduledLockAspect {
+
+    @Autowired
+    private LockService lockService;
+
+    /**
+     * Around advice for methods annotated with {@link ScheduledLock}.
+     * If the lock is held by another node, the tick is skipped and {@code null} is returned.
+     *
+     * @param joinPoint the join point representing the annotated method
+     * @return the result of the method execution
+     * @throws Throwable if an error occurs during method execution
+     */
+    @Around("@annotation(ScheduledLock)")
+    public Object around(ProceedingJoinPoint joinPoint) throws Throwable {
+        MethodSignature signature = (MethodSignature) joinPoint.getSignature();
+        ScheduledLock scheduledLock = signature.getMethod().getAnnotation(ScheduledLock.class);
+
+        String key = scheduledLock.key();
+        Duration lockAtMostFor = Duration.of(scheduledLock.lockAtMostFor(), scheduledLock.timeUnit().toChronoUnit());
+        Duration lockAtLeastFor = Duration.of(scheduledLock.lockAtLeastFor(), scheduledLock.timeUnit().toChronoUnit());
+
+        long start = System.nanoTime();
+        if (!lockService.lockAtMostFor(key, lockAtMostFor)) {
+            log.debug("Scheduled task {} is running on another node, skipped", key);
+            LockContentionEvent.emit(key, "@ScheduledLock", signature);
+            return null;
+        }
+
+        try {
+            return joinPoint.proceed();
+        } finally {
+            // Keep the lock until the minimum hold time has passed, Redis releases it then
+            lockService.unlockAfter(key, lockAtLeastFor.minusNanos(System.nanoTime() - start));
+        }
+    }
+}
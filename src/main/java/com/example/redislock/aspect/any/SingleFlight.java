@@ -0,0 +1,66 @@
+package com.example.redislock.aspect.any;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Annotation for expensive methods whose result is computed once in the cluster and shared.
+ *
+ * <p>The result is stored in Redis as JSON for {@code ttl}. While it is stored every call on
+ * every node returns it without running the method. When it is missing, one caller in the cluster
+ * runs the method under a load lock and publishes the result, concurrent callers on any node wait
+ * for it and read the shared result.
+ * </p>
+ * <p>The cache key is {@code key} followed by the value of {@code keyExpression} if set, otherwise by the lock keys
+ * of the arguments, which must then all be {@code ILockable}. Any other argument is rejected, its string value
+ * may differ between equal arguments or between nodes. The result must be serializable to JSON.
+ * </p>
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface SingleFlight {
+
+    /**
+     * The name of the shared value, prefix of its cache key.
+     *
+     * @return the key as a {@code String}
+     */
+    String key();
+
+    /**
+     * SpEL expression evaluated against the arguments, by name such as {@code #customerId} or by position
+     * such as {@code #p0}, appended to the cache key.
+     * Default value is empty, the arguments must then be {@code ILockable}.
+     *
+     * @return the key expression as a {@code String}
+     */
+    String keyExpression() default "";
+
+    /**
+     * How long the result is stored in the specified {@code timeUnit}.
+     * Default value is 60 seconds.
+     *
+     * @return the time to live as an {@code int}
+     */
+    int ttl() default 60;
+
+    /**
+     * Maximum wait for the result computed by another caller in the specified {@code timeUnit},
+     * also the lease of the load lock. A caller waiting longer runs the method itself.
+     * Default value is 30 seconds.
+     *
+     * @return the timeout as an {@code int}
+     */
+    int timeout() default 30;
+
+    /**
+     * The time unit for the time to live and the timeout.
+     * Default value is {@code TimeUnit.SECONDS}.
+     *
+     * @return the time unit as a {@code TimeUnit}
+     */
+    TimeUnit timeUnit() default TimeUnit.SECONDS;
+}
@@ -0,0 +1,98 @@
+package com.example.redislock.aspect.any;
+
+import com.example.redislock.api.lock.ILockable;
+import com.example.redislock.utils.SingleFlightLoader;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.expression.MethodBasedEvaluationContext;
+import org.springframework.core.DefaultParameterNameDiscoverer;
+import org.springframework.core.ParameterNameDiscoverer;
+import org.springframework.core.annotation.Order;
+import org.springframework.expression.EvaluationContext;
+import org.springframework.expression.Expression;
+import org.springframework.expression.ExpressionParser;
+import org.springframework.expression.spel.standard.SpelExpressionParser;
+import org.springframework.stereotype.Component;
+import tools.jackson.databind.JavaType;
+import tools.jackson.databind.ObjectMapper;
+
+import java.lang.reflect.Method;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Aspect for cluster-wide single-flight loading.
+ * <p> Ensures that the result of a method annotated with {@link SingleFlight} is computed once in the cluster
+ * while it is missing, and shared with every concurrent and later caller until it expires.
+ */
+@Order(98)
+@Aspect
+@Component
+public class SingleFlightAspect {
+
+    private static final ExpressionParser PARSER = new SpelExpressionParser();
+
+    private static final ParameterNameDiscoverer PARAMETER_NAMES = new DefaultParameterNameDiscoverer();
+
+    @Autowired
+    private SingleFlightLoader loader;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    /**
+     * Parsed key expressions, by their source
+     */
+    private final Map<String, Expression> expressions = new ConcurrentHashMap<>();
+
+    /**
+     * Around advice that loads the result of methods annotated with {@link SingleFlight} through the
+     * {@link SingleFlightLoader}, the method runs only if this caller computes the shared value.
+     *
+     * @param joinPoint the join point representing the annotated method
+     * @return the shared result
+     * @throws Throwable if an error occurs during method execution
+     */
+    @Around("@annotation(SingleFlight)")
+    public Object around(ProceedingJoinPoint joinPoint) throws Throwable {
+        MethodSignature signature = (MethodSignature) joinPoint.getSignature();
+        Method method = signature.getMethod();
+        SingleFlight singleFlight = method.getAnnotation(SingleFlight.class);
+
+        TimeUnit timeUnit = singleFlight.timeUnit();
+        Duration ttl = Duration.of(singleFlight.ttl(), timeUnit.toChronoUnit());
+        Duration timeout = Duration.of(singleFlight.timeout(), timeUnit.toChronoUnit());
+        JavaType type = objectMapper.getTypeFactory().constructType(method.getGenericReturnType());
+
+        String json = loader.load(toKey(singleFlight, method, joinPoint.getArgs()), ttl, timeout,
+                () -> objectMapper.writeValueAsString(joinPoint.proceed()));
+        return objectMapper.readValue(json, type);
+    }
+
+    /**
+     * Build the cache key, from the key expression if set, otherwise from the lock keys of the arguments
+     *
+     * @throws IllegalArgumentException if there is no key expression and an argument is not {@link ILockable}
+     */
+    String toKey(SingleFlight singleFlight, Method method, Object[] args) {
+        StringBuilder key = new StringBuilder(singleFlight.key());
+        if (!singleFlight.keyExpression().isEmpty()) {
+            Expression expression = expressions.computeIfAbsent(singleFlight.keyExpression(), PARSER::parseExpression);
+            EvaluationContext context = new MethodBasedEvaluationContext(null, method, args, PARAMETER_NAMES);
+            return key.append(':').append(expression.getValue(context, String.class)).toString();
+        }
+        for (Object arg : args) {
+            if (!(arg instanceof ILockable lockable)) {
+                throw new IllegalArgumentException("@SingleFlight " + method.getName()
+                        + " needs a keyExpression, argument is not ILockable: " + (arg == null ? null : arg.getClass().getName()));
+            }
+            key.append(':').append(lockable.getLockKey());
+        }
+        return key.toString();
+    }
+}
@@ -0,0 +1,149 @@
+package com.example.redislock.aspect.paramter;
+
+import com.example.redislock.config.RedisLockProperties;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Makes the body of JSON requests readable twice
+ * <p> Nothing is buffered up front: only when {@link LockKeyInterceptor} asks for the body of a handler with a
+ * {@code keyPath}, a body of known length up to {@code redis-lock.early-lock.max-body-size} is read into memory,
+ * the lock key is stream-parsed from it, then the message converter binds the request from the same bytes.
+ * Other requests, and larger or chunked bodies, are read from the original stream.
+ */
+@Component
+public class CachedBodyFilter extends OncePerRequestFilter {
+
+    private final int maxBodySize;
+
+    public CachedBodyFilter(RedisLockProperties properties) {
+        this.maxBodySize = properties.getEarlyLock().getMaxBodySize();
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        if (!isJson(request)) {
+            chain.doFilter(request, response);
+            return;
+        }
+        chain.doFilter(new CachedBodyRequest(request, maxBodySize), response);
+    }
+
+    private static boolean isJson(HttpServletRequest request) {
+        String contentType = request.getContentType();
+        if (contentType == null) {
+            return false;
+        }
+        try {
+            return MediaType.APPLICATION_JSON.isCompatibleWith(MediaType.parseMediaType(contentType));
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Request whose body is read into memory on demand, and then served from memory as often as it is read
+     */
+    public static class CachedBodyRequest extends HttpServletRequestWrapper {
+        private final int maxBodySize;
+        private byte[] body;
+        private boolean streamed;
+
+        private CachedBodyRequest(HttpServletRequest request, int maxBodySize) {
+            super(request);
+            this.maxBodySize = maxBodySize;
+        }
+
+        /**
+         * Get the raw body, read into memory on the first call
+         *
+         * @return the body bytes, null if the body is too large, of unknown length, or already read from the stream
+         * @throws IOException if the body cannot be read
+         */
+        public byte[] getBody() throws IOException {
+            if (body != null) {
+                return body;
+            }
+            long length = super.getContentLengthLong();
+            if (streamed || length < 0 || length > maxBodySize) {
+                return null;
+            }
+            byte[] read = super.getInputStream().readNBytes((int) length);
+            if (read.length < length) {
+                throw new EOFException("Request body shorter than its content length");
+            }
+            body = read;
+            return body;
+        }
+
+        @Override
+        public ServletInputStream getInputStream() throws IOException {
+            if (body == null) {
+                streamed = true;
+                return super.getInputStream();
+            }
+            ByteArrayInputStream in = new ByteArrayInputStream(body);
+            return new ServletInputStream() {
+                @Override
+                public boolean isFinished() {
+                    return in.available() == 0;
+                }
+
+                @Override
+                public boolean isReady() {
+                    return true;
+                }
+
+                @Override
+                public void setReadListener(ReadListener listener) {
+                    // All data is in memory, available at once
+                    try {
+                        if (!isFinished()) {
+                            listener.onDataAvailable();
+                        }
+                        listener.onAllDataRead();
+                    } catch (IOException e) {
+                        listener.onError(e);
+                    }
+                }
+
+                @Override
+                public int read() {
+                    return in.read();
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) {
+                    return in.read(b, off, len);
+                }
+            };
+        }
+
+        @Override
+        public BufferedReader getReader() throws IOException {
+            if (body == null) {
+                streamed = true;
+                return super.getReader();
+            }
+            Charset charset = getCharacterEncoding() == null ? StandardCharsets.UTF_8 : Charset.forName(getCharacterEncoding());
+            return new BufferedReader(new InputStreamReader(getInputStream(), charset));
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.example.redislock.aspect.paramter;
+
+import com.example.redislock.service.ratelimit.RateLimitCheckService;
+import lombok.extern.slf4j.Slf4j;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.annotation.Pointcut;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+/**
+ * Aspect to handle rate limiting, runs before the lock of {@link ControllerRedisLockAspect}
+ */
+@Aspect
+@Component
+@Order(98)
+@Slf4j
+public class ControllerRateLimitAspect {
+
+    @Autowired
+    private RateLimitCheckService rateLimitService;
+
+    @Pointcut("execution(* com.example.redislock..controller.*Controller.*(..))")
+    public void controllerCheckPointcut() {
+        // Pointcut for controller methods
+    }
+
+    /**
+     * Checks the rate limit of business process
+     *
+     * @param joinPoint the join point representing the method being intercepted
+     * @return the result of the intercepted method
+     * @throws Throwable if an error occurs during method execution
+     */
+    @Around("controllerCheckPointcut()")
+    public Object doCheck(ProceedingJoinPoint joinPoint) throws Throwable {
+        return rateLimitService.doCheck(joinPoint);
+    }
+}
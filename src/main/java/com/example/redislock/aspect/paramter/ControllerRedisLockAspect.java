@@ -12,6 +12,10 @@ import org.springframework.stereotype.Component;
 
 /**
  * Aspect to handle locking
+ * <p> Runs around every method of a {@code *Controller} class in any {@code controller} package below
+ * {@code com.example.redislock}, but only locks a first parameter annotated with {@link RedisLockCheck}
+ * that implements {@code ILockable}; any other method proceeds without a Redis call.
+ * <p> A request already locked by {@link LockKeyInterceptor} proceeds without a second lock on the same key.
  */
 @Aspect
 @Component
@@ -22,7 +26,7 @@ public class ControllerRedisLockAspect {
     @Autowired
     private RedisLockCheckService lockService;
 
-    @Pointcut("execution(* com.example.redislock.*.controller.*Controller.*(..))")
+    @Pointcut("execution(* com.example.redislock..controller.*Controller.*(..))")
     public void controllerCheckPointcut() {
         // Pointcut for controller methods
     }
@@ -0,0 +1,178 @@
+package com.example.redislock.aspect.paramter;
+
+import com.example.redislock.api.lock.LockKey;
+import com.example.redislock.service.lock.RedisLockCheckService;
+import com.example.redislock.service.ratelimit.RateLimitCheckService;
+import com.example.redislock.utils.AcquireResult;
+import com.example.redislock.utils.LockMode;
+import com.example.redislock.utils.RateLimitResult;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.MethodParameter;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.util.WebUtils;
+import tools.jackson.core.JacksonException;
+import tools.jackson.core.JsonParser;
+import tools.jackson.core.JsonToken;
+import tools.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Takes the lock of {@link RedisLockCheck} parameters with a {@code keyPath} before the request body is bound
+ * <p> Only the tokens up to the key are parsed with a streaming parser, the rest of the body is skipped.
+ * A duplicate request is rejected before its body is deserialized and validated.
+ * <p> Requests whose body is not cached, e.g. larger than {@code redis-lock.early-lock.max-body-size},
+ * or without the key in the body fall back to the lock in {@link ControllerRedisLockAspect}.
+ * <p> The {@link RateLimitCheck} of the handler is checked before the lock, from its own {@code keyPath}, so a limited
+ * request never takes the lock. A handler whose rate limit key cannot be read from the body is left to the aspects.
+ */
+@Slf4j
+@Component
+public class LockKeyInterceptor implements HandlerInterceptor {
+
+    @Autowired
+    private RedisLockCheckService lockService;
+
+    @Autowired
+    private RateLimitCheckService rateLimitService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    /**
+     * Locked parameter with a key path per handler method, empty if there is none
+     */
+    private final Map<Method, Optional<MethodParameter>> lockedParameters = new ConcurrentHashMap<>();
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
+        if (!(handler instanceof HandlerMethod handlerMethod)) {
+            return true;
+        }
+        MethodParameter parameter = lockedParameters
+                .computeIfAbsent(handlerMethod.getMethod(), method -> findLockedParameter(handlerMethod))
+                .orElse(null);
+        if (parameter == null) {
+            return true;
+        }
+        CachedBodyFilter.CachedBodyRequest cached = WebUtils.getNativeRequest(request, CachedBodyFilter.CachedBodyRequest.class);
+        // Only handlers with a key path read the body into memory, too large bodies are left to the aspect
+        byte[] body = cached == null ? null : cached.getBody();
+        if (body == null) {
+            return true;
+        }
+
+        RedisLockCheck lockCheck = parameter.getParameterAnnotation(RedisLockCheck.class);
+        String key = extract(body, lockCheck.keyPath());
+        if (StringUtils.isBlank(key)) {
+            return true;
+        }
+
+        RateLimitCheck rateLimit = findRateLimit(handlerMethod);
+        if (rateLimit != null) {
+            String rateLimitKey = StringUtils.isBlank(rateLimit.keyPath()) ? null : extract(body, rateLimit.keyPath());
+            if (StringUtils.isBlank(rateLimitKey)) {
+                // The limit needs the bound request, the aspects check it before they lock
+                return true;
+            }
+            RateLimitResult limited = rateLimitService.checkEarly(request, rateLimitKey, rateLimit);
+            if (!limited.isAllowed()) {
+                writeJson(response, rateLimitService.reject(response, limited));
+                return false;
+            }
+        }
+
+        LockKey lockKey = lockService.toLockKey(key, lockCheck);
+        AcquireResult result = lockService.lockEarly(request, lockKey);
+        if (result.isAcquired()) {
+            return true;
+        }
+        writeJson(response, lockService.reject(response, result));
+        return false;
+    }
+
+    private void writeJson(HttpServletResponse response, Object body) throws IOException {
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        objectMapper.writeValue(response.getOutputStream(), body);
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        lockService.unlockEarly(request);
+    }
+
+    /**
+     * Stream-parse the value at the dot-separated path, without reading past it.
+     *
+     * @param body JSON body
+     * @param path dot-separated path of the value
+     * @return the value as text, or null if it is absent, not a scalar, or the body is malformed
+     */
+    String extract(byte[] body, String path) {
+        String[] names = path.split("\\.");
+        try (JsonParser parser = objectMapper.createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return null;
+            }
+            int depth = 0;
+            while (true) {
+                JsonToken token = parser.nextToken();
+                if (token != JsonToken.PROPERTY_NAME) {
+                    // End of the object holding the current name, the path is absent
+                    return null;
+                }
+                JsonToken value = parser.nextToken();
+                if (!names[depth].equals(parser.currentName())) {
+                    parser.skipChildren();
+                    continue;
+                }
+                if (depth == names.length - 1) {
+                    return value.isScalarValue() && value != JsonToken.VALUE_NULL ? parser.getValueAsString() : null;
+                }
+                if (value != JsonToken.START_OBJECT) {
+                    return null;
+                }
+                depth++;
+            }
+        } catch (JacksonException e) {
+            // Left to the message converter to report
+            log.debug("Failed to extract lock key {}: {}", path, e.getMessage());
+            return null;
+        }
+    }
+
+    private static RateLimitCheck findRateLimit(HandlerMethod handlerMethod) {
+        for (MethodParameter parameter : handlerMethod.getMethodParameters()) {
+            RateLimitCheck rateLimit = parameter.getParameterAnnotation(RateLimitCheck.class);
+            if (rateLimit != null) {
+                return rateLimit;
+            }
+        }
+        return null;
+    }
+
+    private static Optional<MethodParameter> findLockedParameter(HandlerMethod handlerMethod) {
+        for (MethodParameter parameter : handlerMethod.getMethodParameters()) {
+            RedisLockCheck lockCheck = parameter.getParameterAnnotation(RedisLockCheck.class);
+            // A waiting lock needs the async result of the handler, an optimistic key is not locked, both are left to the aspect
+            if (lockCheck != null && StringUtils.isNotBlank(lockCheck.keyPath()) && lockCheck.waitTimeout() <= 0
+                    && lockCheck.mode() == LockMode.PESSIMISTIC) {
+                return Optional.of(parameter);
+            }
+        }
+        return Optional.empty();
+    }
+}
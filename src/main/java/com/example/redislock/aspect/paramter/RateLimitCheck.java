@@ -0,0 +1,39 @@
+package com.example.redislock.aspect.paramter;
+
+import com.example.redislock.utils.DegradePolicy;
+import java.lang.annotation.*;
+
+/**
+ * Interface Rate Limiting
+ * <p> Caps the rate of the requests with the same {@link com.example.redislock.api.lock.IRateLimitable#getRateLimitKey()}
+ * across all nodes. A request over the rate is rejected with a {@code Retry-After} header.
+ * <p> NOTE: Applied on method parameters, thus only applicable to methods/interfaces with parameters.
+ */
+@Target(ElementType.PARAMETER)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface RateLimitCheck {
+    int rate() default 10; // Permits per period
+
+    int period() default 1000; // Default 1s
+
+    int burst() default 0; // Permits taken at once, 0 allows bursts of one period's rate
+
+    /**
+     * Number of permits a node takes from Redis at once and uses locally, 1 checks every request in Redis.
+     * <p> Saves the round trip of most requests on hot keys, at the cost of precision:
+     * a node may use its permits a little later than they were counted.
+     */
+    int localBatch() default 1;
+
+    DegradePolicy degrade() default DegradePolicy.FAIL_OPEN; // What to do while Redis is unavailable
+
+    /**
+     * Dot-separated path of the rate limit key in the JSON request body, e.g. {@code customerId}.
+     * <p> Needed next to a {@link RedisLockCheck#keyPath()}: the lock is then taken before the body is bound,
+     * and the rate limit has to be checked before it, so a limited request never takes the lock.
+     * Without it such a request is locked and limited by the aspects after binding, the limit first.
+     * The path must point at the same value as {@link com.example.redislock.api.lock.IRateLimitable#getRateLimitKey()}.
+     */
+    String keyPath() default "";
+}
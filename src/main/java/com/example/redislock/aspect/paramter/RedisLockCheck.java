@@ -1,6 +1,9 @@
 package com.example.redislock.aspect.paramter;
 
 import com.example.redislock.service.lock.RedisLockCheckService;
+import com.example.redislock.utils.ConflictPolicy;
+import com.example.redislock.utils.DegradePolicy;
+import com.example.redislock.utils.LockMode;
 import java.lang.annotation.*;
 
 /**
@@ -12,4 +15,41 @@ import java.lang.annotation.*;
 @Documented
 public @interface RedisLockCheck {
     int timeout() default RedisLockCheckService.TIME_OUT; // Default 10s
+
+    DegradePolicy degrade() default DegradePolicy.FAIL_CLOSED; // What to do while Redis is unavailable
+
+    /**
+     * Dot-separated path of the lock key in the JSON request body, e.g. {@code orderId} or {@code order.id}.
+     * <p> If set, the key is stream-parsed from the raw body and the lock is taken before the body is bound and validated,
+     * so duplicates are rejected without paying for the full deserialization.
+     * The path must point at the same value as {@link com.example.redislock.api.lock.ILockable#getLockKey()}.
+     * Ignored if a {@link #waitTimeout()} is set or in {@link LockMode#OPTIMISTIC} mode, the key is then handled by the aspect.
+     */
+    String keyPath() default "";
+
+    /**
+     * Maximum wait in milliseconds for a lock held by another request, 0 rejects the request at once.
+     * <p> Only for endpoints returning a {@link org.springframework.web.context.request.async.DeferredResult}
+     * or {@link java.util.concurrent.CompletionStage}: the request is put into async mode and resumed once the lock
+     * is released by its holder, without holding a servlet thread while it waits. The resumed handler runs
+     * on a lock wait thread, outside the request thread. Synchronous endpoints keep failing fast.
+     */
+    int waitTimeout() default 0;
+
+    /**
+     * Concurrency control of the endpoint.
+     * <p> {@link LockMode#PESSIMISTIC} (default) takes a lock around the handler: two Redis writes per request,
+     * concurrent requests are rejected or wait.
+     * <p> {@link LockMode#OPTIMISTIC} reads the version of the key and increments it if it is unchanged before
+     * the handler runs: one read and one write per request, concurrent requests never block each other,
+     * and all that read the same version but the first conflict without running, see {@link #onConflict()}.
+     * A request that claimed a later version may still run first, so the handler makes its write conditional on
+     * the version read, see {@link com.example.redislock.utils.OptimisticVersion#current()}. For low-contention endpoints.
+     * Async handlers are always locked.
+     */
+    LockMode mode() default LockMode.PESSIMISTIC;
+
+    ConflictPolicy onConflict() default ConflictPolicy.REJECT; // What an optimistic request does on a conflict
+
+    int retries() default 0; // Maximum further claims of an optimistic request with ConflictPolicy.RETRY, the handler runs once
 }
\ No newline at end of file
@@ -0,0 +1,32 @@
+package com.example.redislock.config;
+
+import com.example.redislock.utils.LockExecutors;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.AsyncConfigurer;
+import org.springframework.scheduling.annotation.EnableAsync;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Runs the @Async locked jobs, e.g. {@link com.example.redislock.service.timer.SyncService#sync()},
+ * on the lock executors, on virtual threads if enabled.
+ * <p> The executor is not a bean, so the auto-configured executor of Spring MVC async requests is kept.
+ * <p> The running jobs are awaited on shutdown before their locks are released, see
+ * {@link com.example.redislock.service.lock.LockShutdownService}.
+ */
+@Configuration
+@EnableAsync
+public class LockAsyncConfig implements AsyncConfigurer {
+
+    @Autowired
+    private LockExecutors lockExecutors;
+
+    @Autowired
+    private RedisLockProperties properties;
+
+    @Override
+    public Executor getAsyncExecutor() {
+        return lockExecutors.newJobExecutor("locked-job-", properties.getExecution().getAsyncThreads());
+    }
+}
@@ -0,0 +1,22 @@
+package com.example.redislock.config;
+
+import com.example.redislock.aspect.paramter.LockKeyInterceptor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+/**
+ * Web configuration of the request locks
+ */
+@Configuration
+public class LockWebConfig implements WebMvcConfigurer {
+
+    @Autowired
+    private LockKeyInterceptor lockKeyInterceptor;
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(lockKeyInterceptor);
+    }
+}
@@ -0,0 +1,223 @@
+package com.example.redislock.config;
+
+import com.example.redislock.utils.AsyncLockReleaser;
+import com.example.redislock.utils.LocalFallbackLocks;
+import com.example.redislock.utils.LocalLockBackend;
+import com.example.redislock.utils.LocalLockStore;
+import com.example.redislock.utils.LockBackendFactory;
+import com.example.redislock.utils.LockCircuitBreaker;
+import com.example.redislock.utils.LockCommandBatcher;
+import com.example.redislock.utils.LockExecutors;
+import com.example.redislock.utils.LockSession;
+import com.example.redislock.utils.LockWaitRegistry;
+import com.example.redislock.utils.RateLimiter;
+import com.example.redislock.utils.RedisLock;
+import com.example.redislock.utils.SingleFlightLoader;
+import com.example.redislock.utils.StripedRedisLock;
+import com.example.redislock.utils.Utils;
+import com.example.redislock.utils.VersionStore;
+import com.example.redislock.utils.journal.LockJournal;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Redis lock configuration
+ */
+@Configuration
+public class RedisLockConfig {
+
+    /**
+     * Distributed locks in Redis, the default backend.
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "redis-lock", name = "backend", havingValue = "redis", matchIfMissing = true)
+    public LockBackendFactory redisLockBackendFactory(StringRedisTemplate strRedis, ObjectProvider<LockCommandBatcher> batcher,
+                                                      ObjectProvider<LockCircuitBreaker> breaker) {
+        LockCommandBatcher lockCommandBatcher = batcher.getIfAvailable();
+        LockCircuitBreaker circuitBreaker = breaker.getIfAvailable();
+        return nodeId -> new RedisLock(nodeId, strRedis, lockCommandBatcher, circuitBreaker);
+    }
+
+    /**
+     * Session of this node, kept alive by a heartbeat and ended on shutdown.
+     */
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(prefix = "redis-lock", name = "backend", havingValue = "redis-session")
+    public LockSession lockSession(StringRedisTemplate strRedis, RedisLockProperties properties) {
+        RedisLockProperties.Session session = properties.getSession();
+        return new LockSession(strRedis, session.getKeyPrefix(), session.getTtl(), session.getHeartbeatInterval());
+    }
+
+    /**
+     * Distributed locks in Redis held as long as the session of this node lives.
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "redis-lock", name = "backend", havingValue = "redis-session")
+    public LockBackendFactory sessionLockBackendFactory(StringRedisTemplate strRedis, ObjectProvider<LockCommandBatcher> batcher,
+                                                        ObjectProvider<LockCircuitBreaker> breaker, LockSession session) {
+        LockCommandBatcher lockCommandBatcher = batcher.getIfAvailable();
+        LockCircuitBreaker circuitBreaker = breaker.getIfAvailable();
+        return nodeId -> new RedisLock(nodeId, strRedis, lockCommandBatcher, circuitBreaker, session);
+    }
+
+    /**
+     * Distributed locks as fields of striped Redis hashes, requires Redis 7.4+.
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "redis-lock", name = "backend", havingValue = "redis-striped")
+    public LockBackendFactory stripedLockBackendFactory(StringRedisTemplate strRedis, ObjectProvider<LockCommandBatcher> batcher,
+                                                        ObjectProvider<LockCircuitBreaker> breaker, RedisLockProperties properties) {
+        LockCommandBatcher lockCommandBatcher = batcher.getIfAvailable();
+        LockCircuitBreaker circuitBreaker = breaker.getIfAvailable();
+        RedisLockProperties.Striped striped = properties.getStriped();
+        return nodeId -> new StripedRedisLock(nodeId, strRedis, lockCommandBatcher, circuitBreaker,
+                striped.getBucketPrefix(), striped.getBuckets(), striped.getDigestThreshold());
+    }
+
+    /**
+     * In-process lock store for single-node deployments.
+     */
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(prefix = "redis-lock", name = "backend", havingValue = "local")
+    public LocalLockStore localLockStore(RedisLockProperties properties) {
+        RedisLockProperties.Local local = properties.getLocal();
+        return new LocalLockStore(local.getTick(), local.getWheelSize());
+    }
+
+    /**
+     * In-process locks, all lock services share the same store.
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "redis-lock", name = "backend", havingValue = "local")
+    public LockBackendFactory localLockBackendFactory(LocalLockStore store) {
+        return nodeId -> new LocalLockBackend(nodeId, store);
+    }
+
+    /**
+     * Batcher sharing pipeline flushes between the lock commands of concurrent threads.
+     */
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(prefix = "redis-lock.batch", name = "enabled", havingValue = "true")
+    public LockCommandBatcher lockCommandBatcher(StringRedisTemplate strRedis, RedisLockProperties properties) {
+        RedisLockProperties.Batch batch = properties.getBatch();
+        return new LockCommandBatcher(strRedis, batch.getMaxSize(), batch.getWindow(), batch.getQueueCapacity());
+    }
+
+    /**
+     * Circuit breaker shared by the Redis backends, rejects lock commands at once while Redis is degraded.
+     * <p> Off unless enabled: while it is open, the degrade policy decides whether locked work runs.
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "redis-lock.circuit-breaker", name = "enabled", havingValue = "true")
+    public LockCircuitBreaker lockCircuitBreaker(RedisLockProperties properties) {
+        RedisLockProperties.CircuitBreaker breaker = properties.getCircuitBreaker();
+        return new LockCircuitBreaker(breaker.getWindowSize(), breaker.getMinimumCalls(), breaker.getFailureRateThreshold(),
+                breaker.getSlowCallDuration(), breaker.getOpenDuration(), breaker.getHalfOpenProbes());
+    }
+
+    /**
+     * In-process locks taken by the {@code LOCAL} degrade policy while the backend is unavailable.
+     */
+    @Bean(destroyMethod = "close")
+    public LocalFallbackLocks localFallbackLocks() {
+        return new LocalFallbackLocks();
+    }
+
+    /**
+     * Listener container for the lock notifications, only subscribes once a listener is added.
+     */
+    @Bean
+    public RedisMessageListenerContainer lockListenerContainer(RedisConnectionFactory connectionFactory) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        return container;
+    }
+
+    /**
+     * Waits of asynchronous endpoints for their locks, woken by the releases announced on the wait channel.
+     * Every wait times out at once unless enabled, then the listener container subscribes to the channel on startup.
+     */
+    @Bean(destroyMethod = "close")
+    public LockWaitRegistry lockWaitRegistry(StringRedisTemplate strRedis, RedisMessageListenerContainer lockListenerContainer,
+                                             LockExecutors lockExecutors, RedisLockProperties properties) {
+        RedisLockProperties.Wait wait = properties.getWait();
+        if (!wait.isEnabled()) {
+            return LockWaitRegistry.DISABLED;
+        }
+        return new LockWaitRegistry(strRedis, lockListenerContainer, wait.getChannel(), wait.getPollInterval(), wait.getThreads(),
+                lockExecutors.newExecutor("lock-wait-resume-", 0));
+    }
+
+    /**
+     * Single-flight loading of @SingleFlight methods, woken by the loads announced on the single-flight channel.
+     * Every call runs the method unless enabled, then the listener container subscribes to the channel on startup.
+     */
+    @Bean
+    public SingleFlightLoader singleFlightLoader(LockBackendFactory backends, StringRedisTemplate strRedis,
+                                                 RedisMessageListenerContainer lockListenerContainer, RedisLockProperties properties) {
+        RedisLockProperties.SingleFlight singleFlight = properties.getSingleFlight();
+        if (!singleFlight.isEnabled()) {
+            return SingleFlightLoader.DISABLED;
+        }
+        return new SingleFlightLoader(backends.create(Utils.uuidBase64()), strRedis, lockListenerContainer,
+                singleFlight.getKeyPrefix(), singleFlight.getChannel(), singleFlight.getPollInterval());
+    }
+
+    /**
+     * Distributed rate limiter of @RateLimitCheck endpoints, behind the circuit breaker of the locks.
+     */
+    @Bean
+    public RateLimiter rateLimiter(StringRedisTemplate strRedis, ObjectProvider<LockCircuitBreaker> breaker,
+                                   RedisLockProperties properties) {
+        return new RateLimiter(strRedis, breaker.getIfAvailable(), properties.getRateLimit().getKeyPrefix());
+    }
+
+    /**
+     * Versions of the keys of optimistic @RedisLockCheck endpoints, behind the circuit breaker of the locks.
+     */
+    @Bean
+    public VersionStore versionStore(StringRedisTemplate strRedis, ObjectProvider<LockCircuitBreaker> breaker) {
+        return new VersionStore(strRedis, breaker.getIfAvailable());
+    }
+
+    /**
+     * Executors of locked jobs, resumed lock waits and renewals, on virtual threads if enabled and supported.
+     */
+    @Bean(destroyMethod = "close")
+    public LockExecutors lockExecutors(RedisLockProperties properties) {
+        RedisLockProperties.Execution execution = properties.getExecution();
+        return new LockExecutors(execution.isVirtualThreads(), execution.isTracePinnedThreads(), execution.getRenewalParallelism());
+    }
+
+    /**
+     * Background release of the @RedisLockCheck locks, releases at once unless enabled.
+     */
+    @Bean(destroyMethod = "close")
+    public AsyncLockReleaser asyncLockReleaser(RedisLockProperties properties) {
+        RedisLockProperties.AsyncRelease asyncRelease = properties.getAsyncRelease();
+        if (!asyncRelease.isEnabled()) {
+            return AsyncLockReleaser.DISABLED;
+        }
+        return new AsyncLockReleaser(asyncRelease.getQueueCapacity(), asyncRelease.getMaxBatch());
+    }
+
+    /**
+     * Binary journal of the lock events, records nothing unless enabled.
+     */
+    @Bean(destroyMethod = "close")
+    public LockJournal lockJournal(RedisLockProperties properties) throws IOException {
+        RedisLockProperties.Journal journal = properties.getJournal();
+        if (!journal.isEnabled()) {
+            return LockJournal.DISABLED;
+        }
+        return LockJournal.open(Path.of(journal.getPath()), journal.getCapacity());
+    }
+}
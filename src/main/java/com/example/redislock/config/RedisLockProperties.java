@@ -0,0 +1,404 @@
+package com.example.redislock.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Redis lock settings, bound from the {@code redis-lock.*} properties.
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "redis-lock")
+public class RedisLockProperties {
+
+    /**
+     * Lock backend used by the lock services.
+     */
+    private Backend backend = Backend.REDIS;
+
+    /**
+     * Settings of the in-process backend.
+     */
+    private final Local local = new Local();
+
+    /**
+     * Settings of the striped hash backend.
+     */
+    private final Striped striped = new Striped();
+
+    /**
+     * Settings of the session backend.
+     */
+    private final Session session = new Session();
+
+    /**
+     * Settings of the circuit breaker of the Redis backends.
+     */
+    private final CircuitBreaker circuitBreaker = new CircuitBreaker();
+
+    /**
+     * Settings applied when the application shuts down.
+     */
+    private final Shutdown shutdown = new Shutdown();
+
+    /**
+     * Settings of the lock command batcher.
+     */
+    private final Batch batch = new Batch();
+
+    /**
+     * Settings of the lease loss detection.
+     */
+    private final LeaseWatch leaseWatch = new LeaseWatch();
+
+    /**
+     * Settings of the lock event journal.
+     */
+    private final Journal journal = new Journal();
+
+    /**
+     * Settings of the sharded jobs.
+     */
+    private final Sharding sharding = new Sharding();
+
+    /**
+     * Settings of the lock waits of asynchronous endpoints.
+     */
+    private final Wait wait = new Wait();
+
+    /**
+     * Settings of the threads running locked jobs, resumed lock waits and renewals.
+     */
+    private final Execution execution = new Execution();
+
+    /**
+     * Settings of the background release of @RedisLockCheck locks.
+     */
+    private final AsyncRelease asyncRelease = new AsyncRelease();
+
+    /**
+     * Settings of the single-flight loading of @SingleFlight methods.
+     */
+    private final SingleFlight singleFlight = new SingleFlight();
+
+    /**
+     * Settings of the rate limiter of @RateLimitCheck endpoints.
+     */
+    private final RateLimit rateLimit = new RateLimit();
+
+    /**
+     * Settings of the locks taken before the request body is bound, see @RedisLockCheck keyPath.
+     */
+    private final EarlyLock earlyLock = new EarlyLock();
+
+    public enum Backend {
+        /**
+         * Distributed locks in Redis.
+         */
+        REDIS,
+        /**
+         * Distributed locks as fields of striped Redis hashes, for many short-lived locks.
+         */
+        REDIS_STRIPED,
+        /**
+         * Distributed locks in Redis, kept alive by one session heartbeat per node instead of per-lock renewal.
+         */
+        REDIS_SESSION,
+        /**
+         * In-process locks, for single-node deployments and tests.
+         */
+        LOCAL
+    }
+
+    @Data
+    public static class Local {
+        /**
+         * Duration of one slot of the expiry timing wheel.
+         */
+        private Duration tick = Duration.ofMillis(100);
+
+        /**
+         * Number of slots of the expiry timing wheel.
+         */
+        private int wheelSize = 512;
+    }
+
+    @Data
+    public static class Striped {
+        /**
+         * Prefix of the bucket hash keys.
+         */
+        private String bucketPrefix = "lock-stripe:";
+
+        /**
+         * Number of bucket hashes the locks are spread over.
+         */
+        private int buckets = 1024;
+
+        /**
+         * Keys longer than this many bytes are stored as a 16-byte digest, 0 to store every key as is.
+         */
+        private int digestThreshold = 32;
+    }
+
+    @Data
+    public static class Session {
+        /**
+         * Prefix of the session keys.
+         */
+        private String keyPrefix = "lock-session:";
+
+        /**
+         * TTL of the session key, the locks of a crashed node are free after it.
+         */
+        private Duration ttl = Duration.ofSeconds(10);
+
+        /**
+         * Interval of the session heartbeat, well below the TTL.
+         */
+        private Duration heartbeatInterval = Duration.ofSeconds(3);
+    }
+
+    @Data
+    public static class CircuitBreaker {
+        /**
+         * Whether lock commands are rejected at once while Redis is degraded.
+         */
+        private boolean enabled = false;
+
+        /**
+         * Number of recent commands the failure rate is computed over.
+         */
+        private int windowSize = 50;
+
+        /**
+         * Minimum number of recorded commands before the breaker may open.
+         */
+        private int minimumCalls = 20;
+
+        /**
+         * Failure rate in percent at which the breaker opens.
+         */
+        private int failureRateThreshold = 50;
+
+        /**
+         * Commands slower than this count as failed.
+         */
+        private Duration slowCallDuration = Duration.ofMillis(500);
+
+        /**
+         * Time the breaker stays open before probing Redis again.
+         */
+        private Duration openDuration = Duration.ofSeconds(5);
+
+        /**
+         * Number of probe commands that must succeed to close the breaker.
+         */
+        private int halfOpenProbes = 3;
+    }
+
+    @Data
+    public static class Shutdown {
+        /**
+         * Whether the locks held by this node are released on shutdown instead of being left to expire.
+         */
+        private boolean releaseLocks = true;
+
+        /**
+         * Time budget for releasing the locks, the remaining locks are left to expire afterwards.
+         */
+        private Duration releaseTimeout = Duration.ofSeconds(5);
+
+        /**
+         * Time to wait for running @Async locked jobs before the locks are released,
+         * the locks are left to expire if a job is still running afterwards.
+         */
+        private Duration jobTimeout = Duration.ofSeconds(10);
+    }
+
+    @Data
+    public static class Batch {
+        /**
+         * Whether lock commands from concurrent threads are sent in shared pipeline flushes.
+         */
+        private boolean enabled = false;
+
+        /**
+         * Maximum number of commands per flush.
+         */
+        private int maxSize = 64;
+
+        /**
+         * Time to wait for more commands after the first one arrived.
+         */
+        private Duration window = Duration.ofNanos(50_000);
+
+        /**
+         * Maximum number of queued commands, further commands are executed directly.
+         */
+        private int queueCapacity = 4096;
+    }
+
+    @Data
+    public static class LeaseWatch {
+        /**
+         * Whether keyspace notifications are used to detect lost leases at once.
+         */
+        private boolean enabled = false;
+
+        /**
+         * Whether the expired and generic keyspace events are enabled on the Redis server with CONFIG SET,
+         * leave off if the server is configured already or does not allow CONFIG.
+         */
+        private boolean configureNotifications = false;
+    }
+
+    @Data
+    public static class Journal {
+        /**
+         * Whether lock events are recorded in the memory-mapped journal.
+         */
+        private boolean enabled = false;
+
+        /**
+         * Journal file.
+         */
+        private String path = "lock-journal.bin";
+
+        /**
+         * Number of records kept before the oldest is overwritten, 48 bytes each.
+         */
+        private int capacity = 1 << 20;
+    }
+
+    @Data
+    public static class Sharding {
+        /**
+         * Whether sharded jobs are spread over the cluster, every node polls Redis on each rebalance.
+         */
+        private boolean enabled = false;
+
+        /**
+         * Interval of the heartbeat and the partition rebalancing.
+         */
+        private Duration rebalanceInterval = Duration.ofSeconds(5);
+
+        /**
+         * Time after the last heartbeat at which a node no longer counts as a member.
+         */
+        private Duration memberTtl = Duration.ofSeconds(15);
+
+        /**
+         * Number of threads processing the owned partitions of this node.
+         */
+        private int threads = 4;
+    }
+
+    @Data
+    public static class Wait {
+        /**
+         * Let asynchronous endpoints with a wait timeout wait for a held lock, subscribes to the channel on startup.
+         */
+        private boolean enabled = false;
+
+        /**
+         * Pub/sub channel on which released keys with waiters are announced.
+         */
+        private String channel = "lock-released";
+
+        /**
+         * Interval at which waiting requests retry without a notification, e.g. after a lock expired.
+         */
+        private Duration pollInterval = Duration.ofSeconds(1);
+
+        /**
+         * Number of threads retrying the locks of waiting requests.
+         */
+        private int threads = 2;
+    }
+
+    @Data
+    public static class Execution {
+        /**
+         * Run locked @Async jobs, sharded job partitions, resumed lock waits and renewals on virtual threads,
+         * requires Java 21+, platform threads are used otherwise.
+         */
+        private boolean virtualThreads = false;
+
+        /**
+         * Print the stack of virtual threads blocking while pinned to their carrier.
+         */
+        private boolean tracePinnedThreads = false;
+
+        /**
+         * Number of platform threads running @Async jobs without virtual threads.
+         */
+        private int asyncThreads = 8;
+
+        /**
+         * Maximum number of locks renewed at the same time by one renewal sweep, 1 renews sequentially.
+         */
+        private int renewalParallelism = 8;
+    }
+
+    @Data
+    public static class AsyncRelease {
+        /**
+         * Release the locks of @RedisLockCheck endpoints in the background after the handler returned,
+         * instead of before the response is sent.
+         */
+        private boolean enabled = false;
+
+        /**
+         * Maximum number of queued releases, further releases run on the request thread.
+         */
+        private int queueCapacity = 4096;
+
+        /**
+         * Maximum number of releases sent in one pipeline.
+         */
+        private int maxBatch = 64;
+    }
+
+    @Data
+    public static class SingleFlight {
+        /**
+         * Share the results of @SingleFlight methods through Redis, subscribes to the channel on startup.
+         */
+        private boolean enabled = false;
+
+        /**
+         * Prefix of the keys of the shared values and their load locks.
+         */
+        private String keyPrefix = "single-flight:";
+
+        /**
+         * Pub/sub channel on which loaded keys are announced.
+         */
+        private String channel = "single-flight-loaded";
+
+        /**
+         * Interval at which a waiting caller rereads the value without an announcement, e.g. after the loader died.
+         */
+        private Duration pollInterval = Duration.ofSeconds(1);
+    }
+
+    @Data
+    public static class RateLimit {
+        /**
+         * Prefix of the keys holding the theoretical arrival time of the next permit.
+         */
+        private String keyPrefix = "rate-limit:";
+    }
+
+    @Data
+    public static class EarlyLock {
+        /**
+         * Largest request body in bytes read into memory to find the lock key, larger bodies are locked after binding.
+         */
+        private int maxBodySize = 64 * 1024;
+    }
+}
@@ -0,0 +1,68 @@
+package com.example.redislock.controller;
+
+import com.example.redislock.api.base.Response;
+import com.example.redislock.api.lock.HeldLock;
+import com.example.redislock.api.lock.HotKey;
+import com.example.redislock.service.lock.HotKeyTracker;
+import com.example.redislock.service.lock.LockInspectService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import tools.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+
+@RestController
+@RequestMapping(path = "/admin/locks")
+public class LockAdminController {
+    @Autowired
+    private LockInspectService inspectService;
+
+    @Autowired
+    private HotKeyTracker hotKeyTracker;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    /**
+     * Stream the held locks as newline delimited JSON, one lock per line.
+     */
+    @GetMapping(produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> heldLocks(
+            @RequestParam(defaultValue = "lock:") String prefix,
+            @RequestParam(required = false) String owner,
+            @RequestParam(defaultValue = "" + LockInspectService.DEFAULT_PAGE_SIZE) int pageSize,
+            @RequestParam(defaultValue = "0") long limit) {
+        if (!inspectService.isLockPrefix(prefix)) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        StreamingResponseBody body = out -> inspectService.scan(prefix, owner, pageSize, limit, page -> {
+            try {
+                for (HeldLock lock : page) {
+                    out.write(objectMapper.writeValueAsBytes(lock));
+                    out.write('\n');
+                }
+                out.flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
+    }
+
+    /**
+     * The lock keys with the most contended or failed acquisitions recently.
+     */
+    @GetMapping(path = "/hot")
+    public Response<List<HotKey>> hotKeys(@RequestParam(defaultValue = "10") int limit) {
+        return Response.success(hotKeyTracker.top(limit));
+    }
+}
@@ -2,16 +2,20 @@ package com.example.redislock.controller;
 
 import com.example.redislock.api.base.Response;
 import com.example.redislock.api.order.SubmitOrderReq;
+import com.example.redislock.aspect.paramter.RateLimitCheck;
 import com.example.redislock.aspect.paramter.RedisLockCheck;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
 import jakarta.validation.Valid;
 
+@RestController
 @RequestMapping(path = "/order")
 public class OrderController {
     @PostMapping(value = "/book/submit")
-    public Response submitOrder(@Valid @RequestBody @RedisLockCheck(timeout = 120 * 1000) SubmitOrderReq req) {
+    public Response submitOrder(@Valid @RequestBody @RedisLockCheck(timeout = 120 * 1000, keyPath = "orderId")
+                                @RateLimitCheck(rate = 5, burst = 10, keyPath = "customerId") SubmitOrderReq req) {
         return Response.success();
     }
 }
@@ -0,0 +1,157 @@
+package com.example.redislock.service.lock;
+
+import com.example.redislock.api.lock.HotKey;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Hot key tracker
+ * <p> Counts contended and failed lock acquisitions per key in two count-min sketches of fixed size,
+ * and keeps the keys with the highest counts in a small top-K table.
+ * <p> Recording is lock-free and constant time: a few atomic increments, the top-K table is only updated
+ * when the key qualifies and the table lock is free, otherwise the update is skipped.
+ * <p> Counts are halved periodically, so the table follows the current hot keys.
+ */
+@Service
+public class HotKeyTracker {
+    private static final int DEPTH = 4;
+    private static final int WIDTH = 1 << 12;
+    private static final int TOP_K = 32;
+
+    /**
+     * Contended and failed acquisitions, {@code DEPTH} rows of {@code WIDTH} counters each
+     */
+    private final AtomicLongArray contended = new AtomicLongArray(DEPTH * WIDTH);
+    private final AtomicLongArray failed = new AtomicLongArray(DEPTH * WIDTH);
+
+    /**
+     * Top-K keys and their combined estimate, guarded by topLock
+     */
+    private final Map<String, Long> top = new HashMap<>();
+    private final ReentrantLock topLock = new ReentrantLock();
+
+    /**
+     * Smallest estimate in a full top-K table, a key must exceed it to enter
+     */
+    private volatile long topThreshold = 0;
+
+    /**
+     * Record an acquisition that found the lock held by someone else.
+     *
+     * @param key lock key
+     */
+    public void recordContended(String key) {
+        record(contended, key);
+    }
+
+    /**
+     * Record an acquisition that failed with an error.
+     *
+     * @param key lock key
+     */
+    public void recordFailed(String key) {
+        record(failed, key);
+    }
+
+    /**
+     * Get the hottest keys, ordered by their combined estimate.
+     *
+     * @param limit maximum number of keys
+     * @return hot keys
+     */
+    public List<HotKey> top(int limit) {
+        List<String> keys;
+        topLock.lock();
+        try {
+            keys = new ArrayList<>(top.keySet());
+        } finally {
+            topLock.unlock();
+        }
+
+        List<HotKey> result = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            int hash = spread(key.hashCode());
+            HotKey hotKey = new HotKey();
+            hotKey.setKey(key);
+            hotKey.setContended(estimate(contended, hash));
+            hotKey.setFailed(estimate(failed, hash));
+            result.add(hotKey);
+        }
+        result.sort(Comparator.comparingLong((HotKey k) -> k.getContended() + k.getFailed()).reversed());
+        return result.subList(0, Math.min(Math.max(limit, 0), result.size()));
+    }
+
+    /**
+     * Scheduled task: Halve all counts, so old contention fades out.
+     */
+    @Scheduled(fixedDelay = 60_000)
+    public void decay() {
+        for (int i = 0; i < DEPTH * WIDTH; i++) {
+            contended.getAndUpdate(i, v -> v >> 1);
+            failed.getAndUpdate(i, v -> v >> 1);
+        }
+        topLock.lock();
+        try {
+            top.replaceAll((key, count) -> count >> 1);
+            top.values().removeIf(count -> count == 0);
+            topThreshold = top.size() < TOP_K ? 0 : min();
+        } finally {
+            topLock.unlock();
+        }
+    }
+
+    private void record(AtomicLongArray sketch, String key) {
+        int hash = spread(key.hashCode());
+        for (int row = 0; row < DEPTH; row++) {
+            sketch.incrementAndGet(index(hash, row));
+        }
+
+        long estimate = estimate(contended, hash) + estimate(failed, hash);
+        if (estimate <= topThreshold || !topLock.tryLock()) {
+            return;
+        }
+        try {
+            top.put(key, estimate);
+            if (top.size() > TOP_K) {
+                long min = min();
+                top.values().removeIf(count -> count == min);
+            }
+            topThreshold = top.size() < TOP_K ? 0 : min();
+        } finally {
+            topLock.unlock();
+        }
+    }
+
+    private long min() {
+        return top.values().stream().mapToLong(Long::longValue).min().orElse(0);
+    }
+
+    private static long estimate(AtomicLongArray sketch, int hash) {
+        long min = Long.MAX_VALUE;
+        for (int row = 0; row < DEPTH; row++) {
+            min = Math.min(min, sketch.get(index(hash, row)));
+        }
+        return min;
+    }
+
+    /**
+     * Row index derived from two halves of the hash, see Kirsch and Mitzenmacher.
+     */
+    private static int index(int hash, int row) {
+        int h = hash + row * ((hash >>> 16) | 1);
+        return row * WIDTH + (h & (WIDTH - 1));
+    }
+
+    private static int spread(int h) {
+        h *= 0x9E3779B9;
+        return h ^ (h >>> 15);
+    }
+}
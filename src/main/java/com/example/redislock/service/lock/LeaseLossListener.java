@@ -0,0 +1,96 @@
+package com.example.redislock.service.lock;
+
+import com.example.redislock.config.RedisLockProperties;
+import com.example.redislock.service.lock.base.ComplexLockService;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.PatternTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Properties;
+
+/**
+ * Lease loss listener
+ * <p> Subscribes to the Redis keyspace events of the lock keys, and hands expired or deleted keys to
+ * {@link ComplexLockService#onLeaseLost(String)}, so a lost lease is noticed at once instead of at the next renewal.
+ * <p> NOTE: Requires {@code notify-keyspace-events} to contain {@code K}, {@code g} and {@code x} on the Redis server.
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(prefix = "redis-lock.lease-watch", name = "enabled", havingValue = "true")
+public class LeaseLossListener implements MessageListener {
+    private static final String KEYSPACE_EVENTS = "notify-keyspace-events";
+    private static final String REQUIRED_EVENTS = "Kgx";
+    private static final String CHANNEL_SEPARATOR = "__:";
+
+    private final ComplexLockService complexLockService;
+    private final RedisMessageListenerContainer container;
+    private final StringRedisTemplate strRedis;
+    private final RedisLockProperties properties;
+
+    public LeaseLossListener(ComplexLockService complexLockService, RedisMessageListenerContainer container,
+                             StringRedisTemplate strRedis, RedisLockProperties properties) {
+        this.complexLockService = complexLockService;
+        this.container = container;
+        this.strRedis = strRedis;
+        this.properties = properties;
+    }
+
+    @PostConstruct
+    public void subscribe() {
+        if (properties.getLeaseWatch().isConfigureNotifications()) {
+            configureNotifications();
+        }
+        container.addMessageListener(this, new PatternTopic("__keyspace@*__:" + ComplexLockService.LOCK_PREFIX + "*"));
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String event = new String(message.getBody(), StandardCharsets.UTF_8);
+        if (!"expired".equals(event) && !"del".equals(event)) {
+            return;
+        }
+        String channel = new String(message.getChannel(), StandardCharsets.UTF_8);
+        int idx = channel.indexOf(CHANNEL_SEPARATOR);
+        if (idx < 0) {
+            return;
+        }
+        complexLockService.onLeaseLost(channel.substring(idx + CHANNEL_SEPARATOR.length()));
+    }
+
+    /**
+     * Add the required keyspace events to the ones already enabled on the server.
+     */
+    private void configureNotifications() {
+        try {
+            strRedis.execute((RedisCallback<Void>) connection -> {
+                String current = currentEvents(connection);
+                StringBuilder events = new StringBuilder(current);
+                for (char c : REQUIRED_EVENTS.toCharArray()) {
+                    // 'A' is an alias of all event types, but not of the keyspace channel flag 'K'
+                    boolean enabled = current.indexOf(c) >= 0 || c != 'K' && current.indexOf('A') >= 0;
+                    if (!enabled) {
+                        events.append(c);
+                    }
+                }
+                connection.serverCommands().setConfig(KEYSPACE_EVENTS, events.toString());
+                return null;
+            });
+        } catch (Exception e) {
+            log.error("Failed to enable keyspace notifications, lost leases are only noticed on renewal.", e);
+        }
+    }
+
+    private static String currentEvents(RedisConnection connection) {
+        Properties config = connection.serverCommands().getConfig(KEYSPACE_EVENTS);
+        return config == null ? "" : config.getProperty(KEYSPACE_EVENTS, "");
+    }
+}
@@ -0,0 +1,161 @@
+package com.example.redislock.service.lock;
+
+import com.example.redislock.api.lock.HeldLock;
+import com.example.redislock.service.lock.base.ComplexLockService;
+import com.example.redislock.utils.LockSession;
+import com.example.redislock.utils.RedisLock;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Held lock inspection service
+ * <p> Walks the lock keys with a cursor based SCAN instead of KEYS, so Redis is never blocked
+ * and only one page of keys is kept in memory at a time. The dirty marks and versions next to the lock keys are skipped.
+ */
+@Slf4j
+@Service
+public class LockInspectService {
+    /**
+     * Default number of keys fetched per SCAN page
+     */
+    public static final int DEFAULT_PAGE_SIZE = 500;
+
+    /**
+     * Upper bound of the page size, keeps a single pipeline small
+     */
+    private static final int MAX_PAGE_SIZE = 1000;
+
+    /**
+     * Only keys below these prefixes can be inspected
+     */
+    private static final List<String> LOCK_PREFIXES = List.of(ComplexLockService.LOCK_PREFIX, RedisLockCheckService.LOCK_PREFIX);
+
+    /**
+     * Suffixes of the keys kept next to a lock key that are not locks: the dirty mark of a coalesced lock,
+     * and the version of an optimistic key
+     */
+    private static final List<String> MARKER_SUFFIXES = List.of(RedisLock.DIRTY_SUFFIX, RedisLockCheckService.VERSION_SUFFIX);
+
+    private final StringRedisTemplate strRedis;
+
+    public LockInspectService(StringRedisTemplate strRedis) {
+        this.strRedis = strRedis;
+    }
+
+    /**
+     * Check whether the prefix may be inspected.
+     *
+     * @param prefix key prefix
+     * @return true if the prefix is below one of the lock prefixes
+     */
+    public boolean isLockPrefix(String prefix) {
+        return prefix != null && LOCK_PREFIXES.stream().anyMatch(prefix::startsWith);
+    }
+
+    /**
+     * Scan the held locks page by page.
+     * <p> For every SCAN page the owner and the remaining TTL of the keys are fetched in one pipeline,
+     * then the page is handed to the consumer before the next page is read.
+     *
+     * @param prefix   key prefix, must be below one of the lock prefixes
+     * @param owner    only return locks held by this node, all nodes if blank
+     * @param pageSize number of keys per SCAN page
+     * @param limit    maximum number of locks returned, unlimited if not positive
+     * @param consumer receives each non-empty page of held locks
+     */
+    public void scan(String prefix, String owner, int pageSize, long limit, Consumer<List<HeldLock>> consumer) {
+        if (!isLockPrefix(prefix)) {
+            throw new IllegalArgumentException("Not a lock prefix: " + prefix);
+        }
+        int count = Math.min(Math.max(pageSize, 1), MAX_PAGE_SIZE);
+        long remaining = limit > 0 ? limit : Long.MAX_VALUE;
+
+        ScanOptions options = ScanOptions.scanOptions().match(escapeGlob(prefix) + "*").count(count).build();
+        List<String> keys = new ArrayList<>(count);
+        try (Cursor<String> cursor = strRedis.scan(options)) {
+            while (remaining > 0 && cursor.hasNext()) {
+                String key = cursor.next();
+                if (isMarker(key)) {
+                    continue;
+                }
+                keys.add(key);
+                if (keys.size() >= count) {
+                    remaining -= flush(keys, owner, remaining, consumer);
+                    keys.clear();
+                }
+            }
+            if (remaining > 0 && !keys.isEmpty()) {
+                flush(keys, owner, remaining, consumer);
+            }
+        }
+    }
+
+    /**
+     * Fetch owner and TTL of one page of keys in a single pipeline.
+     *
+     * @return number of locks handed to the consumer
+     */
+    private int flush(List<String> keys, String owner, long remaining, Consumer<List<HeldLock>> consumer) {
+        List<Object> replies = strRedis.executePipelined((RedisCallback<Object>) connection -> {
+            for (String key : keys) {
+                byte[] raw = key.getBytes(StandardCharsets.UTF_8);
+                connection.stringCommands().get(raw);
+                connection.keyCommands().pTtl(raw);
+            }
+            return null;
+        });
+
+        List<HeldLock> page = new ArrayList<>();
+        for (int i = 0; i < keys.size() && page.size() < remaining; i++) {
+            // The key may have been released between SCAN and GET
+            if (!(replies.get(2 * i) instanceof String value)) {
+                continue;
+            }
+            // A session lock holds <sessionId>|<nodeId>
+            int separator = value.indexOf(LockSession.TOKEN_SEPARATOR);
+            String holder = separator < 0 ? value : value.substring(separator + 1);
+            if (StringUtils.isNotBlank(owner) && !owner.equals(holder)) {
+                continue;
+            }
+            HeldLock lock = new HeldLock();
+            lock.setKey(keys.get(i));
+            lock.setOwner(holder);
+            lock.setSession(separator < 0 ? null : value.substring(0, separator));
+            lock.setTtl(replies.get(2 * i + 1) instanceof Long ttl ? ttl : -1);
+            page.add(lock);
+        }
+
+        if (!page.isEmpty()) {
+            consumer.accept(page);
+        }
+        return page.size();
+    }
+
+    private static boolean isMarker(String key) {
+        return MARKER_SUFFIXES.stream().anyMatch(key::endsWith);
+    }
+
+    /**
+     * Escape the glob special characters so the prefix is matched literally.
+     */
+    private static String escapeGlob(String prefix) {
+        StringBuilder sb = new StringBuilder(prefix.length());
+        for (char c : prefix.toCharArray()) {
+            if (c == '*' || c == '?' || c == '[' || c == ']' || c == '\\') {
+                sb.append('\\');
+            }
+            sb.append(c);
+        }
+        return sb.toString();
+    }
+}
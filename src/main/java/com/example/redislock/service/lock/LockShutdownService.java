@@ -0,0 +1,90 @@
+package com.example.redislock.service.lock;
+
+import com.example.redislock.config.RedisLockProperties;
+import com.example.redislock.service.lock.base.ComplexLockService;
+import com.example.redislock.service.lock.base.LockService;
+import com.example.redislock.utils.LockExecutors;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Releases the locks held by this node on graceful shutdown
+ * <p> Without it the locks are left to expire, and other nodes have to wait up to the lock timeout
+ * before they can take over the work.
+ * <p> The phase is below the web server graceful shutdown, so in-flight requests finish first,
+ * and above the Redis connection factory, so the connection is still open.
+ * <p> The running @Async locked jobs are awaited first: releasing the lock under a running job lets another node
+ * run the same work. If a job outlives the budget, all locks are left to expire.
+ */
+@Slf4j
+@Service
+public class LockShutdownService implements SmartLifecycle {
+    private final LockService lockService;
+    private final ComplexLockService complexLockService;
+    private final RedisLockCheckService lockCheckService;
+    private final LockExecutors lockExecutors;
+    private final RedisLockProperties properties;
+
+    private volatile boolean running = false;
+
+    public LockShutdownService(LockService lockService, ComplexLockService complexLockService,
+                               RedisLockCheckService lockCheckService, LockExecutors lockExecutors,
+                               RedisLockProperties properties) {
+        this.lockService = lockService;
+        this.complexLockService = complexLockService;
+        this.lockCheckService = lockCheckService;
+        this.lockExecutors = lockExecutors;
+        this.properties = properties;
+    }
+
+    @Override
+    public void start() {
+        running = true;
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        if (!properties.getShutdown().isReleaseLocks()) {
+            return;
+        }
+        Duration jobTimeout = properties.getShutdown().getJobTimeout();
+        if (!lockExecutors.awaitJobs(jobTimeout)) {
+            log.warn("Locked jobs still running after {}, the locks are left to expire", jobTimeout);
+            return;
+        }
+
+        long timeout = properties.getShutdown().getReleaseTimeout().toMillis();
+        CompletableFuture<Integer> complex = CompletableFuture.supplyAsync(complexLockService::releaseAll);
+        CompletableFuture<Integer> simple = CompletableFuture.supplyAsync(lockService::releaseAll);
+        CompletableFuture<Integer> check = CompletableFuture.supplyAsync(lockCheckService::releaseAll);
+        try {
+            CompletableFuture.allOf(complex, simple, check).get(timeout, TimeUnit.MILLISECONDS);
+            log.info("Released {} locks on shutdown", complex.join() + simple.join() + check.join());
+        } catch (TimeoutException e) {
+            log.warn("Releasing locks took longer than {} ms, the remaining locks are left to expire", timeout);
+        } catch (ExecutionException e) {
+            log.error("Failed to release locks on shutdown", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.error("Interrupted while releasing locks on shutdown", e);
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public int getPhase() {
+        return SmartLifecycle.DEFAULT_PHASE - 4096;
+    }
+}
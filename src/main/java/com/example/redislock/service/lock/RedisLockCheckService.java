@@ -4,17 +4,39 @@ import com.example.redislock.api.lock.ILockable;
 import com.example.redislock.api.lock.LockKey;
 import com.example.redislock.api.base.Response;
 import com.example.redislock.aspect.paramter.RedisLockCheck;
-import com.example.redislock.utils.RedisLock;
+import com.example.redislock.utils.AcquireResult;
+import com.example.redislock.utils.AsyncLockReleaser;
+import com.example.redislock.utils.ConflictPolicy;
+import com.example.redislock.utils.DegradePolicy;
+import com.example.redislock.utils.LocalFallbackLocks;
+import com.example.redislock.utils.LockBackend;
+import com.example.redislock.utils.LockBackendFactory;
+import com.example.redislock.utils.LockMode;
+import com.example.redislock.utils.LockWaitRegistry;
+import com.example.redislock.utils.OptimisticVersion;
 import com.example.redislock.utils.Utils;
+import com.example.redislock.utils.VersionStore;
+import com.example.redislock.utils.jfr.LockContentionEvent;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
 import org.aspectj.lang.ProceedingJoinPoint;
 import org.aspectj.lang.reflect.MethodSignature;
-import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.http.HttpHeaders;
 import org.springframework.stereotype.Service;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.context.request.async.DeferredResultProcessingInterceptor;
+import org.springframework.web.context.request.async.WebAsyncUtils;
 
 import java.lang.reflect.Parameter;
 import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 
 /**
  * Business type lock validation service
@@ -30,7 +52,31 @@ public class RedisLockCheckService {
     /**
      * Lock prefix
      */
-    private static final String LOCK_PREFIX = "order:lock:";
+    public static final String LOCK_PREFIX = "order:lock:";
+
+    /**
+     * Suffix of the version key of a lock key, see {@link LockMode#OPTIMISTIC}
+     */
+    public static final String VERSION_SUFFIX = ":version";
+
+    /**
+     * Request attribute holding the lock taken before the request body was bound
+     */
+    private static final String EARLY_LOCK_ATTRIBUTE = RedisLockCheckService.class.getName() + ".EARLY_LOCK";
+
+    /**
+     * Key of the async interceptor releasing the lock of an asynchronous request
+     */
+    private static final String ASYNC_RELEASE_KEY = RedisLockCheckService.class.getName() + ".ASYNC_RELEASE";
+
+    /**
+     * Lock taken before the request body was bound
+     *
+     * @param key     the lock key
+     * @param backend the backend holding the lock, null if the request proceeded without a lock
+     */
+    private record EarlyLock(LockKey key, LockBackend backend) {
+    }
 
     /**
      * Lock result enumeration
@@ -53,56 +99,436 @@ public class RedisLockCheckService {
     /**
      * Redis lock, using the simplest version here
      */
-    private final RedisLock lock;
+    private final LockBackend lock;
+
+    /**
+     * In-process locks taken while the backend is unavailable, see {@link DegradePolicy#LOCAL}
+     */
+    private final LockBackend fallback;
+
+    private final HotKeyTracker hotKeys;
+
+    /**
+     * Waits of asynchronous requests for a held lock
+     */
+    private final LockWaitRegistry waits;
+
+    /**
+     * Releases the locks after the handler returned, or at once if disabled
+     */
+    private final AsyncLockReleaser releaser;
+
+    /**
+     * Versions of the keys of optimistic requests
+     */
+    private final VersionStore versions;
 
     /**
      * Constructor executed when Spring loads the Bean
      */
-    public RedisLockCheckService(StringRedisTemplate strRedis) {
-        lock = new RedisLock(Utils.uuidBase64(), strRedis);
+    public RedisLockCheckService(LockBackendFactory backends, LocalFallbackLocks fallbacks, HotKeyTracker hotKeys,
+                                 LockWaitRegistry waits, AsyncLockReleaser releaser, VersionStore versions) {
+        lock = backends.create(Utils.uuidBase64());
+        fallback = fallbacks.create(lock.getNodeId());
+        this.hotKeys = hotKeys;
+        this.waits = waits;
+        this.releaser = releaser;
+        this.versions = versions;
+    }
+
+    /**
+     * Business process invocation, run while the lock is held
+     */
+    @FunctionalInterface
+    public interface Invocation {
+        Object proceed() throws Throwable;
     }
 
     /**
      * Business process lock and unlock
      */
     public Object doLock(ProceedingJoinPoint joinPoint) throws Throwable {
-        LockResult lockResult = LockResult.NO_NEED;
+        // Already locked before the request body was bound, see lockEarly
+        if (currentEarlyLock() != null) {
+            return joinPoint.proceed();
+        }
         // Determine if locking is needed, if needed the key should be returned
-        LockKey key = getLockKey(joinPoint);
-        if (key != null) {
+        Class<?> returnType = ((MethodSignature) joinPoint.getSignature()).getReturnType();
+        return doLock(getLockKey(joinPoint), returnType, joinPoint::proceed);
+    }
+
+    /**
+     * Business process lock and unlock
+     *
+     * @param key        the lock key, null if no locking is needed
+     * @param invocation the business process
+     * @return the result of the business process, or a failed response if the lock is held
+     */
+    public Object doLock(LockKey key, Invocation invocation) throws Throwable {
+        return doLock(key, Object.class, invocation);
+    }
+
+    /**
+     * Business process lock and unlock
+     * <p> If the business process returns a {@link DeferredResult} or {@link CompletionStage} inside a web request,
+     * the lock is held until the async request completes, and a held lock is waited for without a servlet thread
+     * up to the wait timeout of the key, see {@link RedisLockCheck#waitTimeout()}.
+     * <p> A key in {@link LockMode#OPTIMISTIC} mode takes no lock, its version is committed after the business process,
+     * see {@link #doOptimistic(LockKey, Class, Invocation)}. Async business processes are always locked.
+     *
+     * @param key        the lock key, null if no locking is needed
+     * @param returnType the declared result type of the business process
+     * @param invocation the business process
+     * @return the result of the business process, or a failed response if the lock is held
+     */
+    public Object doLock(LockKey key, Class<?> returnType, Invocation invocation) throws Throwable {
+        if (key != null && key.getMode() == LockMode.OPTIMISTIC && !isAsync(returnType)) {
+            return doOptimistic(key, returnType, invocation);
+        }
+        return doPessimistic(key, returnType, invocation);
+    }
+
+    private Object doPessimistic(LockKey key, Class<?> returnType, Invocation invocation) throws Throwable {
+        LockResult lockResult = LockResult.NO_NEED;
+        LockBackend backend = key == null ? null : select(key);
+        HttpServletRequest asyncRequest = isAsync(returnType) ? currentRequest() : null;
+        if (backend != null) {
             // Failure during lock acquisition will throw an exception, no unlocking will be performed
-            boolean result = lock.lock(key.getKey(), Duration.ofMillis(key.getTimeout()));
-            lockResult = result ? LockResult.SUCCESS : LockResult.FAIL;
+            AcquireResult acquired = tryLock(backend, key);
+            lockResult = acquired.isAcquired() ? LockResult.SUCCESS : LockResult.FAIL;
             if (LockResult.FAIL.equals(lockResult)) {
-                // NOTE: This failure includes errors during the lock process itself and the inability to acquire lock due to its existence. Is this error accurate?
-                log.info("Redis order-lock, key is: {}, the result is {}", key.getKey(), result);
-                return Response.fail("ResultCode.DUPLICATE_MESSAGE", "This message is already being processed!");
+                if (asyncRequest != null && key.getWaitTimeout() > 0) {
+                    return awaitLock(asyncRequest, backend, key, returnType, invocation);
+                }
+                return reject(currentResponse(), acquired);
             }
         }
+        if (LockResult.SUCCESS.equals(lockResult) && asyncRequest != null) {
+            return proceedAsync(asyncRequest, backend, key, invocation);
+        }
 
         Object result;
         try {
             // Execute the original logic
-            result = joinPoint.proceed();
+            result = invocation.proceed();
         } finally {
             // Unlock regardless of business execution success or failure
             // Unlock (only needed if lock was acquired successfully)
             if (LockResult.SUCCESS.equals(lockResult)) {
-                unlock(key.getKey());
+                unlock(backend, key);
             }
         }
 
         return result;
     }
 
-    private void unlock(String lockKey) {
-        boolean unlockResult = lock.unlock(lockKey);
-        if (!unlockResult) {
-            log.info("Redis order-unlock, key is: {}, the result is {}", lockKey, unlockResult);
-            log.error("Fail to unlock, please wait 10 seconds.");
+    /**
+     * Run the business process optimistically: read the version of the key, and increment it only if it is unchanged,
+     * in one script call, before the business process runs. Concurrent requests on the key are not blocked, but all
+     * that read the same version except the first to claim it conflict, and are retried or rejected according to the
+     * conflict policy without having run. A request that claimed its version always returns the result of its run.
+     * <p> The version read is bound to the thread as {@link OptimisticVersion} while the business process runs,
+     * which makes its own write conditional on it, so a request that claimed a later version first is not overwritten.
+     * A conflicting request is only rerun with {@link ConflictPolicy#RETRY} and explicit retries.
+     * <p> While the versions cannot be read or claimed, the request falls back to locking, with the degrade policy of the key.
+     */
+    private Object doOptimistic(LockKey key, Class<?> returnType, Invocation invocation) throws Throwable {
+        String versionKey = key.getKey() + VERSION_SUFFIX;
+        int attempts = key.getOnConflict() == ConflictPolicy.RETRY ? Math.max(key.getRetries(), 0) + 1 : 1;
+        for (int attempt = 1; ; attempt++) {
+            long version = versions.read(versionKey);
+            if (version == VersionStore.FAILED) {
+                return doPessimistic(key, returnType, invocation);
+            }
+            // Claimed before the business process runs, a request is never rejected after its effects were applied
+            long claimed = versions.compareAndIncrement(versionKey, version, Duration.ofMillis(key.getTimeout()));
+            if (claimed > 0) {
+                OptimisticVersion.bind(new OptimisticVersion(versionKey, version));
+                try {
+                    return invocation.proceed();
+                } finally {
+                    OptimisticVersion.bind(null);
+                }
+            }
+            if (claimed == VersionStore.FAILED) {
+                hotKeys.recordFailed(key.getKey());
+                log.warn("Redis order-version, key is: {}, the version could not be claimed", key.getKey());
+                return doPessimistic(key, returnType, invocation);
+            }
+            hotKeys.recordContended(key.getKey());
+            LockContentionEvent.emit(key.getKey(), "@RedisLockCheck(optimistic)");
+            log.info("Redis order-version, key is: {}, version {} changed, attempt {} of {}", key.getKey(), version, attempt, attempts);
+            if (attempt >= attempts) {
+                return conflict();
+            }
+        }
+    }
+
+    /**
+     * Lock before the request body is bound, the lock is kept until {@link #unlockEarly(HttpServletRequest)}
+     * <p> The lock is recorded in the request, so the aspect does not lock the same request again.
+     *
+     * @param request the request
+     * @param key     the lock key
+     * @return the outcome, the request may proceed if acquired, see {@link #reject(HttpServletResponse, AcquireResult)} otherwise
+     */
+    public AcquireResult lockEarly(HttpServletRequest request, LockKey key) {
+        LockBackend backend = select(key);
+        if (backend != null) {
+            AcquireResult result = tryLock(backend, key);
+            if (!result.isAcquired()) {
+                return result;
+            }
+        }
+        request.setAttribute(EARLY_LOCK_ATTRIBUTE, new EarlyLock(key, backend));
+        return AcquireResult.acquired();
+    }
+
+    /**
+     * Release the lock taken by {@link #lockEarly(HttpServletRequest, LockKey)}, if any
+     *
+     * @param request the request
+     */
+    public void unlockEarly(HttpServletRequest request) {
+        if (request.getAttribute(EARLY_LOCK_ATTRIBUTE) instanceof EarlyLock early) {
+            request.removeAttribute(EARLY_LOCK_ATTRIBUTE);
+            if (early.backend() != null) {
+                unlock(early.backend(), early.key());
+            }
         }
     }
 
+    /**
+     * Response returned for a request whose key is already locked
+     *
+     * @return the failed response
+     */
+    public Response<Object> duplicate() {
+        return Response.fail("ResultCode.DUPLICATE_MESSAGE", "This message is already being processed!");
+    }
+
+    /**
+     * Response returned for an optimistic request whose key was changed by another request while it ran
+     *
+     * @return the failed response
+     */
+    public Response<Object> conflict() {
+        return Response.fail("ResultCode.VERSION_CONFLICT", "This order was modified concurrently, please try again!");
+    }
+
+    /**
+     * Response returned for a request whose lock could not be acquired
+     * <p> A request rejected because the key is held gets a {@code Retry-After} header with the remaining TTL
+     * of the lock in seconds, rounded up, so the client retries once the lock has expired at the latest.
+     * A request rejected because the backend failed gets no header, the failure says nothing about the key.
+     *
+     * @param response the response to set the header on, null if there is none
+     * @param result   the outcome of the acquisition
+     * @return {@link #duplicate()} if the key is held, the failed response of an unavailable backend otherwise
+     */
+    public Response<Object> reject(HttpServletResponse response, AcquireResult result) {
+        if (result.status() == AcquireResult.Status.ERROR) {
+            return Response.fail("ResultCode.LOCK_UNAVAILABLE", "The lock service is unavailable, please try again later!");
+        }
+        Duration remaining = result.remaining();
+        if (response != null && remaining != null && !response.isCommitted()) {
+            long seconds = Math.max((remaining.toMillis() + 999) / 1000, 1);
+            response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(seconds));
+        }
+        return duplicate();
+    }
+
+    /**
+     * Build the lock key of a request.
+     *
+     * @param key       the business key, e.g. the order id
+     * @param lockCheck the annotation of the locked parameter
+     * @return the lock key
+     */
+    public LockKey toLockKey(String key, RedisLockCheck lockCheck) {
+        LockKey res = new LockKey();
+        res.setKey(LOCK_PREFIX + key);
+        res.setTimeout(lockCheck.timeout());
+        res.setDegrade(lockCheck.degrade());
+        res.setWaitTimeout(lockCheck.waitTimeout());
+        res.setMode(lockCheck.mode());
+        res.setOnConflict(lockCheck.onConflict());
+        res.setRetries(lockCheck.retries());
+        return res;
+    }
+
+    /**
+     * Select the backend to lock in: the lock backend, or while it is unavailable the one given by the degrade policy
+     * of the key, null if the request proceeds without a lock. FAIL_CLOSED fails fast in the backend.
+     */
+    private LockBackend select(LockKey key) {
+        if (key.getDegrade() == DegradePolicy.FAIL_CLOSED || lock.isAvailable()) {
+            return lock;
+        }
+        log.warn("Lock backend unavailable, lock {} degraded to {}", key.getKey(), key.getDegrade());
+        return key.getDegrade() == DegradePolicy.FAIL_OPEN ? null : fallback;
+    }
+
+    private AcquireResult tryLock(LockBackend backend, LockKey key) {
+        AcquireResult result = acquire(backend, key);
+        switch (result.status()) {
+            case CONTENDED -> {
+                hotKeys.recordContended(key.getKey());
+                LockContentionEvent.emit(key.getKey(), "@RedisLockCheck");
+                log.info("Redis order-lock, key is: {}, held by {} for another {}", key.getKey(), result.holder(), result.remaining());
+            }
+            case ERROR -> {
+                hotKeys.recordFailed(key.getKey());
+                log.warn("Redis order-lock, key is: {}, the lock could not be acquired due to a backend failure", key.getKey());
+            }
+            default -> {
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Run the business process of an async request holding the lock, which is released when the request completes.
+     */
+    private Object proceedAsync(HttpServletRequest request, LockBackend backend, LockKey key, Invocation invocation) throws Throwable {
+        Object result;
+        try {
+            result = invocation.proceed();
+        } catch (Throwable e) {
+            unlock(backend, key);
+            throw e;
+        }
+        if (result == null) {
+            // No async processing is started
+            unlock(backend, key);
+            return null;
+        }
+        releaseOnCompletion(request, () -> unlock(backend, key));
+        return result;
+    }
+
+    /**
+     * Wait for the lock without holding the servlet thread, then run the business process on the thread granting it.
+     * The result completes with the result of the business process, or the failed response when the wait times out.
+     */
+    private Object awaitLock(HttpServletRequest request, LockBackend backend, LockKey key, Class<?> returnType,
+                             Invocation invocation) {
+        CompletableFuture<Boolean> granted = waits.await(key.getKey(), Duration.ofMillis(key.getWaitTimeout()),
+                () -> acquire(backend, key).isAcquired(), () -> unlock(backend, key));
+        // A granted lock is held until the request completes, a wait still pending is given up
+        releaseOnCompletion(request, () -> {
+            if (!granted.cancel(false) && granted.join()) {
+                unlock(backend, key);
+            }
+        });
+        CompletableFuture<Object> result = granted
+                .handle((acquired, e) -> Boolean.TRUE.equals(acquired))
+                .thenCompose(acquired -> acquired ? resume(invocation) : CompletableFuture.completedFuture(duplicate()));
+        if (!DeferredResult.class.isAssignableFrom(returnType)) {
+            return result;
+        }
+        DeferredResult<Object> deferred = new DeferredResult<>();
+        result.whenComplete((value, e) -> {
+            if (e != null) {
+                deferred.setErrorResult(e);
+            } else {
+                deferred.setResult(value);
+            }
+        });
+        return deferred;
+    }
+
+    /**
+     * Run the business process and unwrap its async result.
+     */
+    private static CompletableFuture<Object> resume(Invocation invocation) {
+        CompletableFuture<Object> result = new CompletableFuture<>();
+        try {
+            Object value = invocation.proceed();
+            if (value instanceof CompletionStage<?> stage) {
+                stage.whenComplete((v, e) -> {
+                    if (e != null) {
+                        result.completeExceptionally(e);
+                    } else {
+                        result.complete(v);
+                    }
+                });
+            } else if (value instanceof DeferredResult<?> deferred) {
+                // An error result is a Throwable, which Spring MVC handles as an error
+                deferred.setResultHandler(result::complete);
+            } else {
+                result.complete(value);
+            }
+        } catch (Throwable e) {
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+
+    private static void releaseOnCompletion(HttpServletRequest request, Runnable release) {
+        WebAsyncUtils.getAsyncManager(request).registerDeferredResultInterceptor(ASYNC_RELEASE_KEY,
+                new DeferredResultProcessingInterceptor() {
+                    @Override
+                    public <T> void afterCompletion(NativeWebRequest webRequest, DeferredResult<T> deferredResult) {
+                        release.run();
+                    }
+                });
+    }
+
+    private static boolean isAsync(Class<?> returnType) {
+        return DeferredResult.class.isAssignableFrom(returnType) || CompletionStage.class.isAssignableFrom(returnType);
+    }
+
+    private static HttpServletRequest currentRequest() {
+        return RequestContextHolder.getRequestAttributes() instanceof ServletRequestAttributes attributes
+                ? attributes.getRequest() : null;
+    }
+
+    private static HttpServletResponse currentResponse() {
+        return RequestContextHolder.getRequestAttributes() instanceof ServletRequestAttributes attributes
+                ? attributes.getResponse() : null;
+    }
+
+    /**
+     * Acquire the lock, after the pending background release of the same key, if any.
+     */
+    private AcquireResult acquire(LockBackend backend, LockKey key) {
+        releaser.awaitRelease(key.getKey());
+        return backend.tryAcquire(key.getKey(), Duration.ofMillis(key.getTimeout()));
+    }
+
+    private static EarlyLock currentEarlyLock() {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        return attributes == null ? null
+                : (EarlyLock) attributes.getAttribute(EARLY_LOCK_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);
+    }
+
+    /**
+     * Release every lock held by this service, used on shutdown
+     *
+     * @return the number of released locks
+     */
+    public int releaseAll() {
+        return lock.releaseAll();
+    }
+
+    private void unlock(LockBackend backend, LockKey key) {
+        String lockKey = key.getKey();
+        // In the background if enabled, then the response does not wait for the release
+        releaser.release(backend, lockKey, backend.remainingLease(lockKey), outcome -> {
+            if (outcome == AsyncLockReleaser.Outcome.RELEASED && key.getWaitTimeout() > 0) {
+                // Wake the requests waiting for the key on every node
+                waits.released(lockKey);
+            }
+            if (outcome == AsyncLockReleaser.Outcome.EXPIRED) {
+                log.warn("Redis order-unlock, key is: {}, the lease ran out before the release, the lock has expired", lockKey);
+            } else if (outcome == AsyncLockReleaser.Outcome.FAILED) {
+                log.info("Redis order-unlock, key is: {}, the result is {}", lockKey, false);
+                log.error("Fail to unlock, please wait 10 seconds.");
+            }
+        });
+    }
+
     /**
      * Determine if locking is needed and get the lock key if needed
      */
@@ -138,10 +564,6 @@ public class RedisLockCheckService {
             return null;
         }
 
-        LockKey res = new LockKey();
-        res.setKey(LOCK_PREFIX + key);
-        res.setTimeout(lockCheck.timeout());
-
-        return res;
+        return toLockKey(key, lockCheck);
     }
 }
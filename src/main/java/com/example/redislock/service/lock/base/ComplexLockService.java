@@ -1,18 +1,29 @@
 package com.example.redislock.service.lock.base;
 
-import com.example.redislock.utils.RedisLock;
+import com.example.redislock.service.lock.HotKeyTracker;
+import com.example.redislock.utils.LockBackend;
+import com.example.redislock.utils.LockBackendFactory;
+import com.example.redislock.utils.LockExecutors;
 import com.example.redislock.utils.Utils;
+import com.example.redislock.utils.jfr.LockRenewEvent;
+import com.example.redislock.utils.journal.LockJournal;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
-import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
 import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
 
 /**
  * Concurrent Redis Lock Service
@@ -24,7 +35,31 @@ public class ComplexLockService {
     private static final int LOCK_MAX_MIN = 600;
     public static final String LOCK_PREFIX = "lock:";
 
-    private final RedisLock redisLock;
+    /**
+     * Maximum timeout of a lock renewed as long as it is held, until it is unlocked or its lease is lost
+     */
+    public static final int NO_MAX_TIMEOUT = Integer.MAX_VALUE;
+
+    /**
+     * With a node session, locks are renewed once their lease is shorter than two renewal intervals
+     */
+    private static final Duration SESSION_RENEW_AHEAD = Duration.ofSeconds(100);
+
+    private final LockBackend redisLock;
+
+    private final LockJournal journal;
+
+    private final HotKeyTracker hotKeys;
+
+    /**
+     * Executor of the renewals of one sweep, null if they run sequentially on the scheduler thread
+     */
+    private final ExecutorService renewals;
+
+    /**
+     * Maximum number of locks renewed at the same time
+     */
+    private final int renewalParallelism;
 
     /**
      * Used to store the lock key and the maximum timeout of the lock.
@@ -32,11 +67,31 @@ public class ComplexLockService {
      */
     private final Map<String, LocalDateTime> locks = new ConcurrentHashMap<>();
 
+    /**
+     * Callbacks fired when the lease of a lock is lost, e.g. interrupting the task holding the lock.
+     */
+    private final Map<String, Runnable> leaseLossCallbacks = new ConcurrentHashMap<>();
+
+    /**
+     * Listeners notified with the key of every lost lease.
+     */
+    private final List<Consumer<String>> leaseLossListeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * Set on shutdown, stops the scheduled renewal of the locks.
+     */
+    private volatile boolean stopped = false;
+
     /**
      * The constructor is executed when the Spring bean is loaded.
      */
-    public ComplexLockService(StringRedisTemplate redisTemplate) {
-        redisLock = new RedisLock(Utils.uuidBase64(), redisTemplate);
+    public ComplexLockService(LockBackendFactory backends, HotKeyTracker hotKeys, LockJournal journal,
+                              LockExecutors lockExecutors) {
+        redisLock = backends.create(Utils.uuidBase64());
+        this.journal = journal;
+        this.hotKeys = hotKeys;
+        this.renewalParallelism = lockExecutors.getRenewalParallelism();
+        this.renewals = renewalParallelism > 1 ? lockExecutors.newExecutor("lock-renewal-", renewalParallelism) : null;
     }
 
     /**
@@ -47,7 +102,7 @@ public class ComplexLockService {
      */
     public boolean lockOrder(String orderId) {
         boolean rt = StringUtils.isNotBlank(orderId) && lock("order:" + orderId, LOCK_MAX_MIN);
-        log.info("Lock order {} result {}", orderId, rt);
+        log.debug("Lock order {} result {}", orderId, rt);
         return rt;
     }
 
@@ -62,7 +117,7 @@ public class ComplexLockService {
         }
 
         boolean rt = unlock("order:" + orderId);
-        log.info("Unlock order {} result {}", orderId, rt);
+        log.debug("Unlock order {} result {}", orderId, rt);
     }
 
     /**
@@ -74,7 +129,39 @@ public class ComplexLockService {
      * @return whether it succeeded
      */
     public boolean lock(String key, int maxTimeout) {
-        log.info("Lock with key {}, maxTimeout {}", key, maxTimeout);
+        return lock(key, maxTimeout, null);
+    }
+
+    /**
+     * Lock the resource by key, and register a callback fired when the lease is lost.
+     * <p> The lease is lost when the lock expires or is deleted by someone else while it is still recorded in locks.
+     * Pass {@code Thread.currentThread()::interrupt} to interrupt the task holding the lock.
+     *
+     * @param key key
+     * @param maxTimeout max lock timeout
+     * @param onLeaseLost callback fired when the lease is lost, may be null
+     * @return whether it succeeded
+     */
+    public boolean lock(String key, int maxTimeout, Runnable onLeaseLost) {
+        return lock(key, maxTimeout, onLeaseLost, false);
+    }
+
+    /**
+     * Try to lock the resource by key, without reporting a held lock.
+     * <p> Same as {@link #lock(String, int, Runnable)}, but a lock held by someone else is an expected outcome,
+     * e.g. claiming partitions owned by other nodes: it is neither logged as an error, journaled nor counted as contended.
+     *
+     * @param key key
+     * @param maxTimeout max lock timeout, {@link #NO_MAX_TIMEOUT} to renew the lock as long as it is held
+     * @param onLeaseLost callback fired when the lease is lost, may be null
+     * @return whether it succeeded
+     */
+    public boolean tryLock(String key, int maxTimeout, Runnable onLeaseLost) {
+        return lock(key, maxTimeout, onLeaseLost, true);
+    }
+
+    private boolean lock(String key, int maxTimeout, Runnable onLeaseLost, boolean quiet) {
+        log.debug("Lock with key {}, maxTimeout {}", key, maxTimeout);
 
         if (maxTimeout <= 0) {
             maxTimeout = LOCK_MAX_MIN * 10;
@@ -82,16 +169,25 @@ public class ComplexLockService {
 
         key = LOCK_PREFIX + key;
         // NOTE: The actual effective time for locking is LOCK_TIMEOUT. This single lock duration cannot be changed externally.
-        boolean r = redisLock.lock(key, Duration.ofSeconds(LOCK_TIMEOUT));
+        // With a node session the lock lives as long as the session, up to the maximum timeout, without renewal.
+        long start = System.nanoTime();
+        boolean r = redisLock.lock(key, leaseDuration(maxTimeout));
+        if (r || !quiet) {
+            journal.record(LockJournal.Op.LOCK, key, redisLock.getNodeId(), outcome(r), start);
+        }
         if (r) {
             // If the lock is successful, save the lock key and maximum timeout to locks to check renewals.
             // NOTE: The maximum timeout is not the effective time of the lock.
-            locks.put(key, LocalDateTime.now().plusSeconds(maxTimeout));
-        } else {
+            locks.put(key, maxTimeout == NO_MAX_TIMEOUT ? LocalDateTime.MAX : LocalDateTime.now().plusSeconds(maxTimeout));
+            if (onLeaseLost != null) {
+                leaseLossCallbacks.put(key, onLeaseLost);
+            }
+        } else if (!quiet) {
+            hotKeys.recordContended(key);
             log.error("Lock {} end with result {}", key, r);
         }
 
-        log.info("Lock end with result {}", r);
+        log.debug("Lock end with result {}", r);
         return r;
     }
 
@@ -104,7 +200,7 @@ public class ComplexLockService {
      * @return lock result
      */
     public boolean lockWithRetry(String key, int maxTimeout) {
-        log.info("Lock with key {}, maxTimeout {}", key, maxTimeout);
+        log.debug("Lock with key {}, maxTimeout {}", key, maxTimeout);
         if (maxTimeout <= 0) {
             maxTimeout = LOCK_MAX_MIN * 10;
         }
@@ -113,19 +209,24 @@ public class ComplexLockService {
         int retryCount = 3;
         // If the lock fails in a short period, analyze the reasons. Network fluctuations might not improve lock success rate by retries.
         while (retryCount-- > 0) {
+            long start = System.nanoTime();
             try {
-                r = redisLock.lock(key, Duration.ofSeconds(LOCK_TIMEOUT));
+                r = redisLock.lock(key, leaseDuration(maxTimeout));
+                journal.record(LockJournal.Op.LOCK, key, redisLock.getNodeId(), outcome(r), start);
                 if (r) {
                     locks.put(key, LocalDateTime.now().plusSeconds(maxTimeout));
                     break;
                 } else {
+                    hotKeys.recordContended(key);
                     log.error("Failed to lock {}. Retrying...", key);
                 }
             } catch (Exception e) {
+                journal.record(LockJournal.Op.LOCK, key, redisLock.getNodeId(), LockJournal.Outcome.ERROR, start);
+                hotKeys.recordFailed(key);
                 log.error("Exception while trying to lock {}: {}", key, e.getMessage());
             }
         }
-        log.info("Lock end with result {}", r);
+        log.debug("Lock end with result {}", r);
         return r;
     }
 
@@ -136,14 +237,18 @@ public class ComplexLockService {
      * @return unlock result
      */
     public boolean unlock(String key) {
-        log.info("Unlock key {}...", key);
+        log.debug("Unlock key {}...", key);
         /*
            What happens if we remove first and unlocking fails?
            1. If the lock was not added by self – it shouldn't be unlocked by self, removal does not affect.
            2. If the lock was added by self - a removal failure would mean it won't be renewed.
          */
-        locks.remove(LOCK_PREFIX + key);
+        key = LOCK_PREFIX + key;
+        locks.remove(key);
+        leaseLossCallbacks.remove(key);
+        long start = System.nanoTime();
         boolean r = redisLock.unlock(key);
+        journal.record(LockJournal.Op.UNLOCK, key, redisLock.getNodeId(), outcome(r), start);
         if (!r) {
             log.error("Unlock {} end with result {}", key, r);
         }
@@ -157,20 +262,24 @@ public class ComplexLockService {
      * @return whether it succeeded
      */
     public boolean unlockWithRetry(String key) {
-        log.info("Unlock key {}...", key);
+        log.debug("Unlock key {}...", key);
         boolean r = false;
         key = LOCK_PREFIX + key;
         locks.remove(key);
+        leaseLossCallbacks.remove(key);
         int retryCount = 3;
         while (retryCount-- > 0) {
+            long start = System.nanoTime();
             try {
                 r = redisLock.unlock(key);
+                journal.record(LockJournal.Op.UNLOCK, key, redisLock.getNodeId(), outcome(r), start);
                 if (r) {
                     break;
                 } else {
                     log.error("Failed to unlock {}. Retrying...", key);
                 }
             } catch (Exception e) {
+                journal.record(LockJournal.Op.UNLOCK, key, redisLock.getNodeId(), LockJournal.Outcome.ERROR, start);
                 log.error("Exception while trying to unlock {}: {}", key, e.getMessage());
             }
         }
@@ -181,92 +290,276 @@ public class ComplexLockService {
     }
 
     /**
-     * Scheduled task: Refresh the lock expiration time.
+     * Refresh the lock expiration time.
      * <p> Locks record the maximum lock timeout. If a lock's task keeps running for a long time without unlocking,
      * and exceeds the maximum timeout, it won't be refreshed anymore.
      * <p> This is by design. Can be changed if specific needs arise.
-     * <p> NOTE: Consider the task's run cycle for appropriateness.
+     * <p> NOTE: Not scheduled, {@link #refreshLockWithRetry()} is the renewal sweep. Schedule only one of the sweeps,
+     * each of them renews every lock.
      */
-    @Scheduled(fixedDelay = 50_000)
     public void refreshLock() {
+        if (stopped) {
+            return;
+        }
+        LockRenewEvent event = new LockRenewEvent();
+        event.begin();
+        int seen = 0;
+        List<String> due = new ArrayList<>();
         Iterator<Map.Entry<String, LocalDateTime>> iterator = locks.entrySet().iterator();
         while (iterator.hasNext()) {
             Map.Entry<String, LocalDateTime> entry = iterator.next();
+            seen++;
             // If the lock has expired, remove the record.
             if (entry.getValue().isBefore(LocalDateTime.now())) {
                 iterator.remove();
+                leaseLossCallbacks.remove(entry.getKey());
+                continue;
+            }
+            if (needsRenewal(entry.getKey())) {
+                due.add(entry.getKey());
             }
-            // If the lock hasn't expired, refresh the lock's expiration time but won't update the lock information.
-            redisLock.refreshLockExpire(entry.getKey(), Duration.ofSeconds(LOCK_TIMEOUT));
         }
+        // If the lock hasn't expired, refresh the lock's expiration time but won't update the lock information.
+        int renewed = renewAll(due, 1).size();
+        event.complete("refreshLock", seen, renewed, due.size() - renewed);
     }
 
     /**
-     * Refresh the lock expiration time with retry logic.
+     * Scheduled task: Refresh the lock expiration time with retry logic.
      * <p> Locks record the maximum lock timeout. If a lock's task keeps running for a long time without unlocking,
      * and exceeds the maximum timeout, it won't be refreshed anymore.
      * <p> This is by design. Can be changed if specific needs arise.
+     * <p> NOTE: Consider the task's run cycle for appropriateness.
      */
     @Scheduled(fixedDelay = 50_000)
     public void refreshLockWithRetry() {
+        if (stopped) {
+            return;
+        }
+        LockRenewEvent event = new LockRenewEvent();
+        event.begin();
+        int seen = 0;
+        List<String> due = new ArrayList<>();
         Iterator<Map.Entry<String, LocalDateTime>> iterator = locks.entrySet().iterator();
         while (iterator.hasNext()) {
             Map.Entry<String, LocalDateTime> entry = iterator.next();
+            seen++;
             // If the lock has expired, remove the record.
             if (entry.getValue().isBefore(LocalDateTime.now())) {
                 iterator.remove();
+                leaseLossCallbacks.remove(entry.getKey());
                 continue;
             }
-            // If the lock hasn't expired, refresh the lock's expiration time.
-            int retryCount = 3;
-            while (retryCount-- > 0) {
-                try {
-                    // Lock renewal: The renewal operation merely extends the lock's expiration time but won't update the maximum timeout in locks.
-                    // If the number of renewals exceeds the maximum timeout, the lock will still be released.
-                    boolean refreshed = redisLock.refreshLockExpire(entry.getKey(), Duration.ofSeconds(LOCK_TIMEOUT));
-                    if (refreshed) {
-                        break;
-                    } else {
-                        log.error("Failed to refresh lock {}. Retrying...", entry.getKey());
-                    }
-                } catch (Exception e) {
-                    log.error("Exception while trying to refresh lock {}: {}", entry.getKey(), e.getMessage());
-                }
+            if (needsRenewal(entry.getKey())) {
+                due.add(entry.getKey());
             }
         }
+        // If the lock hasn't expired, refresh the lock's expiration time.
+        // The renewal merely extends the lock's expiration time but won't update the maximum timeout in locks.
+        // If the number of renewals exceeds the maximum timeout, the lock will still be released.
+        int renewed = renewAll(due, 3).size();
+        event.complete("refreshLockWithRetry", seen, renewed, due.size() - renewed);
     }
 
     /**
      * Unlimited refresh of the lock expiration time.
      * <p> If the task is still running (lock not removed), the task will periodically refresh the lock's expiration time
      * and update the local cache's lock information.
+     * <p> NOTE: Not scheduled, it ignores the maximum timeout of the locks. Schedule it instead of
+     * {@link #refreshLockWithRetry()} only if tasks may hold their locks indefinitely.
      */
-    @Scheduled(fixedDelay = 50_000)
     public void refreshLockWithoutLimit() {
+        if (stopped) {
+            return;
+        }
+        LockRenewEvent event = new LockRenewEvent();
+        event.begin();
+        int seen = 0;
+        List<String> due = new ArrayList<>();
         Iterator<Map.Entry<String, LocalDateTime>> iterator = locks.entrySet().iterator();
         while (iterator.hasNext()) {
             Map.Entry<String, LocalDateTime> entry = iterator.next();
+            seen++;
             // If the lock has expired, remove the record.
             if (entry.getValue().isBefore(LocalDateTime.now())) {
                 iterator.remove();
+                leaseLossCallbacks.remove(entry.getKey());
+                continue;
+            }
+            if (!needsRenewal(entry.getKey())) {
+                // Kept alive by the node session, as if it was renewed
+                entry.setValue(LocalDateTime.now().plusSeconds(LOCK_TIMEOUT));
                 continue;
             }
-            // If the lock hasn't expired, refresh the lock's expiration time.
-            int retryCount = 3;
-            while (retryCount-- > 0) {
+            due.add(entry.getKey());
+        }
+        // If the lock hasn't expired, refresh the lock's expiration time.
+        List<String> renewed = renewAll(due, 3);
+        for (String key : renewed) {
+            // NOTE: Update the maximum timeout for the lock, unless it was released meanwhile.
+            locks.replace(key, LocalDateTime.now().plusSeconds(LOCK_TIMEOUT));
+        }
+        event.complete("refreshLockWithoutLimit", seen, renewed.size(), due.size() - renewed.size());
+    }
+
+    /**
+     * Renew the given locks, in parallel up to the renewal parallelism, and wait until all are done.
+     *
+     * @param keys     the full lock keys, including the prefix
+     * @param attempts attempts per lock
+     * @return the keys of the renewed locks
+     */
+    private List<String> renewAll(List<String> keys, int attempts) {
+        List<String> renewed = new ArrayList<>();
+        if (renewals == null || keys.size() <= 1) {
+            for (String key : keys) {
+                if (renew(key, attempts)) {
+                    renewed.add(key);
+                }
+            }
+            return renewed;
+        }
+        Semaphore permits = new Semaphore(renewalParallelism);
+        List<CompletableFuture<Boolean>> results = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            permits.acquireUninterruptibly();
+            results.add(CompletableFuture.supplyAsync(() -> {
                 try {
-                    boolean refreshed = redisLock.refreshLockExpire(entry.getKey(), Duration.ofSeconds(LOCK_TIMEOUT));
-                    if (refreshed) {
-                        // NOTE: Update the maximum timeout for the lock.
-                        entry.setValue(LocalDateTime.now().plusSeconds(LOCK_TIMEOUT));
-                        break;
-                    } else {
-                        log.error("Failed to refresh lock {}. Retrying...", entry.getKey());
-                    }
-                } catch (Exception e) {
-                    log.error("Exception while trying to refresh lock {}: {}", entry.getKey(), e.getMessage());
+                    return renew(key, attempts);
+                } finally {
+                    permits.release();
+                }
+            }, renewals));
+        }
+        for (int i = 0; i < keys.size(); i++) {
+            if (results.get(i).join()) {
+                renewed.add(keys.get(i));
+            }
+        }
+        return renewed;
+    }
+
+    /**
+     * Renew one lock, retrying a failed renewal.
+     *
+     * @param key      the full lock key, including the prefix
+     * @param attempts attempts
+     * @return whether the lock was renewed
+     */
+    private boolean renew(String key, int attempts) {
+        for (int attempt = 1; attempt <= attempts; attempt++) {
+            long start = System.nanoTime();
+            try {
+                boolean refreshed = redisLock.refreshLockExpire(key, leaseDuration(LOCK_MAX_MIN));
+                journal.record(LockJournal.Op.RENEW, key, redisLock.getNodeId(), outcome(refreshed), start);
+                if (refreshed) {
+                    return true;
                 }
+                if (attempt < attempts) {
+                    log.error("Failed to refresh lock {}. Retrying...", key);
+                }
+            } catch (Exception e) {
+                journal.record(LockJournal.Op.RENEW, key, redisLock.getNodeId(), LockJournal.Outcome.ERROR, start);
+                log.error("Exception while trying to refresh lock {}: {}", key, e.getMessage());
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Check whether this node still holds the lock, answered locally without a Redis call.
+     * <p> Guard checks in long-running tasks can call this as often as needed.
+     *
+     * @param key key
+     * @return whether the lease of the lock is still valid
+     */
+    public boolean isHeld(String key) {
+        return redisLock.isHeld(LOCK_PREFIX + key);
+    }
+
+    /**
+     * Get the remaining lease of the lock held by this node, answered locally without a Redis call.
+     * <p> The lease is the single lock duration, extended by each renewal, not the maximum timeout.
+     *
+     * @param key key
+     * @return the remaining lease, zero if the lock is not held
+     */
+    public Duration remainingLease(String key) {
+        return redisLock.remainingLease(LOCK_PREFIX + key);
+    }
+
+    /**
+     * Register a listener notified with the key of every lost lease.
+     *
+     * @param listener listener
+     */
+    public void addLeaseLossListener(Consumer<String> listener) {
+        leaseLossListeners.add(listener);
+    }
+
+    /**
+     * Handle a lock that expired or was deleted in Redis.
+     * <p> If the lock is still recorded in locks and no longer held by this node, the record is dropped at once
+     * instead of at the next renewal, and the callbacks are fired so the task can stop its work.
+     *
+     * @param key the full lock key, including the prefix
+     */
+    public void onLeaseLost(String key) {
+        if (!locks.containsKey(key)) {
+            return;
+        }
+        try {
+            // The event may be stale, e.g. the lock has been acquired again meanwhile
+            if (redisLock.isOwner(key)) {
+                return;
             }
+        } catch (Exception e) {
+            log.error("Exception while checking the owner of lock {}: {}", key, e.getMessage());
+            return;
+        }
+        if (locks.remove(key) == null) {
+            return;
+        }
+
+        log.warn("Lease of lock {} lost", key);
+        Runnable callback = leaseLossCallbacks.remove(key);
+        if (callback != null) {
+            callback.run();
         }
+        leaseLossListeners.forEach(listener -> listener.accept(key));
+    }
+
+    /**
+     * Stop renewing and release every lock held by this service, used on shutdown.
+     *
+     * @return the number of released locks
+     */
+    public int releaseAll() {
+        stopped = true;
+        locks.clear();
+        leaseLossCallbacks.clear();
+        long start = System.nanoTime();
+        int released = redisLock.releaseAll();
+        journal.record(LockJournal.Op.RELEASE_ALL, LOCK_PREFIX, redisLock.getNodeId(), LockJournal.Outcome.OK, start);
+        return released;
+    }
+
+    /**
+     * Lease set by an acquire or renewal: the single lock duration, or with a node session the given maximum,
+     * since the lock is kept alive by the session heartbeat instead.
+     */
+    private Duration leaseDuration(int maxTimeout) {
+        return Duration.ofSeconds(redisLock.isSessionBased() ? maxTimeout : LOCK_TIMEOUT);
+    }
+
+    /**
+     * With a node session only locks about to reach their expiration time are renewed, checked locally.
+     */
+    private boolean needsRenewal(String key) {
+        return !redisLock.isSessionBased() || redisLock.remainingLease(key).compareTo(SESSION_RENEW_AHEAD) < 0;
+    }
+
+    private static LockJournal.Outcome outcome(boolean r) {
+        return r ? LockJournal.Outcome.OK : LockJournal.Outcome.REJECTED;
     }
 }
@@ -1,9 +1,13 @@
 package com.example.redislock.service.lock.base;
 
-import com.example.redislock.utils.RedisLock;
+import com.example.redislock.utils.AcquireResult;
+import com.example.redislock.utils.DegradePolicy;
+import com.example.redislock.utils.LocalFallbackLocks;
+import com.example.redislock.utils.LockBackend;
+import com.example.redislock.utils.LockBackendFactory;
 import com.example.redislock.utils.Utils;
+import com.example.redislock.utils.journal.LockJournal;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Service;
 
 import java.time.Duration;
@@ -16,15 +20,26 @@ import java.time.Duration;
 public class LockService {
     private static final int LOCK_TIMEOUT = 600;
     public static final String LOCK_PREFIX = "lock:";
-    private final RedisLock redisLock;
+    private final LockBackend redisLock;
+
+    /**
+     * In-process locks taken while the backend is unavailable, see {@link DegradePolicy#LOCAL}
+     */
+    private final LockBackend fallback;
+
+    private final LockJournal journal;
 
     /**
      * This constructor is executed when the Spring bean is loaded.
      *
-     * @param redisTemplate the Redis template
+     * @param backends  the lock backend factory
+     * @param fallbacks the in-process locks used while the backend is unavailable
+     * @param journal   the lock event journal
      */
-    public LockService(StringRedisTemplate redisTemplate) {
-        redisLock = new RedisLock(Utils.uuidBase64(), redisTemplate);
+    public LockService(LockBackendFactory backends, LocalFallbackLocks fallbacks, LockJournal journal) {
+        redisLock = backends.create(Utils.uuidBase64());
+        fallback = fallbacks.create(redisLock.getNodeId());
+        this.journal = journal;
     }
 
     /**
@@ -35,7 +50,7 @@ public class LockService {
      * @return the result of the lock operation
      */
     public boolean lock(String key, int maxTimeout) {
-        log.info("Lock with key {}, maxTimeout {}", key, maxTimeout);
+        log.debug("Lock with key {}, maxTimeout {}", key, maxTimeout);
 
         // If no limit is set, default to 10 minutes
         if (maxTimeout <= 0) {
@@ -43,16 +58,77 @@ public class LockService {
         }
 
         key = LOCK_PREFIX + key;
+        long start = System.nanoTime();
         boolean r = redisLock.lock(key, Duration.ofSeconds(maxTimeout));
+        journal.record(LockJournal.Op.LOCK, key, redisLock.getNodeId(), outcome(r), start);
         if (!r) {
             log.error("Lock {} end with result {}", key, r);
         }
 
-        log.info("Lock end with result {}", r);
+        log.debug("Lock end with result {}", r);
 
         return r;
     }
 
+    /**
+     * One acquisition of {@link #lock(String, int, DegradePolicy)}, released with {@link #unlock(LockHandle)}
+     * <p> Whether the acquisition was degraded belongs to it, not to the key: another thread may hold the same key
+     * in Redis while this one holds it degraded, and each is released where it was taken.
+     *
+     * @param key        the lock key
+     * @param degradedTo the policy the lock was degraded to, null if it was taken in the backend
+     */
+    public record LockHandle(String key, DegradePolicy degradedTo) {
+    }
+
+    /**
+     * Lock by key, applying the degrade policy while the backend is unavailable - Simple scenario
+     * <p> With {@link DegradePolicy#FAIL_CLOSED} the lock fails at once while the circuit breaker is open.
+     *
+     * @param key        the lock key
+     * @param maxTimeout the maximum lock timeout
+     * @param policy     what to do while the backend is unavailable
+     * @return the handle to unlock with, null if the lock was not acquired
+     */
+    public LockHandle lock(String key, int maxTimeout, DegradePolicy policy) {
+        if (policy == DegradePolicy.FAIL_CLOSED || redisLock.isAvailable()) {
+            return lock(key, maxTimeout) ? new LockHandle(key, null) : null;
+        }
+        return degrade(key, maxTimeout, policy);
+    }
+
+    /**
+     * Lock by key without the backend, as the degrade policy says
+     * <p> Used when the backend is unavailable or failed to answer.
+     *
+     * @param key        the lock key
+     * @param maxTimeout the maximum lock timeout
+     * @param policy     what to do without the backend
+     * @return the handle to unlock with, null if the lock was not acquired, always with {@link DegradePolicy#FAIL_CLOSED}
+     */
+    public LockHandle degrade(String key, int maxTimeout, DegradePolicy policy) {
+        if (policy == DegradePolicy.FAIL_CLOSED) {
+            return null;
+        }
+        boolean r = policy == DegradePolicy.FAIL_OPEN
+                || fallback.lock(LOCK_PREFIX + key, Duration.ofSeconds(maxTimeout <= 0 ? LOCK_TIMEOUT : maxTimeout));
+        log.warn("Lock backend unavailable, lock {} degraded to {} with result {}", key, policy, r);
+        return r ? new LockHandle(key, policy) : null;
+    }
+
+    /**
+     * Unlock an acquisition of {@link #lock(String, int, DegradePolicy)}, where it was taken
+     *
+     * @param handle the handle of the acquisition
+     * @return the result of the unlock operation
+     */
+    public boolean unlock(LockHandle handle) {
+        if (handle.degradedTo() == null) {
+            return unlock(handle.key());
+        }
+        return handle.degradedTo() == DegradePolicy.FAIL_OPEN || fallback.unlock(LOCK_PREFIX + handle.key());
+    }
+
     /**
      * Unlock by key - Simple scenario
      *
@@ -60,14 +136,150 @@ public class LockService {
      * @return the result of the unlock operation
      */
     public boolean unlock(String key) {
-        log.info("Unlock key {}...", key);
-
+        log.debug("Unlock key {}...", key);
         key = LOCK_PREFIX + key;
+        long start = System.nanoTime();
         boolean r = redisLock.unlock(key);
+        journal.record(LockJournal.Op.UNLOCK, key, redisLock.getNodeId(), outcome(r), start);
         if (!r) {
             log.error("Unlock {} end with result {}", key, r);
         }
 
         return r;
     }
+
+    /**
+     * Lock by key for at most the given time - Scheduled task scenario
+     * <p> Losing to another node is the expected outcome here, so it is not logged as an error.
+     *
+     * @param key           the lock key
+     * @param lockAtMostFor the lock timeout, the lock expires after it even if the holder dies
+     * @return whether the lock is acquired
+     */
+    public boolean lockAtMostFor(String key, Duration lockAtMostFor) {
+        key = LOCK_PREFIX + key;
+        long start = System.nanoTime();
+        boolean r = redisLock.lock(key, lockAtMostFor);
+        journal.record(LockJournal.Op.LOCK, key, redisLock.getNodeId(), outcome(r), start);
+        log.debug("Lock {} for at most {} end with result {}", key, lockAtMostFor, r);
+        return r;
+    }
+
+    /**
+     * Release the lock, but not before it was held for the remaining minimum time - Scheduled task scenario
+     * <p> If time remains, the lock is not deleted but its TTL is shortened to the remaining time,
+     * so Redis releases it. The minimum hold is measured by the Redis clock, clock skew between nodes does not shorten it.
+     * The lock is then no longer held by this node, so {@link #releaseAll()} on shutdown does not cut the hold short.
+     *
+     * @param key       the lock key
+     * @param remaining the remaining minimum hold time, zero or negative to unlock at once
+     * @return whether the lock was released or its TTL shortened
+     */
+    public boolean unlockAfter(String key, Duration remaining) {
+        if (remaining.isZero() || remaining.isNegative()) {
+            return unlock(key);
+        }
+
+        key = LOCK_PREFIX + key;
+        long start = System.nanoTime();
+        boolean r = redisLock.releaseAfter(key, remaining);
+        journal.record(LockJournal.Op.RENEW, key, redisLock.getNodeId(), outcome(r), start);
+        if (!r) {
+            log.error("Unlock {} after {} end with result {}", key, remaining, r);
+        }
+        return r;
+    }
+
+    /**
+     * Lock by key, or mark the lock dirty if it is held - Coalescing scenario
+     * <p> If the lock is held, the holder runs once more before releasing it, see {@link #unlockUnlessDirty(String, int)}.
+     *
+     * @param key        the lock key
+     * @param maxTimeout the maximum lock timeout
+     * @return whether the lock is acquired
+     */
+    public boolean lockOrMarkDirty(String key, int maxTimeout) {
+        return tryLockOrMarkDirty(key, maxTimeout).isAcquired();
+    }
+
+    /**
+     * Lock by key, or mark the lock dirty if it is held, telling a marked lock from a failed backend - Coalescing scenario
+     *
+     * @param key        the lock key
+     * @param maxTimeout the maximum lock timeout
+     * @return acquired, contended if the lock is held and marked dirty, error if the backend failed
+     */
+    public AcquireResult tryLockOrMarkDirty(String key, int maxTimeout) {
+        if (maxTimeout <= 0) {
+            maxTimeout = LOCK_TIMEOUT;
+        }
+
+        key = LOCK_PREFIX + key;
+        long start = System.nanoTime();
+        AcquireResult r = redisLock.tryLockOrMarkDirty(key, Duration.ofSeconds(maxTimeout));
+        LockJournal.Outcome outcome = switch (r.status()) {
+            case ACQUIRED -> LockJournal.Outcome.OK;
+            case CONTENDED -> LockJournal.Outcome.REJECTED;
+            case ERROR -> LockJournal.Outcome.ERROR;
+        };
+        journal.record(LockJournal.Op.LOCK, key, redisLock.getNodeId(), outcome, start);
+        log.debug("Lock or mark dirty {} end with result {}", key, r.status());
+        return r;
+    }
+
+    /**
+     * Unlock by key unless the lock was marked dirty meanwhile - Coalescing scenario
+     *
+     * @param key        the lock key
+     * @param maxTimeout the maximum lock timeout of the next run
+     * @return true if the lock is kept and the caller has to run once more, false if it was released
+     */
+    public boolean unlockUnlessDirty(String key, int maxTimeout) {
+        if (maxTimeout <= 0) {
+            maxTimeout = LOCK_TIMEOUT;
+        }
+
+        key = LOCK_PREFIX + key;
+        long start = System.nanoTime();
+        boolean rerun = redisLock.unlockUnlessDirty(key, Duration.ofSeconds(maxTimeout));
+        journal.record(LockJournal.Op.UNLOCK, key, redisLock.getNodeId(), LockJournal.Outcome.OK, start);
+        log.debug("Unlock unless dirty {} end with rerun {}", key, rerun);
+        return rerun;
+    }
+
+    /**
+     * Check whether this node still holds the lock, answered locally without a Redis call
+     *
+     * @param key the lock key
+     * @return whether the lease of the lock is still valid
+     */
+    public boolean isHeld(String key) {
+        return redisLock.isHeld(LOCK_PREFIX + key);
+    }
+
+    /**
+     * Get the remaining lease of the lock held by this node, answered locally without a Redis call
+     *
+     * @param key the lock key
+     * @return the remaining lease, zero if the lock is not held
+     */
+    public Duration remainingLease(String key) {
+        return redisLock.remainingLease(LOCK_PREFIX + key);
+    }
+
+    /**
+     * Release every lock held by this service, used on shutdown
+     *
+     * @return the number of released locks
+     */
+    public int releaseAll() {
+        long start = System.nanoTime();
+        int released = redisLock.releaseAll();
+        journal.record(LockJournal.Op.RELEASE_ALL, LOCK_PREFIX, redisLock.getNodeId(), LockJournal.Outcome.OK, start);
+        return released;
+    }
+
+    private static LockJournal.Outcome outcome(boolean r) {
+        return r ? LockJournal.Outcome.OK : LockJournal.Outcome.REJECTED;
+    }
 }
@@ -0,0 +1,132 @@
+package com.example.redislock.service.ratelimit;
+
+import com.example.redislock.api.base.Response;
+import com.example.redislock.api.lock.IRateLimitable;
+import com.example.redislock.aspect.paramter.RateLimitCheck;
+import com.example.redislock.utils.DegradePolicy;
+import com.example.redislock.utils.RateLimitResult;
+import com.example.redislock.utils.RateLimiter;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Service;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import java.lang.reflect.Parameter;
+import java.time.Duration;
+
+/**
+ * Request rate limit service
+ */
+@Service
+@Slf4j
+public class RateLimitCheckService {
+
+    /**
+     * Request attribute set once the rate limit of the request was checked before binding, see {@link #checkEarly}
+     */
+    private static final String CHECKED_ATTRIBUTE = RateLimitCheckService.class.getName() + ".CHECKED";
+
+    private final RateLimiter limiter;
+
+    public RateLimitCheckService(RateLimiter limiter) {
+        this.limiter = limiter;
+    }
+
+    /**
+     * Business process rate limiting
+     *
+     * @param joinPoint the join point of the business process
+     * @return the result of the business process, or a failed response if the rate is exceeded
+     */
+    public Object doCheck(ProceedingJoinPoint joinPoint) throws Throwable {
+        Object[] args = joinPoint.getArgs();
+        if (args == null || args.length <= 0 || isCheckedEarly()) {
+            return joinPoint.proceed();
+        }
+        // Default to only one parameter
+        Parameter[] parameters = ((MethodSignature) joinPoint.getSignature()).getMethod().getParameters();
+        RateLimitCheck rateLimit = parameters.length > 0 ? parameters[0].getAnnotation(RateLimitCheck.class) : null;
+        if (rateLimit == null || !(args[0] instanceof IRateLimitable limitable)
+                || StringUtils.isBlank(limitable.getRateLimitKey())) {
+            return joinPoint.proceed();
+        }
+
+        // The limiter adds the configured key prefix
+        String key = limitable.getRateLimitKey();
+        RateLimitResult result = check(key, rateLimit);
+        if (!result.isAllowed()) {
+            return reject(currentResponse(), result);
+        }
+        return joinPoint.proceed();
+    }
+
+    /**
+     * Check the rate limit before the request body is bound, the aspect does not check the same request again
+     *
+     * @param request   the request
+     * @param key       the rate limit key read from the body
+     * @param rateLimit the annotation of the limited parameter
+     * @return the outcome, the request may proceed if allowed, see {@link #reject(HttpServletResponse, RateLimitResult)} otherwise
+     */
+    public RateLimitResult checkEarly(HttpServletRequest request, String key, RateLimitCheck rateLimit) {
+        RateLimitResult result = check(key, rateLimit);
+        if (result.isAllowed()) {
+            request.setAttribute(CHECKED_ATTRIBUTE, Boolean.TRUE);
+        }
+        return result;
+    }
+
+    /**
+     * Response returned for a request over the rate, see {@link #doCheck(ProceedingJoinPoint)}
+     * <p> A limited request gets a {@code Retry-After} header with the time until the next permit in seconds, rounded up.
+     *
+     * @param response the response to set the header on, null if there is none
+     * @param result   the outcome of the check
+     * @return the failed response
+     */
+    public Response<Object> reject(HttpServletResponse response, RateLimitResult result) {
+        if (result.status() == RateLimitResult.Status.ERROR) {
+            return Response.fail("ResultCode.RATE_LIMIT_UNAVAILABLE", "The rate limit service is unavailable, please try again later!");
+        }
+        Duration retryAfter = result.retryAfter();
+        if (response != null && retryAfter != null && !response.isCommitted()) {
+            long seconds = Math.max((retryAfter.toMillis() + 999) / 1000, 1);
+            response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(seconds));
+        }
+        return Response.fail("ResultCode.RATE_LIMITED", "Too many requests, please try again later!");
+    }
+
+    private RateLimitResult check(String key, RateLimitCheck rateLimit) {
+        Duration period = Duration.ofMillis(rateLimit.period());
+        int burst = rateLimit.burst() > 0 ? rateLimit.burst() : Math.max(rateLimit.rate(), 1);
+        RateLimitResult result = limiter.tryAcquire(key, rateLimit.rate(), period, burst, rateLimit.localBatch());
+        if (result.status() == RateLimitResult.Status.LIMITED) {
+            log.info("Rate limited, key is: {}, retry after {}", key, result.retryAfter());
+        }
+        if (result.status() != RateLimitResult.Status.ERROR) {
+            return result;
+        }
+        log.warn("Rate limiter unavailable, rate limit {} degraded to {}", key, rateLimit.degrade());
+        return switch (rateLimit.degrade()) {
+            case FAIL_OPEN -> RateLimitResult.allowed();
+            case LOCAL -> limiter.tryAcquireLocally(key, rateLimit.rate(), period, burst);
+            default -> result;
+        };
+    }
+
+    private static boolean isCheckedEarly() {
+        return RequestContextHolder.getRequestAttributes() instanceof ServletRequestAttributes attributes
+                && attributes.getRequest().getAttribute(CHECKED_ATTRIBUTE) != null;
+    }
+
+    private static HttpServletResponse currentResponse() {
+        return RequestContextHolder.getRequestAttributes() instanceof ServletRequestAttributes attributes
+                ? attributes.getResponse() : null;
+    }
+}
@@ -0,0 +1,54 @@
+package com.example.redislock.service.timer;
+
+import com.example.redislock.aspect.any.RedisLock;
+import com.example.redislock.service.timer.shard.ShardedJob;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+/**
+ * Order synchronization, split by order id into partitions
+ */
+@Slf4j
+@Component
+public class OrderSyncJob implements ShardedJob {
+    public static final String NAME = "sync-order";
+
+    private static final int PARTITIONS = 16;
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public int getPartitions() {
+        return PARTITIONS;
+    }
+
+    /**
+     * Process every partition on this node, used while sharding is disabled.
+     * <p> A trigger arriving meanwhile is coalesced into one more run.
+     */
+    @RedisLock(key = NAME, coalesce = true)
+    public void processAll() {
+        for (int partition = 0; partition < PARTITIONS; partition++) {
+            process(partition);
+        }
+    }
+
+    @Override
+    public void process(int partition) {
+        // Handle synchronization logic of the orders with orderId % PARTITIONS == partition
+        log.info("Sync partition {} started", partition);
+
+        // Simulate a long-running task
+        try {
+            Thread.sleep(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.error("Sync partition {} interrupted", partition, e);
+        }
+
+        log.info("Sync partition {} completed", partition);
+    }
+}
@@ -1,27 +1,40 @@
 package com.example.redislock.service.timer;
 
-import com.example.redislock.aspect.any.RedisLock;
+import com.example.redislock.service.timer.shard.ShardedJobRunner;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 
 @Slf4j
 @Service
 public class SyncService {
-    @RedisLock(key = "sync-order")
+    private final ObjectProvider<ShardedJobRunner> shardedJobRunner;
+    private final OrderSyncJob orderSyncJob;
+
+    public SyncService(ObjectProvider<ShardedJobRunner> shardedJobRunner, OrderSyncJob orderSyncJob) {
+        this.shardedJobRunner = shardedJobRunner;
+        this.orderSyncJob = orderSyncJob;
+    }
+
+    /**
+     * Synchronize all orders, on every node of the cluster.
+     * <p> Every node runs its own share of the partitions, the partition locks keep two nodes from
+     * synchronizing the same orders. A trigger arriving while a partition is synchronized is coalesced
+     * into one more run of that partition, so no update is lost.
+     * <p> Without sharding, this node synchronizes all partitions under one coalescing lock.
+     */
     @Async
     public void sync() {
-        // Handle synchronization logic
         log.info("Sync process started");
-
-        // Simulate a long-running task
-        try {
-            Thread.sleep(5000);
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-            log.error("Sync process interrupted", e);
+        ShardedJobRunner runner = shardedJobRunner.getIfAvailable();
+        int partitions;
+        if (runner != null) {
+            partitions = runner.trigger(OrderSyncJob.NAME);
+        } else {
+            orderSyncJob.processAll();
+            partitions = orderSyncJob.getPartitions();
         }
-
-        log.info("Sync process completed");
+        log.info("Sync process completed, {} partitions", partitions);
     }
 }
@@ -0,0 +1,30 @@
+package com.example.redislock.service.timer.shard;
+
+/**
+ * Job split into a fixed number of partitions, processed in parallel across the cluster
+ * <p> Each partition is owned by one node at a time through a leased lock, see {@link ShardedJobRunner}.
+ * Implementations are picked up as Spring beans.
+ */
+public interface ShardedJob {
+
+    /**
+     * Get the name of the job, unique in the cluster
+     *
+     * @return The job name
+     */
+    String getName();
+
+    /**
+     * Get the number of partitions, must be the same on every node
+     *
+     * @return The number of partitions
+     */
+    int getPartitions();
+
+    /**
+     * Process one partition, called only while this node owns it
+     *
+     * @param partition The partition, from 0 to {@link #getPartitions()} - 1
+     */
+    void process(int partition);
+}
@@ -0,0 +1,319 @@
+package com.example.redislock.service.timer.shard;
+
+import com.example.redislock.config.RedisLockProperties;
+import com.example.redislock.service.lock.base.ComplexLockService;
+import com.example.redislock.utils.LockExecutors;
+import com.example.redislock.utils.Utils;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Sharded job runner
+ * <p> Every node registers itself in a member set per job, a sorted set scored with the last heartbeat.
+ * On each rebalance a node computes its fair share, {@code ceil(partitions / members)},
+ * and claims free partitions through {@link ComplexLockService} locks until it owns its share,
+ * or releases its surplus partitions when nodes have joined. The locks are renewed by {@link ComplexLockService},
+ * a lost lease drops the partition at once.
+ * <p> A trigger marks every partition of the job pending in Redis, in {@code job:<name>:pending}. Each node processes
+ * the pending partitions it owns: the triggering node at once, the others on their next rebalance, and a partition
+ * claimed later once it is claimed, so no partition of a trigger is lost whichever node received it.
+ * A partition is processed in parallel on a local executor, on virtual threads if enabled,
+ * so the throughput of a job grows with the size of the cluster.
+ * <p> Triggers are coalesced per partition: a partition triggered again while it is processed runs exactly once more
+ * after the current run, however many triggers arrived.
+ * <p> The partition locks have no maximum timeout, a partition stays owned as long as its lease is renewed.
+ * <p> On shutdown the node leaves the member sets and hands its idle partitions over. The phase is above
+ * {@code LockShutdownService}, so the partitions are handed over before the remaining locks are released,
+ * and far above the Redis connection factory, so the connection is still open. Partitions still being processed
+ * are released by {@code LockShutdownService} once their runs are done.
+ * <p> Every node polls Redis on each rebalance, the runner is therefore off unless
+ * {@code redis-lock.sharding.enabled=true}.
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(prefix = "redis-lock.sharding", name = "enabled", havingValue = "true")
+public class ShardedJobRunner implements SmartLifecycle {
+    private static final String KEY_PREFIX = "job:";
+
+    /**
+     * Current node
+     */
+    private final String nodeId = Utils.uuidBase64();
+
+    private final ComplexLockService lockService;
+    private final StringRedisTemplate strRedis;
+    private final RedisLockProperties.Sharding properties;
+    private final ExecutorService executor;
+
+    /**
+     * Job name to the state of the job on this node
+     */
+    private final Map<String, JobState> jobs = new HashMap<>();
+
+    private volatile boolean running = false;
+
+    public ShardedJobRunner(ComplexLockService lockService, StringRedisTemplate strRedis,
+                            RedisLockProperties properties, LockExecutors lockExecutors, List<ShardedJob> jobs) {
+        this.lockService = lockService;
+        this.strRedis = strRedis;
+        this.properties = properties.getSharding();
+        this.executor = lockExecutors.newJobExecutor("sharded-job-", this.properties.getThreads());
+        for (ShardedJob job : jobs) {
+            this.jobs.put(job.getName(), new JobState(job));
+        }
+    }
+
+    /**
+     * Trigger the job on every node: mark all partitions pending, and process the ones owned by this node.
+     * <p> Waits until the partitions of this node are done, the other nodes process theirs on their next rebalance.
+     *
+     * @param name job name
+     * @return the number of partitions processed by this node
+     */
+    public int trigger(String name) {
+        JobState state = state(name);
+        Map<String, String> pending = new HashMap<>();
+        for (int partition = 0; partition < state.job.getPartitions(); partition++) {
+            pending.put(String.valueOf(partition), "1");
+        }
+        strRedis.opsForHash().putAll(pendingKey(name), pending);
+        return run(name);
+    }
+
+    /**
+     * Process the pending partitions owned by this node in parallel, and wait until all are done.
+     * <p> A partition still being processed by an earlier run is skipped, the run processes it once more.
+     *
+     * @param name job name
+     * @return the number of processed partitions
+     */
+    public int run(String name) {
+        List<CompletableFuture<Void>> runs = runPending(state(name));
+        CompletableFuture.allOf(runs.toArray(new CompletableFuture[0])).join();
+        log.info("Sharded job {} processed partitions {}", name, runs.size());
+        return runs.size();
+    }
+
+    /**
+     * Start processing the pending partitions owned by this node.
+     */
+    private List<CompletableFuture<Void>> runPending(JobState state) {
+        String name = state.job.getName();
+        List<CompletableFuture<Void>> runs = new ArrayList<>();
+        for (Integer partition : state.owned) {
+            // The lease may have run out without a notification, checked locally
+            if (!lockService.isHeld(lockKey(name, partition))) {
+                state.owned.remove(partition);
+                continue;
+            }
+            if (!state.running.add(partition)) {
+                continue;
+            }
+            if (!claimPending(name, partition)) {
+                state.running.remove(partition);
+                continue;
+            }
+            runs.add(CompletableFuture.runAsync(() -> process(state, partition), executor));
+        }
+        return runs;
+    }
+
+    private JobState state(String name) {
+        JobState state = jobs.get(name);
+        if (state == null) {
+            throw new IllegalArgumentException("Unknown sharded job " + name);
+        }
+        return state;
+    }
+
+    /**
+     * Get the partitions of the job currently owned by this node.
+     *
+     * @param name job name
+     * @return the owned partitions
+     */
+    public Set<Integer> ownedPartitions(String name) {
+        JobState state = jobs.get(name);
+        return state == null ? Set.of() : Set.copyOf(state.owned);
+    }
+
+    /**
+     * Scheduled task: Send the heartbeat of this node, rebalance the partitions of every job,
+     * and start the pending partitions this node owns.
+     */
+    @Scheduled(fixedDelayString = "${redis-lock.sharding.rebalance-interval:5s}")
+    public void rebalance() {
+        if (!running) {
+            return;
+        }
+        for (JobState state : jobs.values()) {
+            try {
+                rebalance(state, heartbeat(state.job.getName()));
+                runPending(state);
+            } catch (Exception e) {
+                log.error("Failed to rebalance sharded job {}: {}", state.job.getName(), e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Register this node as a member of the job and drop the members whose heartbeat is too old.
+     *
+     * @return the number of live members, including this node
+     */
+    private long heartbeat(String name) {
+        String key = membersKey(name);
+        long now = System.currentTimeMillis();
+        long ttl = properties.getMemberTtl().toMillis();
+        strRedis.opsForZSet().add(key, nodeId, now);
+        strRedis.opsForZSet().removeRangeByScore(key, 0, now - ttl);
+        strRedis.expire(key, properties.getMemberTtl().multipliedBy(2));
+        Long members = strRedis.opsForZSet().zCard(key);
+        return members == null || members < 1 ? 1 : members;
+    }
+
+    private void rebalance(JobState state, long members) {
+        String name = state.job.getName();
+        int partitions = state.job.getPartitions();
+        int share = (int) ((partitions + members - 1) / members);
+
+        state.owned.removeIf(partition -> !lockService.isHeld(lockKey(name, partition)));
+
+        // Release the surplus, other nodes claim it on their next rebalance
+        for (Integer partition : state.owned) {
+            if (state.owned.size() <= share) {
+                break;
+            }
+            if (state.running.contains(partition)) {
+                continue;
+            }
+            state.owned.remove(partition);
+            lockService.unlock(lockKey(name, partition));
+        }
+
+        // Claim free partitions, starting at an offset of this node to spread the claims
+        int offset = Math.floorMod(nodeId.hashCode(), partitions);
+        for (int i = 0; i < partitions && state.owned.size() < share; i++) {
+            int partition = (offset + i) % partitions;
+            if (state.owned.contains(partition)) {
+                continue;
+            }
+            // Most partitions are owned by other nodes, a held lock is the expected outcome
+            if (lockService.tryLock(lockKey(name, partition), ComplexLockService.NO_MAX_TIMEOUT,
+                    () -> state.owned.remove(partition))) {
+                state.owned.add(partition);
+            }
+        }
+        log.debug("Sharded job {} with {} members, owning {} of {} partitions", name, members, state.owned.size(), partitions);
+    }
+
+    /**
+     * Process the partition, again as long as it was triggered during the previous run.
+     * If processing fails, a trigger that arrived meanwhile stays pending for the next run.
+     */
+    private void process(JobState state, int partition) {
+        String name = state.job.getName();
+        try {
+            do {
+                state.job.process(partition);
+            } while (lockService.isHeld(lockKey(name, partition)) && claimPending(name, partition));
+        } catch (Exception e) {
+            log.error("Sharded job {} failed on partition {}", state.job.getName(), partition, e);
+        } finally {
+            state.running.remove(partition);
+        }
+    }
+
+    @Override
+    public void start() {
+        running = true;
+    }
+
+    /**
+     * Leave the member sets and hand the idle partitions over to the other nodes.
+     * The started partitions keep their locks until the runs are done, their pending marks are already taken.
+     */
+    @Override
+    public void stop() {
+        running = false;
+        executor.shutdown();
+        for (JobState state : jobs.values()) {
+            String name = state.job.getName();
+            try {
+                strRedis.opsForZSet().remove(membersKey(name), nodeId);
+            } catch (Exception e) {
+                log.error("Failed to leave sharded job {}: {}", name, e.getMessage());
+            }
+            for (Integer partition : state.owned) {
+                if (!state.running.contains(partition)) {
+                    lockService.unlock(lockKey(name, partition));
+                }
+            }
+            state.owned.clear();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public int getPhase() {
+        return SmartLifecycle.DEFAULT_PHASE - 3072;
+    }
+
+    /**
+     * Take the pending mark of the partition, only one run gets it.
+     */
+    private boolean claimPending(String name, int partition) {
+        Long removed = strRedis.opsForHash().delete(pendingKey(name), String.valueOf(partition));
+        return removed != null && removed > 0;
+    }
+
+    private static String pendingKey(String name) {
+        return KEY_PREFIX + name + ":pending";
+    }
+
+    private static String membersKey(String name) {
+        return KEY_PREFIX + name + ":members";
+    }
+
+    private static String lockKey(String name, int partition) {
+        return KEY_PREFIX + name + ":" + partition;
+    }
+
+    /**
+     * State of a job on this node
+     */
+    private static class JobState {
+        private final ShardedJob job;
+
+        /**
+         * Partitions owned by this node
+         */
+        private final Set<Integer> owned = ConcurrentHashMap.newKeySet();
+
+        /**
+         * Partitions being processed on this node
+         */
+        private final Set<Integer> running = ConcurrentHashMap.newKeySet();
+
+        private JobState(ShardedJob job) {
+            this.job = job;
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.example.redislock.utils;
+
+import java.time.Duration;
+
+/**
+ * Outcome of an acquire attempt, see {@link LockBackend#tryAcquire(String, Duration)}
+ * <p> Unlike the boolean of {@link LockBackend#lock(String, Duration)}, it tells a lock held by someone else
+ * from a failed command, and says for how long the lock is still held.
+ *
+ * @param status    The outcome
+ * @param holder    Owner token of the current holder if contended and known, null otherwise
+ * @param remaining Remaining TTL of the lock of the current holder if contended and known, null otherwise
+ */
+public record AcquireResult(Status status, String holder, Duration remaining) {
+
+    public enum Status {
+        /**
+         * The lock is acquired.
+         */
+        ACQUIRED,
+        /**
+         * The lock is held by someone else.
+         */
+        CONTENDED,
+        /**
+         * The backend failed or is unavailable, whether the lock is held is unknown.
+         */
+        ERROR
+    }
+
+    private static final AcquireResult ACQUIRED = new AcquireResult(Status.ACQUIRED, null, null);
+    private static final AcquireResult ERROR = new AcquireResult(Status.ERROR, null, null);
+
+    public static AcquireResult acquired() {
+        return ACQUIRED;
+    }
+
+    /**
+     * @param holder    Owner token of the current holder, null if unknown
+     * @param remaining Remaining TTL of its lock, null if unknown
+     */
+    public static AcquireResult contended(String holder, Duration remaining) {
+        return new AcquireResult(Status.CONTENDED, holder, remaining);
+    }
+
+    public static AcquireResult error() {
+        return ERROR;
+    }
+
+    public boolean isAcquired() {
+        return status == Status.ACQUIRED;
+    }
+}
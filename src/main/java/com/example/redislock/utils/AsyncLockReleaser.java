@@ -0,0 +1,274 @@
+package com.example.redislock.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.SmartLifecycle;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * Releases locks in the background, after the response has been sent
+ * <p> Releases are queued in a bounded queue and sent by one worker thread, which drains the queue and hands
+ * the keys of each backend to {@link LockBackend#unlockAll(java.util.Collection)}, so the releases of many requests
+ * share one round trip.
+ * <p> Guarantees:
+ * <p>  - Order per key: a pending release of a key is completed before this node tries to acquire the key again,
+ * see {@link #awaitRelease(String)}, so a late release never deletes a lock acquired after it.
+ * <p>  - Bounded by the lease: a release still queued when the lease ran out is dropped and reported as
+ * {@link Outcome#EXPIRED}, the lock has expired anyway. If the worker falls behind or Redis is unavailable,
+ * a lock is held at most until its lease runs out.
+ * <p>  - Backpressure: if the queue is full, the release runs on the calling thread.
+ * <p> On shutdown the queued releases are sent in {@link #stop()}. The phase is below the web server graceful
+ * shutdown, so the releases of in-flight requests are queued first, and above the Redis connection factory,
+ * so the connection is still open.
+ */
+@Slf4j
+public class AsyncLockReleaser implements SmartLifecycle, AutoCloseable {
+
+    /**
+     * Outcome of a release
+     */
+    public enum Outcome {
+        /**
+         * The lock was released
+         */
+        RELEASED,
+        /**
+         * The lock was not held by this node any more, or the release failed
+         */
+        FAILED,
+        /**
+         * The lease ran out before the release was sent, the lock expired in the backend
+         */
+        EXPIRED
+    }
+
+    /**
+     * Releaser running every release at once on the calling thread
+     */
+    public static final AsyncLockReleaser DISABLED = new AsyncLockReleaser();
+
+    /**
+     * A queued release, run by whoever claims it first: the worker, or an acquire of the same key
+     */
+    private static class Release {
+        private final LockBackend backend;
+        private final String key;
+        private final long deadline;
+        private final Consumer<Outcome> callback;
+        private final AtomicBoolean claimed = new AtomicBoolean();
+        private final CompletableFuture<Void> done = new CompletableFuture<>();
+
+        private Release(LockBackend backend, String key, long deadline, Consumer<Outcome> callback) {
+            this.backend = backend;
+            this.key = key;
+            this.deadline = deadline;
+            this.callback = callback;
+        }
+
+        private boolean claim() {
+            return claimed.compareAndSet(false, true);
+        }
+    }
+
+    private final BlockingQueue<Release> queue;
+    private final int maxBatch;
+    private final Thread worker;
+
+    /**
+     * Key to its release not completed yet
+     */
+    private final Map<String, Release> pending = new ConcurrentHashMap<>();
+
+    private volatile boolean closed = false;
+
+    private volatile boolean running = false;
+
+    private AsyncLockReleaser() {
+        this.queue = null;
+        this.maxBatch = 0;
+        this.worker = null;
+    }
+
+    /**
+     * @param queueCapacity Maximum number of queued releases, further releases run on the calling thread
+     * @param maxBatch      Maximum number of releases sent in one round trip
+     */
+    public AsyncLockReleaser(int queueCapacity, int maxBatch) {
+        this.queue = new ArrayBlockingQueue<>(Math.max(queueCapacity, 1));
+        this.maxBatch = Math.max(maxBatch, 1);
+        this.worker = new Thread(this::run, "lock-releaser");
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    /**
+     * Release a lock in the background
+     *
+     * @param backend  The backend holding the lock
+     * @param key      The key
+     * @param lease    Remaining lease of the lock, the release is dropped after it
+     * @param callback Called with the outcome of the release, on the thread sending the release
+     */
+    public void release(LockBackend backend, String key, Duration lease, Consumer<Outcome> callback) {
+        Release release = new Release(backend, key, System.nanoTime() + lease.toNanos(), callback);
+        if (queue == null || closed) {
+            release.claim();
+            unlockNow(release);
+            return;
+        }
+        pending.put(key, release);
+        if (!queue.offer(release) && release.claim()) {
+            unlockNow(release);
+        }
+    }
+
+    /**
+     * Complete the pending release of a key, if any, before the key is acquired again
+     * <p> A release still queued is run on the calling thread, one being sent by the worker is waited for.
+     *
+     * @param key The key
+     */
+    public void awaitRelease(String key) {
+        Release release = pending.get(key);
+        if (release == null) {
+            return;
+        }
+        if (release.claim()) {
+            unlockNow(release);
+        } else {
+            release.done.join();
+        }
+    }
+
+    /**
+     * Number of releases not completed yet
+     *
+     * @return The number of pending releases
+     */
+    public int pending() {
+        return pending.size();
+    }
+
+    private void run() {
+        List<Release> batch = new ArrayList<>(maxBatch);
+        while (!closed || !queue.isEmpty()) {
+            try {
+                Release first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, maxBatch - 1);
+                flush(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                log.error("Failed to release locks", e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void flush(List<Release> batch) {
+        long now = System.nanoTime();
+        Map<LockBackend, List<Release>> byBackend = new IdentityHashMap<>();
+        for (Release release : batch) {
+            // Already run by an acquire of the same key
+            if (!release.claim()) {
+                continue;
+            }
+            if (release.deadline - now <= 0) {
+                // The lease has run out, the lock expired in the backend
+                complete(release, Outcome.EXPIRED);
+                continue;
+            }
+            byBackend.computeIfAbsent(release.backend, b -> new ArrayList<>()).add(release);
+        }
+        for (Map.Entry<LockBackend, List<Release>> entry : byBackend.entrySet()) {
+            List<Release> releases = entry.getValue();
+            Set<String> released = Set.of();
+            try {
+                released = entry.getKey().unlockAll(releases.stream().map(release -> release.key).toList());
+            } finally {
+                for (Release release : releases) {
+                    complete(release, released.contains(release.key) ? Outcome.RELEASED : Outcome.FAILED);
+                }
+            }
+        }
+    }
+
+    private void unlockNow(Release release) {
+        boolean released = false;
+        try {
+            released = release.backend.unlock(release.key);
+        } finally {
+            complete(release, released ? Outcome.RELEASED : Outcome.FAILED);
+        }
+    }
+
+    private void complete(Release release, Outcome outcome) {
+        pending.remove(release.key, release);
+        try {
+            release.callback.accept(outcome);
+        } catch (Exception e) {
+            log.error("Release callback of {} failed", release.key, e);
+        } finally {
+            release.done.complete(null);
+        }
+    }
+
+    @Override
+    public void start() {
+        running = true;
+    }
+
+    /**
+     * Send the queued releases while the Redis connection is still open
+     */
+    @Override
+    public void stop() {
+        running = false;
+        try {
+            close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public int getPhase() {
+        return SmartLifecycle.DEFAULT_PHASE - 3584;
+    }
+
+    /**
+     * Stop accepting releases, and send the queued ones.
+     * <p> Later releases run on the calling thread.
+     */
+    @Override
+    public void close() throws InterruptedException {
+        if (worker == null) {
+            return;
+        }
+        closed = true;
+        worker.join(TimeUnit.SECONDS.toMillis(5));
+    }
+}
@@ -0,0 +1,15 @@
+package com.example.redislock.utils;
+
+/**
+ * What an optimistic request does when the version changed before it could claim it, see {@link LockMode#OPTIMISTIC}
+ */
+public enum ConflictPolicy {
+    /**
+     * The request is rejected
+     */
+    REJECT,
+    /**
+     * The version is read and claimed again, up to the retry limit, then the request is rejected
+     */
+    RETRY
+}
@@ -0,0 +1,19 @@
+package com.example.redislock.utils;
+
+/**
+ * What a lock does while its backend is unavailable, i.e. the circuit breaker is open
+ */
+public enum DegradePolicy {
+    /**
+     * The lock is not acquired, the protected work is rejected
+     */
+    FAIL_CLOSED,
+    /**
+     * The lock is reported as acquired without locking, the protected work runs unprotected
+     */
+    FAIL_OPEN,
+    /**
+     * The lock is taken in the JVM, protecting against concurrent work on this node only
+     */
+    LOCAL
+}
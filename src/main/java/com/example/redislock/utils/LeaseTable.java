@@ -0,0 +1,148 @@
+package com.example.redislock.utils;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Local lease table
+ * <p> Remembers, per key, until when the lock backend last confirmed that this node holds the lock,
+ * so ownership checks are answered without a round trip.
+ * <p> The deadline is counted from the moment the command was sent, not when the reply arrived,
+ * and shortened by a safety margin for clock drift between this node and the lock server.
+ * A lease is therefore never reported as held after the server may have expired it.
+ * <p> Leases that ran out without an unlock are forgotten when they are checked, and swept at most once per
+ * sweep interval when a lease is confirmed, so the renewals keep the table at the size of the locks held.
+ */
+public class LeaseTable {
+    /**
+     * Share of the lease assumed to be lost to clock drift
+     */
+    private static final double CLOCK_DRIFT_FACTOR = 0.01;
+
+    /**
+     * Minimum safety margin
+     */
+    private static final long MIN_DRIFT_NANOS = TimeUnit.MILLISECONDS.toNanos(2);
+
+    /**
+     * Default interval between two sweeps of the expired leases
+     */
+    private static final Duration SWEEP_INTERVAL = Duration.ofSeconds(1);
+
+    /**
+     * Key to the {@link System#nanoTime()} at which the lease is no longer considered held
+     */
+    private final Map<String, Long> deadlines = new ConcurrentHashMap<>();
+
+    private final long sweepIntervalNanos;
+
+    /**
+     * {@link System#nanoTime()} of the next sweep of the expired leases
+     */
+    private final AtomicLong nextSweep;
+
+    public LeaseTable() {
+        this(SWEEP_INTERVAL);
+    }
+
+    LeaseTable(Duration sweepInterval) {
+        this.sweepIntervalNanos = sweepInterval.toNanos();
+        this.nextSweep = new AtomicLong(System.nanoTime() + sweepIntervalNanos);
+    }
+
+    /**
+     * Record a lease confirmed by the lock backend.
+     *
+     * @param key        The key
+     * @param startNanos {@link System#nanoTime()} when the acquire or renew command was sent
+     * @param ttl        Lease duration set by the command
+     */
+    public void confirm(String key, long startNanos, Duration ttl) {
+        long ttlNanos = ttl.toNanos();
+        long margin = Math.max((long) (ttlNanos * CLOCK_DRIFT_FACTOR), MIN_DRIFT_NANOS);
+        deadlines.put(key, startNanos + ttlNanos - margin);
+
+        long now = System.nanoTime();
+        long next = nextSweep.get();
+        if (now - next >= 0 && nextSweep.compareAndSet(next, now + sweepIntervalNanos)) {
+            sweep(now);
+        }
+    }
+
+    /**
+     * Forget the lease of the key.
+     *
+     * @param key The key
+     */
+    public void remove(String key) {
+        deadlines.remove(key);
+    }
+
+    /**
+     * Forget all leases.
+     */
+    public void clear() {
+        deadlines.clear();
+    }
+
+    /**
+     * Check whether the lease of the key is still valid.
+     *
+     * @param key The key
+     * @return Whether this node holds the lock
+     */
+    public boolean isHeld(String key) {
+        return remainingNanos(key) > 0;
+    }
+
+    /**
+     * Get the remaining lease of the key.
+     *
+     * @param key The key
+     * @return The remaining lease, {@link Duration#ZERO} if the lock is not held
+     */
+    public Duration remainingLease(String key) {
+        return Duration.ofNanos(Math.max(remainingNanos(key), 0));
+    }
+
+    /**
+     * Get all keys whose lease is still valid, the expired ones are forgotten.
+     *
+     * @return The keys
+     */
+    public Set<String> keys() {
+        sweep(System.nanoTime());
+        return deadlines.keySet();
+    }
+
+    /**
+     * Number of recorded leases, including expired ones not swept yet
+     *
+     * @return The number of leases
+     */
+    public int size() {
+        return deadlines.size();
+    }
+
+    private long remainingNanos(String key) {
+        Long deadline = deadlines.get(key);
+        if (deadline == null) {
+            return 0;
+        }
+        long remaining = deadline - System.nanoTime();
+        if (remaining <= 0) {
+            // Unless confirmed again in the meantime
+            deadlines.remove(key, deadline);
+        }
+        return remaining;
+    }
+
+    private void sweep(long now) {
+        // Removes an entry only if its deadline is still the one checked
+        deadlines.values().removeIf(deadline -> deadline - now <= 0);
+    }
+}
@@ -0,0 +1,26 @@
+package com.example.redislock.utils;
+
+import java.time.Duration;
+
+/**
+ * In-process locks used by {@link DegradePolicy#LOCAL} while the lock backend is unavailable
+ * <p> Separate from the {@code local} backend, the fallback locks of all services of this node share one store.
+ */
+public class LocalFallbackLocks implements AutoCloseable {
+    private final LocalLockStore store = new LocalLockStore(Duration.ofMillis(100), 512);
+
+    /**
+     * Create a fallback backend owning its locks under the given node id
+     *
+     * @param nodeId The node Id
+     * @return The fallback backend
+     */
+    public LockBackend create(String nodeId) {
+        return new LocalLockBackend(nodeId, store);
+    }
+
+    @Override
+    public void close() {
+        store.close();
+    }
+}
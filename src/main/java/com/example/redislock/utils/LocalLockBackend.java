@@ -0,0 +1,129 @@
+package com.example.redislock.utils;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Implement locking inside the JVM
+ * <p> For single-node deployments and tests: same semantics as {@link RedisLock}, without the network round trip.
+ * All backends created from the same {@link LocalLockStore} see each other's locks.
+ */
+public class LocalLockBackend implements LockBackend {
+    /**
+     * Current node
+     */
+    private final String nodeId;
+
+    private final LocalLockStore store;
+
+    /**
+     * Leases of the keys locked by this node
+     */
+    private final LeaseTable leases = new LeaseTable();
+
+    public LocalLockBackend(String nodeId, LocalLockStore store) {
+        this.nodeId = nodeId;
+        this.store = store;
+    }
+
+    @Override
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    @Override
+    public boolean lock(String key, Duration expire) {
+        long start = System.nanoTime();
+        if (!store.acquire(key, nodeId, expire)) {
+            return false;
+        }
+        leases.confirm(key, start, expire);
+        return true;
+    }
+
+    @Override
+    public AcquireResult tryAcquire(String key, Duration expire) {
+        if (lock(key, expire)) {
+            return AcquireResult.acquired();
+        }
+        return AcquireResult.contended(store.owner(key), store.remaining(key));
+    }
+
+    @Override
+    public boolean unlock(String key) {
+        leases.remove(key);
+        return store.release(key, nodeId);
+    }
+
+    @Override
+    public boolean refreshLockExpire(String key, Duration expire) {
+        long start = System.nanoTime();
+        if (!store.renew(key, nodeId, expire)) {
+            leases.remove(key);
+            return false;
+        }
+        leases.confirm(key, start, expire);
+        return true;
+    }
+
+    @Override
+    public boolean releaseAfter(String key, Duration remaining) {
+        boolean r = refreshLockExpire(key, remaining);
+        leases.remove(key);
+        return r;
+    }
+
+    @Override
+    public boolean lockOrMarkDirty(String key, Duration expire) {
+        long start = System.nanoTime();
+        if (!store.acquireOrMarkDirty(key, nodeId, expire)) {
+            return false;
+        }
+        leases.confirm(key, start, expire);
+        return true;
+    }
+
+    @Override
+    public boolean unlockUnlessDirty(String key, Duration expire) {
+        long start = System.nanoTime();
+        if (!store.releaseUnlessDirty(key, nodeId, expire)) {
+            leases.remove(key);
+            return false;
+        }
+        leases.confirm(key, start, expire);
+        return true;
+    }
+
+    @Override
+    public boolean isOwner(String key) {
+        if (!nodeId.equals(store.owner(key))) {
+            leases.remove(key);
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public boolean isHeld(String key) {
+        return leases.isHeld(key);
+    }
+
+    @Override
+    public Duration remainingLease(String key) {
+        return leases.remainingLease(key);
+    }
+
+    @Override
+    public int releaseAll() {
+        List<String> keys = new ArrayList<>(leases.keys());
+        int released = 0;
+        for (String key : keys) {
+            leases.remove(key);
+            if (store.release(key, nodeId)) {
+                released++;
+            }
+        }
+        return released;
+    }
+}
@@ -0,0 +1,261 @@
+package com.example.redislock.utils;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-process lock store shared by the {@link LocalLockBackend}s of one JVM
+ * <p> The leases live in a concurrent map, each operation is a single atomic map update.
+ * Expiry is checked on every access, so an expired lease is never reported as held.
+ * <p> A timing wheel removes the expired leases nobody touches anymore:
+ * every lease is put into the slot of its deadline, and a ticker thread clears one slot per tick.
+ * Leases due after more than one revolution stay in their slot until their round comes.
+ */
+public class LocalLockStore implements AutoCloseable {
+
+    /**
+     * A lease on a key
+     *
+     * @param key      The key
+     * @param owner    Id of the owner node
+     * @param deadline {@link System#nanoTime()} at which the lease expires
+     * @param dirty    Whether a trigger arrived while the key was held
+     */
+    private record Lease(String key, String owner, long deadline, boolean dirty) {
+        boolean isLive(long now) {
+            return deadline - now > 0;
+        }
+    }
+
+    private final Map<String, Lease> leases = new ConcurrentHashMap<>();
+    private final Queue<Lease>[] wheel;
+    private final long tickNanos;
+    private final long startNanos = System.nanoTime();
+    private final ScheduledExecutorService ticker;
+
+    /**
+     * Last processed tick, only accessed by the ticker thread
+     */
+    private long processedTick = 0;
+
+    /**
+     * @param tick      Duration of one wheel slot
+     * @param wheelSize Number of slots, rounded up to a power of two
+     */
+    @SuppressWarnings("unchecked")
+    public LocalLockStore(Duration tick, int wheelSize) {
+        int size = Integer.highestOneBit(Math.max(wheelSize, 2) - 1) << 1;
+        this.tickNanos = Math.max(tick.toNanos(), TimeUnit.MILLISECONDS.toNanos(1));
+        this.wheel = new Queue[size];
+        for (int i = 0; i < size; i++) {
+            wheel[i] = new ConcurrentLinkedQueue<>();
+        }
+        this.ticker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "local-lock-wheel");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.ticker.scheduleAtFixedRate(this::advance, tickNanos, tickNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Acquire the key if it is free or its lease has expired
+     *
+     * @param key   The key
+     * @param owner Id of the owner node
+     * @param ttl   Lease duration
+     * @return Whether the key was acquired
+     */
+    public boolean acquire(String key, String owner, Duration ttl) {
+        long now = System.nanoTime();
+        Lease lease = new Lease(key, owner, now + ttl.toNanos(), false);
+        Lease current = leases.compute(key, (k, old) -> old == null || !old.isLive(now) ? lease : old);
+        if (current != lease) {
+            return false;
+        }
+        schedule(lease);
+        return true;
+    }
+
+    /**
+     * Release the key if it is held by the owner
+     *
+     * @param key   The key
+     * @param owner Id of the owner node
+     * @return Whether the key was released
+     */
+    public boolean release(String key, String owner) {
+        long now = System.nanoTime();
+        boolean[] released = {false};
+        leases.computeIfPresent(key, (k, old) -> {
+            if (!old.isLive(now)) {
+                return null;
+            }
+            if (old.owner().equals(owner)) {
+                released[0] = true;
+                return null;
+            }
+            return old;
+        });
+        return released[0];
+    }
+
+    /**
+     * Extend the lease of the key if it is held by the owner
+     *
+     * @param key   The key
+     * @param owner Id of the owner node
+     * @param ttl   New lease duration, counted from now
+     * @return Whether the lease was extended
+     */
+    public boolean renew(String key, String owner, Duration ttl) {
+        long now = System.nanoTime();
+        Lease[] renewed = {null};
+        leases.computeIfPresent(key, (k, old) -> {
+            if (!old.isLive(now)) {
+                return null;
+            }
+            if (!old.owner().equals(owner)) {
+                return old;
+            }
+            renewed[0] = new Lease(key, owner, now + ttl.toNanos(), old.dirty());
+            return renewed[0];
+        });
+        if (renewed[0] == null) {
+            return false;
+        }
+        schedule(renewed[0]);
+        return true;
+    }
+
+    /**
+     * Acquire the key if it is free, otherwise mark it dirty
+     *
+     * @param key   The key
+     * @param owner Id of the owner node
+     * @param ttl   Lease duration
+     * @return Whether the key was acquired
+     */
+    public boolean acquireOrMarkDirty(String key, String owner, Duration ttl) {
+        long now = System.nanoTime();
+        Lease lease = new Lease(key, owner, now + ttl.toNanos(), false);
+        Lease current = leases.compute(key, (k, old) -> {
+            if (old == null || !old.isLive(now)) {
+                return lease;
+            }
+            return old.dirty() ? old : new Lease(key, old.owner(), old.deadline(), true);
+        });
+        if (current != lease) {
+            schedule(current);
+            return false;
+        }
+        schedule(lease);
+        return true;
+    }
+
+    /**
+     * Release the key if it is held by the owner and not marked dirty,
+     * otherwise clear the mark and extend the lease
+     *
+     * @param key   The key
+     * @param owner Id of the owner node
+     * @param ttl   New lease duration if the key is kept
+     * @return Whether the key is kept for one more run
+     */
+    public boolean releaseUnlessDirty(String key, String owner, Duration ttl) {
+        long now = System.nanoTime();
+        Lease[] kept = {null};
+        leases.computeIfPresent(key, (k, old) -> {
+            if (!old.isLive(now)) {
+                return null;
+            }
+            if (!old.owner().equals(owner)) {
+                return old;
+            }
+            if (!old.dirty()) {
+                return null;
+            }
+            kept[0] = new Lease(key, owner, now + ttl.toNanos(), false);
+            return kept[0];
+        });
+        if (kept[0] == null) {
+            return false;
+        }
+        schedule(kept[0]);
+        return true;
+    }
+
+    /**
+     * Get the owner of the key
+     *
+     * @param key The key
+     * @return Id of the owner node, or null if the key is not held
+     */
+    public String owner(String key) {
+        Lease lease = leases.get(key);
+        return lease != null && lease.isLive(System.nanoTime()) ? lease.owner() : null;
+    }
+
+    /**
+     * Get the remaining lease of the key
+     *
+     * @param key The key
+     * @return Time until the lease expires, or null if the key is not held
+     */
+    public Duration remaining(String key) {
+        long now = System.nanoTime();
+        Lease lease = leases.get(key);
+        return lease != null && lease.isLive(now) ? Duration.ofNanos(lease.deadline() - now) : null;
+    }
+
+    private void schedule(Lease lease) {
+        long tick = Math.max((lease.deadline() - startNanos) / tickNanos, 0);
+        wheel[(int) (tick & (wheel.length - 1))].offer(lease);
+    }
+
+    /**
+     * Clear the slots of the ticks passed since the last run.
+     */
+    private void advance() {
+        long now = System.nanoTime();
+        long currentTick = (now - startNanos) / tickNanos;
+        // After a long pause one revolution covers every slot
+        long from = Math.max(processedTick + 1, currentTick - wheel.length + 1);
+        for (long tick = from; tick <= currentTick; tick++) {
+            Queue<Lease> slot = wheel[(int) (tick & (wheel.length - 1))];
+            for (int n = slot.size(); n > 0; n--) {
+                Lease lease = slot.poll();
+                if (lease == null) {
+                    break;
+                }
+                if (!lease.isLive(now)) {
+                    leases.remove(lease.key(), lease);
+                } else if (leases.get(lease.key()) == lease) {
+                    // Due in a later round
+                    slot.offer(lease);
+                }
+            }
+        }
+        processedTick = currentTick;
+    }
+
+    /**
+     * Number of leases in the store, including expired ones not cleared yet
+     *
+     * @return The number of leases
+     */
+    public int size() {
+        return leases.size();
+    }
+
+    @Override
+    public void close() {
+        ticker.shutdownNow();
+    }
+}
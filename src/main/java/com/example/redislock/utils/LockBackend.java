@@ -0,0 +1,187 @@
+package com.example.redislock.utils;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Lock backend
+ * <p> Stores the locks of one owner (node). The lock services only talk to this interface,
+ * the implementation is selected by {@code redis-lock.backend}:
+ * <p>  - {@link RedisLock}: distributed locks in Redis
+ * <p>  - {@link LocalLockBackend}: in-process locks for single-node deployments and tests
+ * <p> Implementations must not throw, errors are logged and reported as a failed operation.
+ */
+public interface LockBackend {
+
+    /**
+     * Get the id of the node owning the locks
+     *
+     * @return The node Id
+     */
+    String getNodeId();
+
+    /**
+     * Acquire lock if it is not held by anyone
+     *
+     * @param key    The key
+     * @param expire Expiration time
+     * @return Whether the lock is acquired
+     */
+    boolean lock(String key, Duration expire);
+
+    /**
+     * Acquire lock if it is not held by anyone, and tell why it was not acquired otherwise
+     * <p> The default implementation cannot see the holder, it reports a failed lock as contended
+     * while the backend is available, as an error while it is not.
+     *
+     * @param key    The key
+     * @param expire Expiration time
+     * @return The outcome, with the holder and its remaining TTL if contended and known
+     */
+    default AcquireResult tryAcquire(String key, Duration expire) {
+        if (lock(key, expire)) {
+            return AcquireResult.acquired();
+        }
+        return isAvailable() ? AcquireResult.contended(null, null) : AcquireResult.error();
+    }
+
+    /**
+     * Release lock, only if it is held by this node
+     *
+     * @param key The key
+     * @return Whether the lock was released successfully
+     */
+    boolean unlock(String key);
+
+    /**
+     * Release several locks, only those held by this node
+     * <p> Backends with a network round trip send the releases together.
+     *
+     * @param keys The keys
+     * @return The keys released
+     */
+    default Set<String> unlockAll(Collection<String> keys) {
+        Set<String> released = new HashSet<>();
+        for (String key : keys) {
+            if (unlock(key)) {
+                released.add(key);
+            }
+        }
+        return released;
+    }
+
+    /**
+     * Refresh lock expiration time, only if it is held by this node
+     *
+     * @param key    The key
+     * @param expire New expiration time
+     * @return Whether the expiration time was refreshed successfully
+     */
+    boolean refreshLockExpire(String key, Duration expire);
+
+    /**
+     * Hand the lock over to the backend, which releases it after the remaining time
+     * <p> The expiration time is shortened to the remaining time and the lock is no longer held by this node,
+     * so {@link #releaseAll()} on shutdown leaves it to expire.
+     *
+     * @param key       The key
+     * @param remaining Time until the backend releases the lock
+     * @return Whether the expiration time was shortened
+     */
+    boolean releaseAfter(String key, Duration remaining);
+
+    /**
+     * Acquire lock, or mark it dirty if it is held by someone else, atomically
+     * <p> The holder sees the mark in {@link #unlockUnlessDirty(String, Duration)} and runs once more,
+     * so any number of triggers during a run collapse into at most one follow-up run.
+     *
+     * @param key    The key
+     * @param expire Expiration time, also of the dirty mark
+     * @return Whether the lock is acquired
+     */
+    boolean lockOrMarkDirty(String key, Duration expire);
+
+    /**
+     * Acquire lock, or mark it dirty if it is held by someone else, telling a marked lock from a failed command
+     * <p> {@link AcquireResult.Status#CONTENDED} means the lock is held and marked dirty, the holder runs once more.
+     * {@link AcquireResult.Status#ERROR} means nothing is known to be marked, the trigger would be lost.
+     *
+     * @param key    The key
+     * @param expire Expiration time, also of the dirty mark
+     * @return The outcome
+     */
+    default AcquireResult tryLockOrMarkDirty(String key, Duration expire) {
+        if (lockOrMarkDirty(key, expire)) {
+            return AcquireResult.acquired();
+        }
+        return isAvailable() ? AcquireResult.contended(null, null) : AcquireResult.error();
+    }
+
+    /**
+     * Release lock unless it was marked dirty meanwhile, atomically
+     * <p> If it was, the mark is cleared and the lock is kept with a new expiration time.
+     *
+     * @param key    The key
+     * @param expire New expiration time if the lock is kept
+     * @return true if the lock is kept for one more run, false if it was released or is not held
+     */
+    boolean unlockUnlessDirty(String key, Duration expire);
+
+    /**
+     * Check whether the lock is currently held by this node
+     * <p> Unlike the other operations, errors are thrown, so a failed check is not mistaken for a lost lock.
+     *
+     * @param key The key
+     * @return Whether the lock is held by this node
+     */
+    boolean isOwner(String key);
+
+    /**
+     * Check locally whether this node still holds the lock
+     * <p> Answered from the lease last confirmed by acquire or renew, without a round trip.
+     * The lease is shortened by a safety margin for clock drift, so it may report a lock as lost slightly early,
+     * but never as held after it may have expired.
+     *
+     * @param key The key
+     * @return Whether the lease of the lock is still valid
+     */
+    boolean isHeld(String key);
+
+    /**
+     * Get locally the remaining lease of the lock held by this node
+     *
+     * @param key The key
+     * @return The remaining lease, {@link Duration#ZERO} if the lock is not held
+     */
+    Duration remainingLease(String key);
+
+    /**
+     * Check without a round trip whether the backend currently accepts commands
+     * <p> False while the circuit breaker is open, the lock services then apply the {@link DegradePolicy} of the caller.
+     *
+     * @return Whether commands are sent to the backend
+     */
+    default boolean isAvailable() {
+        return true;
+    }
+
+    /**
+     * Check whether the locks are kept alive by a node session instead of per-lock renewal
+     * <p> If so, a lock is held until it is released, its expiration time passes, or the session of the node dies;
+     * renewing it only matters before its expiration time.
+     *
+     * @return Whether the locks live as long as the node session
+     */
+    default boolean isSessionBased() {
+        return false;
+    }
+
+    /**
+     * Release every lock held by this node
+     *
+     * @return The number of released locks
+     */
+    int releaseAll();
+}
@@ -0,0 +1,17 @@
+package com.example.redislock.utils;
+
+/**
+ * Creates the lock backend of a lock service.
+ * <p> Each lock service owns its locks under its own node id.
+ */
+@FunctionalInterface
+public interface LockBackendFactory {
+
+    /**
+     * Create a backend owning its locks under the given node id
+     *
+     * @param nodeId The node Id
+     * @return The lock backend
+     */
+    LockBackend create(String nodeId);
+}
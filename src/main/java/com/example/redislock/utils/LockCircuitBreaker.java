@@ -0,0 +1,162 @@
+package com.example.redislock.utils;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+
+/**
+ * Circuit breaker of the lock commands sent to Redis
+ * <p> Records the outcome of the last {@code windowSize} commands, a command slower than {@code slowCallDuration}
+ * counts as failed. Once at least {@code minimumCalls} are recorded and the failure rate reaches the threshold,
+ * the breaker opens and rejects every command at once, instead of letting each caller wait for the client timeout.
+ * <p> After {@code openDuration} the breaker lets {@code halfOpenProbes} commands through:
+ * if all succeed it closes, if one fails it opens again.
+ * <p> Shared by all lock backends talking to the same Redis.
+ */
+@Slf4j
+public class LockCircuitBreaker {
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final int windowSize;
+    private final int minimumCalls;
+    private final int failureRateThreshold;
+    private final long slowCallNanos;
+    private final long openNanos;
+    private final int halfOpenProbes;
+
+    /**
+     * Outcomes of the last commands as a ring, true for failed, guarded by this
+     */
+    private final boolean[] window;
+    private int position = 0;
+    private int recorded = 0;
+    private int failures = 0;
+
+    private volatile State state = State.CLOSED;
+    private volatile long openUntil = 0;
+    private int probesStarted = 0;
+    private int probesSucceeded = 0;
+
+    /**
+     * @param windowSize           Number of recent commands the failure rate is computed over
+     * @param minimumCalls         Minimum number of recorded commands before the breaker may open
+     * @param failureRateThreshold Failure rate in percent at which the breaker opens
+     * @param slowCallDuration     Commands slower than this count as failed
+     * @param openDuration         Time the breaker stays open before probing
+     * @param halfOpenProbes       Number of probe commands let through when half open
+     */
+    public LockCircuitBreaker(int windowSize, int minimumCalls, int failureRateThreshold,
+                              Duration slowCallDuration, Duration openDuration, int halfOpenProbes) {
+        this.windowSize = Math.max(windowSize, 1);
+        this.minimumCalls = Math.min(Math.max(minimumCalls, 1), this.windowSize);
+        this.failureRateThreshold = failureRateThreshold;
+        this.slowCallNanos = slowCallDuration.toNanos();
+        this.openNanos = openDuration.toNanos();
+        this.halfOpenProbes = Math.max(halfOpenProbes, 1);
+        this.window = new boolean[this.windowSize];
+    }
+
+    /**
+     * Check without side effects whether a command would be let through
+     *
+     * @return Whether the breaker is closed, or ready to probe
+     */
+    public boolean isCallPermitted() {
+        State current = state;
+        return current == State.CLOSED || current == State.OPEN && System.nanoTime() - openUntil >= 0
+                || current == State.HALF_OPEN && probesStarted < halfOpenProbes;
+    }
+
+    /**
+     * Acquire the permission to send a command, a permitted command must be reported with {@link #onResult(long, boolean)}
+     *
+     * @return Whether the command may be sent
+     */
+    public boolean tryAcquirePermission() {
+        State current = state;
+        if (current == State.CLOSED) {
+            return true;
+        }
+        if (current == State.OPEN && System.nanoTime() - openUntil < 0) {
+            // Fast path while open, no synchronization
+            return false;
+        }
+        synchronized (this) {
+            if (state == State.OPEN) {
+                if (System.nanoTime() - openUntil < 0) {
+                    return false;
+                }
+                transition(State.HALF_OPEN);
+            }
+            if (state == State.HALF_OPEN) {
+                if (probesStarted >= halfOpenProbes) {
+                    return false;
+                }
+                probesStarted++;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Record the outcome of a permitted command
+     *
+     * @param durationNanos Duration of the command
+     * @param failed        Whether the command failed
+     */
+    public synchronized void onResult(long durationNanos, boolean failed) {
+        failed = failed || durationNanos > slowCallNanos;
+        switch (state) {
+            case CLOSED -> {
+                if (recorded == windowSize) {
+                    failures -= window[position] ? 1 : 0;
+                } else {
+                    recorded++;
+                }
+                window[position] = failed;
+                failures += failed ? 1 : 0;
+                position = (position + 1) % windowSize;
+                if (recorded >= minimumCalls && failures * 100 >= failureRateThreshold * recorded) {
+                    transition(State.OPEN);
+                }
+            }
+            case HALF_OPEN -> {
+                if (failed) {
+                    transition(State.OPEN);
+                } else if (++probesSucceeded >= halfOpenProbes) {
+                    transition(State.CLOSED);
+                }
+            }
+            case OPEN -> {
+                // A command sent before the breaker opened, nothing to learn from it
+            }
+        }
+    }
+
+    /**
+     * Get the current state
+     *
+     * @return The state
+     */
+    public State getState() {
+        return state;
+    }
+
+    private void transition(State next) {
+        log.warn("Lock circuit breaker {} -> {}, failures {} of {}", state, next, failures, recorded);
+        switch (next) {
+            case OPEN -> openUntil = System.nanoTime() + openNanos;
+            case HALF_OPEN -> {
+                probesStarted = 0;
+                probesSucceeded = 0;
+            }
+            case CLOSED -> {
+                position = 0;
+                recorded = 0;
+                failures = 0;
+            }
+        }
+        state = next;
+    }
+}
@@ -0,0 +1,143 @@
+package com.example.redislock.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisPipelineException;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+
+/**
+ * Collects lock commands from many threads and sends them to Redis in shared pipeline flushes
+ * <p> A single flusher thread takes the first queued command, waits a short window for more commands
+ * to arrive, then sends up to {@code maxBatch} commands in one pipeline and completes the caller's futures.
+ * <p> Under load the callers share round trips instead of paying one each.
+ * When the queue is full the command is executed directly on the caller thread.
+ */
+@Slf4j
+public class LockCommandBatcher implements AutoCloseable {
+    /**
+     * A queued command and the future of its caller
+     */
+    private record Pending<T>(Function<RedisConnection, T> command, CompletableFuture<T> future) {
+        @SuppressWarnings("unchecked")
+        void complete(Object reply) {
+            if (reply instanceof Throwable t) {
+                future.completeExceptionally(t);
+            } else {
+                future.complete((T) reply);
+            }
+        }
+    }
+
+    private final StringRedisTemplate strRedis;
+    private final BlockingQueue<Pending<?>> queue;
+    private final int maxBatch;
+    private final long windowNanos;
+    private final Thread flusher;
+    private volatile boolean running = true;
+
+    /**
+     * @param strRedis      Redis template
+     * @param maxBatch      Maximum number of commands per flush
+     * @param window        Time to wait for more commands after the first one arrived
+     * @param queueCapacity Maximum number of queued commands
+     */
+    public LockCommandBatcher(StringRedisTemplate strRedis, int maxBatch, Duration window, int queueCapacity) {
+        this.strRedis = strRedis;
+        this.maxBatch = Math.max(maxBatch, 1);
+        this.windowNanos = window.toNanos();
+        this.queue = new ArrayBlockingQueue<>(Math.max(queueCapacity, this.maxBatch));
+        this.flusher = new Thread(this::run, "lock-command-batcher");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    /**
+     * Queue a command for the next flush.
+     * <p> The command is invoked on a pipelined connection, so its own return value is ignored,
+     * the future is completed with the pipeline reply instead.
+     * <p> A command queued while the batcher is closed and not taken by the flusher fails its future.
+     *
+     * @param command The command
+     * @param <T>     Type of the reply
+     * @return Future completed with the reply of the command
+     */
+    public <T> CompletableFuture<T> submit(Function<RedisConnection, T> command) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        Pending<T> pending = new Pending<>(command, future);
+        if (!running || !queue.offer(pending)) {
+            // Queue is full or closed, do not block the caller
+            future.complete(strRedis.execute((RedisCallback<T>) command::apply));
+        } else if (!running && queue.remove(pending)) {
+            // Closed while queueing, the flusher may have exited without draining it
+            future.completeExceptionally(new IllegalStateException("Lock command batcher is closed"));
+        }
+        return future;
+    }
+
+    private void run() {
+        List<Pending<?>> batch = new ArrayList<>(maxBatch);
+        while (running || !queue.isEmpty()) {
+            try {
+                Pending<?> first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                if (windowNanos > 0 && queue.size() < maxBatch - 1) {
+                    LockSupport.parkNanos(windowNanos);
+                }
+                queue.drainTo(batch, maxBatch - 1);
+                flush(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                running = false;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void flush(List<Pending<?>> batch) {
+        List<Object> replies;
+        try {
+            // No result serializer: the replies keep the raw types a direct call returns, byte[] stays byte[]
+            replies = strRedis.executePipelined((RedisCallback<Object>) connection -> {
+                for (Pending<?> pending : batch) {
+                    pending.command().apply(connection);
+                }
+                return null;
+            }, null);
+        } catch (RedisPipelineException e) {
+            // Some commands failed, the others still have their replies
+            replies = e.getPipelineResult();
+        } catch (Exception e) {
+            log.error("Exception occurred while flushing lock commands.", e);
+            batch.forEach(pending -> pending.future().completeExceptionally(e));
+            return;
+        }
+
+        for (int i = 0; i < batch.size(); i++) {
+            batch.get(i).complete(i < replies.size() ? replies.get(i) : null);
+        }
+    }
+
+    /**
+     * Stop the flusher thread after the queued commands are sent.
+     */
+    @Override
+    public void close() throws InterruptedException {
+        running = false;
+        flusher.join(TimeUnit.SECONDS.toMillis(5));
+    }
+}
@@ -0,0 +1,166 @@
+package com.example.redislock.utils;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executors of the lock services: locked jobs, resumed lock waits and renewal fan-out
+ * <p> In virtual thread mode every task runs on its own virtual thread, so thousands of tasks blocked on
+ * synchronous Redis calls cost no platform threads. Virtual threads need Java 21+, they are looked up at runtime
+ * so the code still runs on older releases, where the mode falls back to platform thread pools.
+ * <p> A virtual thread blocked inside a {@code synchronized} block pins its carrier thread, the lock code therefore
+ * uses {@link java.util.concurrent.locks.ReentrantLock} around blocking calls. Pinning elsewhere shows up in the
+ * {@code jdk.VirtualThreadPinned} JFR event, or on stdout with {@code jdk.tracePinnedThreads}.
+ */
+@Slf4j
+public class LockExecutors implements AutoCloseable {
+
+    /**
+     * Platform threads and sequential renewal, for tests and tools
+     */
+    public static final LockExecutors PLATFORM = new LockExecutors(false, false, 1);
+
+    private static final String TRACE_PINNED_THREADS = "jdk.tracePinnedThreads";
+
+    private final boolean virtual;
+    private final int renewalParallelism;
+    private final List<ExecutorService> executors = new CopyOnWriteArrayList<>();
+    private final List<ExecutorService> jobExecutors = new CopyOnWriteArrayList<>();
+
+    /**
+     * @param virtualThreads     Whether to run the tasks on virtual threads if the runtime supports them
+     * @param tracePinnedThreads Whether to print the stack of virtual threads blocking while pinned
+     * @param renewalParallelism Maximum number of locks renewed at the same time by one sweep
+     */
+    public LockExecutors(boolean virtualThreads, boolean tracePinnedThreads, int renewalParallelism) {
+        this.virtual = virtualThreads && virtualThreadFactory("lock-probe-") != null;
+        this.renewalParallelism = Math.max(renewalParallelism, 1);
+        if (virtualThreads && !virtual) {
+            log.warn("Virtual threads are not supported by Java {}, lock tasks run on platform threads",
+                    Runtime.version().feature());
+        }
+        // Read once by the JDK, effective if no virtual thread has been started yet
+        if (virtual && tracePinnedThreads && System.getProperty(TRACE_PINNED_THREADS) == null) {
+            System.setProperty(TRACE_PINNED_THREADS, "short");
+        }
+    }
+
+    /**
+     * Check whether the tasks run on virtual threads
+     *
+     * @return Whether virtual threads are enabled and supported
+     */
+    public boolean isVirtual() {
+        return virtual;
+    }
+
+    /**
+     * Get the maximum number of locks renewed at the same time by one sweep
+     *
+     * @return The parallelism, 1 renews sequentially on the scheduler thread
+     */
+    public int getRenewalParallelism() {
+        return renewalParallelism;
+    }
+
+    /**
+     * Create an executor, shut down with this instance
+     *
+     * @param name            Prefix of the thread names
+     * @param platformThreads Number of platform threads without virtual threads, 0 for a cached pool
+     * @return A thread-per-task executor on virtual threads, or a pool of daemon platform threads
+     */
+    public ExecutorService newExecutor(String name, int platformThreads) {
+        ExecutorService executor = virtual ? newVirtualExecutor(name) : null;
+        if (executor == null) {
+            AtomicInteger threads = new AtomicInteger();
+            ThreadFactory factory = r -> {
+                Thread thread = new Thread(r, name + threads.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            };
+            executor = platformThreads > 0 ? Executors.newFixedThreadPool(platformThreads, factory)
+                    : Executors.newCachedThreadPool(factory);
+        }
+        executors.add(executor);
+        return executor;
+    }
+
+    /**
+     * Create an executor of locked jobs, drained by {@link #awaitJobs(Duration)} before the locks are released on shutdown
+     *
+     * @param name            Prefix of the thread names
+     * @param platformThreads Number of platform threads without virtual threads, 0 for a cached pool
+     * @return A thread-per-task executor on virtual threads, or a pool of daemon platform threads
+     */
+    public ExecutorService newJobExecutor(String name, int platformThreads) {
+        ExecutorService executor = newExecutor(name, platformThreads);
+        jobExecutors.add(executor);
+        return executor;
+    }
+
+    /**
+     * Stop accepting locked jobs, and wait until the running ones are done
+     * <p> A job still running holds its lock, releasing the lock under it lets another node run the same work.
+     *
+     * @param timeout Time budget shared by all job executors
+     * @return Whether all jobs are done, false if the budget ran out or the thread was interrupted
+     */
+    public boolean awaitJobs(Duration timeout) {
+        jobExecutors.forEach(ExecutorService::shutdown);
+        long deadline = System.nanoTime() + timeout.toNanos();
+        try {
+            for (ExecutorService executor : jobExecutors) {
+                if (!executor.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+                    return false;
+                }
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    @Override
+    public void close() {
+        executors.forEach(ExecutorService::shutdown);
+        executors.clear();
+        jobExecutors.clear();
+    }
+
+    private static ExecutorService newVirtualExecutor(String name) {
+        ThreadFactory factory = virtualThreadFactory(name);
+        if (factory == null) {
+            return null;
+        }
+        try {
+            return (ExecutorService) Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class)
+                    .invoke(null, factory);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    /**
+     * {@code Thread.ofVirtual().name(name, 1).factory()}, null before Java 21
+     */
+    private static ThreadFactory virtualThreadFactory(String name) {
+        try {
+            Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderType.getMethod("name", String.class, long.class).invoke(builder, name, 1L);
+            return (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package com.example.redislock.utils;
+
+/**
+ * How concurrent requests on the same key are kept apart
+ */
+public enum LockMode {
+    /**
+     * A lock is taken before the work and released after it, concurrent requests are rejected or wait
+     */
+    PESSIMISTIC,
+    /**
+     * The version of the key is read and incremented if unchanged before the work,
+     * concurrent requests run side by side and all that read the same version but the first conflict
+     */
+    OPTIMISTIC
+}
@@ -0,0 +1,163 @@
+package com.example.redislock.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lock session of this node, in the spirit of ZooKeeper ephemeral nodes
+ * <p> The session is a single Redis key, {@code <prefix><sessionId>}, with a short TTL kept alive by a heartbeat.
+ * Locks taken by a {@link RedisLock} with a session hold {@code <sessionId>|<nodeId>} as value,
+ * and the acquire scripts treat a lock whose session key is gone as free.
+ * <p> Renewal therefore costs one PEXPIRE per node and interval, however many locks the node holds,
+ * and the locks of a crashed node become free within one session TTL.
+ * <p> If the session key expired anyway (e.g. after a long pause), the session is lost with all its locks:
+ * the listeners are notified and a new session with a new id is started, the old locks are never resurrected.
+ */
+@Slf4j
+public class LockSession implements AutoCloseable {
+    /**
+     * Separator of the session id and the node id in a lock value, see {@link #token(String)}
+     */
+    public static final String TOKEN_SEPARATOR = "|";
+
+    private final StringRedisTemplate strRedis;
+    private final String keyPrefix;
+    private final Duration ttl;
+    private final ScheduledExecutorService heartbeat;
+
+    /**
+     * Confirmed lifetime of the current session, keyed by the session id
+     */
+    private final LeaseTable lease = new LeaseTable();
+
+    private final List<Runnable> lossListeners = new CopyOnWriteArrayList<>();
+
+    private volatile String id;
+
+    /**
+     * @param strRedis  Redis template
+     * @param keyPrefix Prefix of the session keys
+     * @param ttl       TTL of the session key
+     * @param interval  Heartbeat interval, well below the TTL
+     */
+    public LockSession(StringRedisTemplate strRedis, String keyPrefix, Duration ttl, Duration interval) {
+        this.strRedis = strRedis;
+        this.keyPrefix = keyPrefix;
+        this.ttl = ttl;
+        this.heartbeat = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "lock-session-heartbeat");
+            thread.setDaemon(true);
+            return thread;
+        });
+        start();
+        long intervalMillis = Math.max(interval.toMillis(), 1);
+        heartbeat.scheduleWithFixedDelay(this::beat, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Get the id of the current session
+     *
+     * @return The session Id
+     */
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * Get the prefix of the session keys, the acquire scripts check {@code prefix + sessionId}
+     *
+     * @return The key prefix
+     */
+    public String getKeyPrefix() {
+        return keyPrefix;
+    }
+
+    /**
+     * Lock value of a node in the current session
+     *
+     * @param nodeId The node Id
+     * @return {@code <sessionId>|<nodeId>}
+     */
+    public String token(String nodeId) {
+        return id + TOKEN_SEPARATOR + nodeId;
+    }
+
+    /**
+     * Check locally whether the session was confirmed recently enough to still be alive
+     *
+     * @return Whether the session is alive
+     */
+    public boolean isAlive() {
+        return lease.isHeld(id);
+    }
+
+    /**
+     * Get locally the remaining confirmed lifetime of the session
+     *
+     * @return The remaining lifetime, {@link Duration#ZERO} if the session is not alive
+     */
+    public Duration remaining() {
+        return lease.remainingLease(id);
+    }
+
+    /**
+     * Register a listener notified when the session is lost, with all locks taken in it
+     *
+     * @param listener The listener
+     */
+    public void addLossListener(Runnable listener) {
+        lossListeners.add(listener);
+    }
+
+    private void start() {
+        String next = Utils.uuidBase64();
+        long start = System.nanoTime();
+        id = next;
+        try {
+            strRedis.opsForValue().set(keyPrefix + next, "1", ttl);
+            lease.confirm(next, start, ttl);
+        } catch (Exception e) {
+            // The heartbeat finds the key missing and starts over
+            log.error("Failed to start lock session {}: {}", next, e.getMessage());
+        }
+    }
+
+    private void beat() {
+        String current = id;
+        long start = System.nanoTime();
+        try {
+            if (Boolean.TRUE.equals(strRedis.expire(keyPrefix + current, ttl))) {
+                lease.confirm(current, start, ttl);
+                return;
+            }
+        } catch (Exception e) {
+            log.error("Failed to renew lock session {}: {}", current, e.getMessage());
+            return;
+        }
+
+        log.warn("Lock session {} expired, its locks are lost", current);
+        lease.remove(current);
+        lossListeners.forEach(Runnable::run);
+        start();
+    }
+
+    /**
+     * Stop the heartbeat and end the session, which frees all its locks at once.
+     */
+    @Override
+    public void close() {
+        heartbeat.shutdownNow();
+        try {
+            strRedis.delete(keyPrefix + id);
+        } catch (Exception e) {
+            log.error("Failed to end lock session {}: {}", id, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package com.example.redislock.utils;
+
+import java.io.Serial;
+
+/**
+ * Thrown instead of sending a lock command while the {@link LockCircuitBreaker} is open
+ * <p> Raised on every rejected command, so it carries no stack trace.
+ */
+public class LockUnavailableException extends RuntimeException {
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    public LockUnavailableException(String message) {
+        super(message, null, false, false);
+    }
+}
@@ -0,0 +1,217 @@
+package com.example.redislock.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Lock wait registry
+ * <p> Keeps the requests waiting for a lock without holding a thread: a waiter is a future plus the commands
+ * to acquire and release its lock. The waiters of a key are retried in arrival order when the key is released,
+ * announced on a pub/sub channel by the releasing node, and at a poll interval for releases nobody announced,
+ * e.g. an expired lock.
+ * <p> A granted waiter is completed on a resume thread, so the continuation does not block the retries.
+ * The resume executor may run on virtual threads, see {@link LockExecutors}.
+ * A waiter completed by its timeout or cancelled while its lock was being acquired releases the lock again.
+ */
+@Slf4j
+public class LockWaitRegistry implements MessageListener, AutoCloseable {
+
+    /**
+     * Registry without waits, every wait times out at once
+     */
+    public static final LockWaitRegistry DISABLED = new LockWaitRegistry();
+
+    /**
+     * A request waiting for a lock
+     *
+     * @param granted Completed with true when the lock is acquired, false on timeout
+     * @param acquire Tries to acquire the lock
+     * @param release Releases the lock acquired for a waiter that is gone
+     */
+    private record Waiter(CompletableFuture<Boolean> granted, BooleanSupplier acquire, Runnable release) {
+    }
+
+    /**
+     * Waiters of a key in arrival order, retried under a {@link ReentrantLock}, which unlike a monitor
+     * does not pin a virtual thread blocked in the acquire command
+     */
+    private static class WaitQueue extends ConcurrentLinkedQueue<Waiter> {
+        private final ReentrantLock retryLock = new ReentrantLock();
+    }
+
+    private final StringRedisTemplate strRedis;
+    private final String channel;
+    private final ScheduledExecutorService retries;
+    private final ExecutorService resumes;
+
+    /**
+     * Key to its waiters in arrival order
+     */
+    private final Map<String, WaitQueue> waiters = new ConcurrentHashMap<>();
+
+    private LockWaitRegistry() {
+        this.strRedis = null;
+        this.channel = null;
+        this.retries = null;
+        this.resumes = null;
+    }
+
+    /**
+     * @param strRedis     Redis template, used to announce releases
+     * @param container    Listener container, used to receive the releases of other nodes
+     * @param channel      Pub/sub channel of the releases
+     * @param pollInterval Interval of the retries without an announcement
+     * @param threads      Number of threads retrying the locks
+     * @param resumes      Executor completing the granted waits, shut down on close
+     */
+    public LockWaitRegistry(StringRedisTemplate strRedis, RedisMessageListenerContainer container,
+                            String channel, Duration pollInterval, int threads, ExecutorService resumes) {
+        this.strRedis = strRedis;
+        this.channel = channel;
+        AtomicInteger retryThreads = new AtomicInteger();
+        this.retries = Executors.newScheduledThreadPool(Math.max(threads, 1), r -> {
+            Thread thread = new Thread(r, "lock-wait-" + retryThreads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.resumes = resumes;
+        long pollMillis = Math.max(pollInterval.toMillis(), 1);
+        retries.scheduleWithFixedDelay(this::retryAll, pollMillis, pollMillis, TimeUnit.MILLISECONDS);
+        container.addMessageListener(this, new ChannelTopic(channel));
+    }
+
+    /**
+     * Wait for a lock without blocking
+     * <p> The lock is tried at once, then whenever the key is released, until it is acquired or the timeout passes.
+     * Cancel the returned future to give up the wait.
+     *
+     * @param key     The key
+     * @param timeout Maximum wait
+     * @param acquire Tries to acquire the lock, returns whether it was acquired
+     * @param release Releases the lock, called if it was acquired for a waiter that is gone
+     * @return Completed with true once the lock is acquired, or false when the timeout passed
+     */
+    public CompletableFuture<Boolean> await(String key, Duration timeout, BooleanSupplier acquire, Runnable release) {
+        if (retries == null) {
+            return CompletableFuture.completedFuture(false);
+        }
+        CompletableFuture<Boolean> granted = new CompletableFuture<Boolean>()
+                .completeOnTimeout(false, timeout.toMillis(), TimeUnit.MILLISECONDS);
+        Waiter waiter = new Waiter(granted, acquire, release);
+        waiters.compute(key, (k, queue) -> {
+            WaitQueue result = queue == null ? new WaitQueue() : queue;
+            result.add(waiter);
+            return result;
+        });
+        signal(key);
+        return granted;
+    }
+
+    /**
+     * Announce that a key was released, so its waiters on every node retry at once
+     *
+     * @param key The key
+     */
+    public void released(String key) {
+        if (retries == null) {
+            return;
+        }
+        signal(key);
+        try {
+            strRedis.convertAndSend(channel, key);
+        } catch (Exception e) {
+            // The waiters of other nodes retry at the poll interval
+            log.debug("Failed to announce release of {}: {}", key, e.getMessage());
+        }
+    }
+
+    /**
+     * Number of waiting requests on this node
+     *
+     * @return The number of waiters, including ones timed out and not removed yet
+     */
+    public int size() {
+        return waiters.values().stream().mapToInt(Queue::size).sum();
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        signal(new String(message.getBody(), StandardCharsets.UTF_8));
+    }
+
+    private void signal(String key) {
+        if (waiters.containsKey(key)) {
+            retries.execute(() -> retry(key));
+        }
+    }
+
+    private void retryAll() {
+        waiters.keySet().forEach(this::retry);
+    }
+
+    /**
+     * Try the lock for the first waiter of the key still waiting, one retry per key at a time.
+     */
+    private void retry(String key) {
+        WaitQueue queue = waiters.get(key);
+        if (queue == null) {
+            return;
+        }
+        Waiter winner = null;
+        queue.retryLock.lock();
+        try {
+            Waiter head;
+            while ((head = queue.peek()) != null) {
+                if (head.granted().isDone()) {
+                    queue.poll();
+                    continue;
+                }
+                if (head.acquire().getAsBoolean()) {
+                    winner = queue.poll();
+                }
+                break;
+            }
+        } finally {
+            queue.retryLock.unlock();
+        }
+        waiters.computeIfPresent(key, (k, q) -> q.isEmpty() ? null : q);
+        if (winner != null) {
+            Waiter granted = winner;
+            resumes.execute(() -> {
+                if (!granted.granted().complete(true)) {
+                    granted.release().run();
+                }
+            });
+        }
+    }
+
+    @Override
+    public void close() {
+        if (retries == null) {
+            return;
+        }
+        retries.shutdownNow();
+        resumes.shutdown();
+        waiters.values().forEach(queue -> queue.forEach(waiter -> waiter.granted().complete(false)));
+        waiters.clear();
+    }
+}
@@ -0,0 +1,44 @@
+package com.example.redislock.utils;
+
+/**
+ * The version an optimistic request read before its handler runs, see {@link LockMode#OPTIMISTIC}
+ * <p> Bound to the handler thread while the handler runs. The handler makes its own write conditional on it,
+ * e.g. {@code UPDATE orders SET ..., version = :next WHERE id = :id AND version = :version},
+ * so a request that lost the race cannot overwrite the data of the request that won.
+ *
+ * @param key     The version key
+ * @param version The version read before the handler ran, 0 if the key had none
+ */
+public record OptimisticVersion(String key, long version) {
+
+    private static final ThreadLocal<OptimisticVersion> CURRENT = new ThreadLocal<>();
+
+    /**
+     * The version of the optimistic request running on this thread
+     *
+     * @return The version, null outside of an optimistic handler
+     */
+    public static OptimisticVersion current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Bind the version to this thread while the handler runs
+     *
+     * @param version The version, null to unbind
+     */
+    public static void bind(OptimisticVersion version) {
+        if (version == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(version);
+        }
+    }
+
+    /**
+     * The version committed if the request wins
+     */
+    public long next() {
+        return version + 1;
+    }
+}
@@ -0,0 +1,49 @@
+package com.example.redislock.utils;
+
+import java.time.Duration;
+
+/**
+ * Outcome of a rate limit check, see {@link RateLimiter}
+ *
+ * @param status     The outcome
+ * @param retryAfter Time until the next permit is available if limited, null otherwise
+ */
+public record RateLimitResult(Status status, Duration retryAfter) {
+
+    public enum Status {
+        /**
+         * A permit was taken, the request may proceed.
+         */
+        ALLOWED,
+        /**
+         * The rate is exceeded.
+         */
+        LIMITED,
+        /**
+         * The backend failed or is unavailable, whether the rate is exceeded is unknown.
+         */
+        ERROR
+    }
+
+    private static final RateLimitResult ALLOWED = new RateLimitResult(Status.ALLOWED, null);
+    private static final RateLimitResult ERROR = new RateLimitResult(Status.ERROR, null);
+
+    public static RateLimitResult allowed() {
+        return ALLOWED;
+    }
+
+    /**
+     * @param retryAfter Time until the next permit is available
+     */
+    public static RateLimitResult limited(Duration retryAfter) {
+        return new RateLimitResult(Status.LIMITED, retryAfter);
+    }
+
+    public static RateLimitResult error() {
+        return ERROR;
+    }
+
+    public boolean isAllowed() {
+        return status == Status.ALLOWED;
+    }
+}
@@ -0,0 +1,198 @@
+package com.example.redislock.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Distributed rate limiter using the generic cell rate algorithm (GCRA) in Redis
+ * <p> A key allows {@code rate} permits per {@code period}, and bursts of up to {@code burst} permits.
+ * Redis stores one value per key, the theoretical arrival time (TAT) of the next permit, and every check
+ * is a single script call using the clock of Redis, so the nodes need no synchronized clocks.
+ * <p> With a batch size above 1, a check that goes to Redis takes up to a batch of permits at once, and the next
+ * checks on this node consume them locally until they run out, or until the time they cover has passed.
+ * A hot key then costs one round trip per batch, the price being that a node may use its permits
+ * a little later than they were counted.
+ */
+@Slf4j
+public class RateLimiter {
+
+    /**
+     * Take up to ARGV[3] permits, returns {@code {granted, 0}}, or {@code {0, wait}} with the wait in microseconds
+     * until the next permit
+     * <p> ARGV: emission interval in microseconds, burst, requested permits
+     */
+    private static final String GCRA_LUA = "local t = redis.call(\"time\") local now = t[1] * 1000000 + t[2] local interval = tonumber(ARGV[1]) local burst = tonumber(ARGV[2]) local tat = tonumber(redis.call(\"get\", KEYS[1]) or now) if tat < now then tat = now end local n = math.min(math.floor((burst * interval - (tat - now)) / interval), tonumber(ARGV[3])) if n < 1 then return {0, tat + interval - burst * interval - now} end tat = tat + n * interval redis.call(\"set\", KEYS[1], string.format(\"%d\", tat), \"PX\", math.ceil((tat - now) / 1000)) return {n, 0}";
+
+    /**
+     * Number of local entries above which the expired ones are dropped
+     */
+    private static final int LOCAL_SWEEP_THRESHOLD = 10_000;
+
+    /**
+     * Permits taken from Redis in a batch and not used yet
+     */
+    private record Batch(AtomicInteger permits, long expiresAt) {
+        boolean take(long now) {
+            if (expiresAt - now <= 0) {
+                return false;
+            }
+            int left;
+            do {
+                left = permits.get();
+                if (left <= 0) {
+                    return false;
+                }
+            } while (!permits.compareAndSet(left, left - 1));
+            return true;
+        }
+    }
+
+    private final StringRedisTemplate strRedis;
+    private final LockCircuitBreaker breaker;
+    private final String keyPrefix;
+
+    /**
+     * Key to its batch of permits on this node
+     */
+    private final Map<String, Batch> batches = new ConcurrentHashMap<>();
+
+    /**
+     * Key to its TAT in nanoseconds, for the checks made in the JVM while Redis is unavailable
+     */
+    private final Map<String, Long> localTats = new ConcurrentHashMap<>();
+
+    /**
+     * @param strRedis  Redis template
+     * @param breaker   Circuit breaker shared with the locks, null if disabled
+     * @param keyPrefix Prefix of the TAT keys
+     */
+    public RateLimiter(StringRedisTemplate strRedis, LockCircuitBreaker breaker, String keyPrefix) {
+        this.strRedis = strRedis;
+        this.breaker = breaker;
+        this.keyPrefix = keyPrefix;
+    }
+
+    /**
+     * Take a permit of the key
+     *
+     * @param key    The key, e.g. the customer Id
+     * @param rate   Permits per period
+     * @param period The period
+     * @param burst  Maximum permits taken at once, at least 1
+     * @param batch  Permits taken from Redis at once and used locally, 1 goes to Redis on every check
+     * @return Allowed, limited with the time until the next permit, or error if Redis failed
+     */
+    public RateLimitResult tryAcquire(String key, int rate, Duration period, int burst, int batch) {
+        long now = System.nanoTime();
+        if (batch > 1) {
+            Batch current = batches.get(key);
+            if (current != null && current.take(now)) {
+                return RateLimitResult.allowed();
+            }
+        }
+        long interval = intervalMicros(rate, period);
+        int requested = Math.max(Math.min(batch, burst), 1);
+        List<Object> reply;
+        try {
+            reply = eval(keyPrefix + key, interval, burst, requested);
+        } catch (Exception e) {
+            if (e instanceof LockUnavailableException) {
+                log.debug("Rate limit of {} not checked: {}", key, e.getMessage());
+            } else {
+                log.error("Exception occurred while checking the rate limit of {}", key, e);
+            }
+            return RateLimitResult.error();
+        }
+        if (reply == null || reply.size() < 2) {
+            return RateLimitResult.error();
+        }
+        long granted = ((Number) reply.get(0)).longValue();
+        if (granted < 1) {
+            return RateLimitResult.limited(Duration.ofNanos(((Number) reply.get(1)).longValue() * 1000));
+        }
+        if (granted > 1) {
+            // The permits cover the time until the TAT moved by them
+            sweep(now);
+            batches.put(key, new Batch(new AtomicInteger((int) granted - 1), now + granted * interval * 1000));
+        }
+        return RateLimitResult.allowed();
+    }
+
+    /**
+     * Take a permit of the key, counted in this JVM only, for the {@link DegradePolicy#LOCAL} policy
+     *
+     * @param key    The key
+     * @param rate   Permits per period
+     * @param period The period
+     * @param burst  Maximum permits taken at once, at least 1
+     * @return Allowed, or limited with the time until the next permit
+     */
+    public RateLimitResult tryAcquireLocally(String key, int rate, Duration period, int burst) {
+        long interval = intervalMicros(rate, period) * 1000;
+        long now = System.nanoTime();
+        long[] wait = {0};
+        sweep(now);
+        localTats.compute(key, (k, tat) -> {
+            long start = tat == null || tat - now < 0 ? now : tat;
+            if (start + interval - now > (long) burst * interval) {
+                wait[0] = start + interval - (long) burst * interval - now;
+                return start;
+            }
+            return start + interval;
+        });
+        return wait[0] > 0 ? RateLimitResult.limited(Duration.ofNanos(wait[0])) : RateLimitResult.allowed();
+    }
+
+    private List<Object> eval(String key, long interval, int burst, int requested) {
+        if (breaker == null) {
+            return send(key, interval, burst, requested);
+        }
+        if (!breaker.tryAcquirePermission()) {
+            throw new LockUnavailableException("Lock circuit breaker is open");
+        }
+        long start = System.nanoTime();
+        try {
+            List<Object> result = send(key, interval, burst, requested);
+            breaker.onResult(System.nanoTime() - start, false);
+            return result;
+        } catch (RuntimeException e) {
+            breaker.onResult(System.nanoTime() - start, true);
+            throw e;
+        }
+    }
+
+    private List<Object> send(String key, long interval, int burst, int requested) {
+        return strRedis.execute((RedisCallback<List<Object>>) connection -> connection.scriptingCommands().eval(
+                GCRA_LUA.getBytes(StandardCharsets.UTF_8),
+                ReturnType.MULTI, 1,
+                key.getBytes(StandardCharsets.UTF_8),
+                String.valueOf(interval).getBytes(StandardCharsets.UTF_8),
+                String.valueOf(burst).getBytes(StandardCharsets.UTF_8),
+                String.valueOf(requested).getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Drop the expired local entries once there are many of them.
+     */
+    private void sweep(long now) {
+        if (batches.size() > LOCAL_SWEEP_THRESHOLD) {
+            batches.values().removeIf(batch -> batch.expiresAt() - now <= 0 || batch.permits().get() <= 0);
+        }
+        if (localTats.size() > LOCAL_SWEEP_THRESHOLD) {
+            localTats.values().removeIf(tat -> tat - now <= 0);
+        }
+    }
+
+    private static long intervalMicros(int rate, Duration period) {
+        return Math.max(period.toNanos() / 1000 / Math.max(rate, 1), 1);
+    }
+}
@@ -1,21 +1,38 @@
 package com.example.redislock.utils;
 
+import com.example.redislock.utils.jfr.LockAcquireEvent;
+import com.example.redislock.utils.jfr.LockReleaseEvent;
+import io.lettuce.core.RedisFuture;
+import io.lettuce.core.ScriptOutputType;
+import io.lettuce.core.cluster.api.async.RedisClusterAsyncCommands;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.RedisSystemException;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisPipelineException;
 import org.springframework.data.redis.connection.RedisScriptingCommands;
 import org.springframework.data.redis.connection.RedisStringCommands;
 import org.springframework.data.redis.connection.ReturnType;
 import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
 import org.springframework.data.redis.core.types.Expiration;
 
 import java.nio.charset.StandardCharsets;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 /**
  * Implement distributed locking using Redis
  */
 @Slf4j
-public class RedisLock {
+public class RedisLock implements LockBackend {
     /**
      * Unlock script
      */
@@ -24,7 +41,55 @@ public class RedisLock {
     /**
      * Update expiration time
      */
-    private static final String EXPIRE_LUA = "if redis.call(\"get\", KEYS[1]) == ARGV[1] then return redis.call(\"expire\", KEYS[1], ARGV[2]) else return 0 end";
+    private static final String EXPIRE_LUA = "if redis.call(\"get\", KEYS[1]) == ARGV[1] then return redis.call(\"pexpire\", KEYS[1], ARGV[2]) else return 0 end";
+
+    /**
+     * Release every key held by the node, returns the number of released keys
+     */
+    private static final String RELEASE_ALL_LUA = "local n = 0 for _, key in ipairs(KEYS) do if redis.call(\"get\", key) == ARGV[1] then n = n + redis.call(\"del\", key) end end return n";
+
+    /**
+     * Acquire the lock, or mark it dirty if it is held, so the holder runs once more
+     * <p> A fresh acquisition clears a stale dirty mark, the new run covers it.
+     */
+    private static final String LOCK_OR_MARK_DIRTY_LUA = "if redis.call(\"set\", KEYS[1], ARGV[1], \"NX\", \"PX\", ARGV[2]) then redis.call(\"del\", KEYS[2]) return 1 end redis.call(\"set\", KEYS[2], \"1\", \"PX\", ARGV[2]) return 0";
+
+    /**
+     * Release the lock unless it was marked dirty, returns 1 if the lock is kept for one more run
+     */
+    private static final String UNLOCK_UNLESS_DIRTY_LUA = "if redis.call(\"get\", KEYS[1]) ~= ARGV[1] then return -1 end if redis.call(\"del\", KEYS[2]) == 1 then redis.call(\"pexpire\", KEYS[1], ARGV[2]) return 1 end redis.call(\"del\", KEYS[1]) return 0";
+
+    /**
+     * Acquire script with a session, a lock whose session key is gone is free, returns -1 if the own session is gone
+     * <p> ARGV: token, expiration in milliseconds, session key prefix, own session Id
+     */
+    private static final String SESSION_LOCK_LUA = "if redis.call(\"exists\", ARGV[3] .. ARGV[4]) == 0 then return -1 end local v = redis.call(\"get\", KEYS[1]) if v then local s = string.match(v, \"^(.-)|\") if not s or redis.call(\"exists\", ARGV[3] .. s) == 1 then return 0 end end redis.call(\"set\", KEYS[1], ARGV[1], \"PX\", ARGV[2]) return 1";
+
+    /**
+     * {@link #LOCK_OR_MARK_DIRTY_LUA} with a session, same arguments as {@link #SESSION_LOCK_LUA}
+     */
+    private static final String SESSION_LOCK_OR_MARK_DIRTY_LUA = "if redis.call(\"exists\", ARGV[3] .. ARGV[4]) == 0 then return -1 end local v = redis.call(\"get\", KEYS[1]) if v then local s = string.match(v, \"^(.-)|\") if not s or redis.call(\"exists\", ARGV[3] .. s) == 1 then redis.call(\"set\", KEYS[2], \"1\", \"PX\", ARGV[2]) return 0 end end redis.call(\"set\", KEYS[1], ARGV[1], \"PX\", ARGV[2]) redis.call(\"del\", KEYS[2]) return 1";
+
+    /**
+     * Acquire the lock, or report its holder and remaining TTL in the same call
+     * <p> Returns {@code {1}} if acquired, {@code {0, holder, pttl}} otherwise.
+     */
+    private static final String ACQUIRE_LUA = "if redis.call(\"set\", KEYS[1], ARGV[1], \"NX\", \"PX\", ARGV[2]) then return {1} end return {0, redis.call(\"get\", KEYS[1]), redis.call(\"pttl\", KEYS[1])}";
+
+    /**
+     * SHA1 of the unlock script, for EVALSHA
+     */
+    private static final String UNLOCK_SHA = new DefaultRedisScript<>(UNLOCK_LUA, Long.class).getSha1();
+
+    /**
+     * Suffix of the dirty mark of a lock, the mark lives next to the lock key and is not a lock itself
+     */
+    public static final String DIRTY_SUFFIX = ":dirty";
+
+    /**
+     * Maximum number of keys passed to a single release-all script call
+     */
+    private static final int RELEASE_BATCH = 500;
 
     /**
      * Current node
@@ -33,33 +98,148 @@ public class RedisLock {
 
     private final StringRedisTemplate strRedis;
 
+    /**
+     * Optional batcher sharing pipeline flushes between threads, commands are sent directly if null
+     */
+    private final LockCommandBatcher batcher;
+
+    /**
+     * Optional circuit breaker rejecting commands while Redis is degraded, commands are always sent if null
+     */
+    private final LockCircuitBreaker breaker;
+
+    /**
+     * Optional session of this node, locks are held as long as the session lives if set, see {@link LockSession}
+     */
+    private final LockSession session;
+
+    /**
+     * Leases of the keys locked by this node, used for local ownership checks and to release them all on shutdown
+     */
+    private final LeaseTable leases = new LeaseTable();
+
     public RedisLock(String nodeId, StringRedisTemplate strRedis) {
+        this(nodeId, strRedis, null);
+    }
+
+    public RedisLock(String nodeId, StringRedisTemplate strRedis, LockCommandBatcher batcher) {
+        this(nodeId, strRedis, batcher, null);
+    }
+
+    public RedisLock(String nodeId, StringRedisTemplate strRedis, LockCommandBatcher batcher, LockCircuitBreaker breaker) {
+        this(nodeId, strRedis, batcher, breaker, null);
+    }
+
+    public RedisLock(String nodeId, StringRedisTemplate strRedis, LockCommandBatcher batcher, LockCircuitBreaker breaker,
+                     LockSession session) {
         this.nodeId = nodeId;
         this.strRedis = strRedis;
+        this.batcher = batcher;
+        this.breaker = breaker;
+        this.session = session;
+        if (session != null) {
+            // The locks of a lost session are free for everyone, forget them
+            session.addLossListener(leases::clear);
+        }
+    }
+
+    /**
+     * Get the id of the node owning the locks
+     *
+     * @return The node Id
+     */
+    @Override
+    public String getNodeId() {
+        return nodeId;
     }
 
     /**
      * Acquire lock
      * <p> Redis storage:
      * <p>  - Key is a custom value passed in by the request parameters
-     * <p>  - Value is the current node Id (randomly generated when creating LockService)
+     * <p>  - Value is the current node Id (randomly generated when creating LockService),
+     * or {@code <sessionId>|<nodeId>} with a session, where a lock of a dead session counts as free
      *
      * @param key    The key
      * @param expire Expiration time
      * @return Whether the lock is acquired
      */
+    @Override
     public boolean lock(String key, Duration expire) {
+        LockAcquireEvent event = new LockAcquireEvent();
+        event.begin();
+        boolean acquired = session != null ? lockInSession(SESSION_LOCK_LUA, key, expire, key) : setIfAbsent(key, expire);
+        event.complete(key, nodeId, acquired);
+        return acquired;
+    }
+
+    /**
+     * Acquire lock, or tell who holds it and for how long
+     * <p> Without a session the holder and its remaining TTL are read by the acquire script itself, see
+     * {@link #ACQUIRE_LUA}. With a session the holder is not reported, a contended lock may be held by a
+     * dead session until its key expires.
+     *
+     * @param key    The key
+     * @param expire Expiration time
+     * @return The outcome
+     */
+    @Override
+    public AcquireResult tryAcquire(String key, Duration expire) {
+        if (session != null) {
+            return LockBackend.super.tryAcquire(key, expire);
+        }
+        LockAcquireEvent event = new LockAcquireEvent();
+        event.begin();
+        AcquireResult result = acquireOrInspect(key, expire);
+        event.complete(key, nodeId, result.isAcquired());
+        return result;
+    }
+
+    private AcquireResult acquireOrInspect(String key, Duration expire) {
+        long start = System.nanoTime();
         try {
-            Boolean result = strRedis.execute((RedisCallback<Boolean>) connection -> {
+            List<Object> reply = execute(connection -> connection.scriptingCommands().eval(
+                    ACQUIRE_LUA.getBytes(StandardCharsets.UTF_8),
+                    ReturnType.MULTI, 1,
+                    key.getBytes(StandardCharsets.UTF_8),
+                    owner().getBytes(StandardCharsets.UTF_8),
+                    String.valueOf(expire.toMillis()).getBytes(StandardCharsets.UTF_8)));
+            if (reply == null || reply.isEmpty()) {
+                return AcquireResult.error();
+            }
+            if (((Number) reply.get(0)).longValue() == 1) {
+                leases.confirm(key, start, expire);
+                return AcquireResult.acquired();
+            }
+            // A nil holder ends the Lua table, the lock expired between SET and GET
+            String holder = reply.size() > 1 && reply.get(1) instanceof byte[] bytes
+                    ? new String(bytes, StandardCharsets.UTF_8) : null;
+            long pttl = reply.size() > 2 ? ((Number) reply.get(2)).longValue() : -2;
+            return AcquireResult.contended(holder, pttl >= 0 ? Duration.ofMillis(pttl) : null);
+        } catch (Exception e) {
+            logFailure("Exception occurred while setting redis.", e);
+        }
+
+        return AcquireResult.error();
+    }
+
+    private boolean setIfAbsent(String key, Duration expire) {
+        long start = System.nanoTime();
+        try {
+            Boolean result = execute(connection -> {
                 RedisStringCommands commands = connection.stringCommands();
                 return commands.set(key.getBytes(StandardCharsets.UTF_8),
-                        nodeId.getBytes(StandardCharsets.UTF_8),
+                        owner().getBytes(StandardCharsets.UTF_8),
                         Expiration.from(expire),
                         RedisStringCommands.SetOption.SET_IF_ABSENT);
             });
-            return result == null ? false : result;
+            if (Boolean.TRUE.equals(result)) {
+                leases.confirm(key, start, expire);
+                return true;
+            }
+            return false;
         } catch (Exception e) {
-            log.error("Exception occurred while setting redis.", e);
+            logFailure("Exception occurred while setting redis.", e);
         }
 
         return false;
@@ -73,20 +253,153 @@ public class RedisLock {
      * @param key The key
      * @return Whether the lock was released successfully
      */
+    @Override
     public boolean unlock(String key) {
+        LockReleaseEvent event = new LockReleaseEvent();
+        event.begin();
+        boolean released = release(key);
+        event.complete(key, nodeId, released);
+        return released;
+    }
+
+    private boolean release(String key) {
+        leases.remove(key);
         try {
-            Long result = strRedis.execute((RedisCallback<Long>) connection -> {
+            Long result = execute(connection -> {
                 RedisScriptingCommands commands = connection.scriptingCommands();
                 return commands.eval(UNLOCK_LUA.getBytes(StandardCharsets.UTF_8),
                         ReturnType.INTEGER, 1,
                         key.getBytes(StandardCharsets.UTF_8),
-                        nodeId.getBytes(StandardCharsets.UTF_8));
+                        owner().getBytes(StandardCharsets.UTF_8));
             });
             return result != null && result > 0;
         } catch (Exception e) {
-            log.error("Exception occurred while releasing lock.", e);
+            logFailure("Exception occurred while releasing lock.", e);
+        }
+
+        return false;
+    }
+
+    /**
+     * Release several locks held by this node in one round trip
+     * <p> The unlock script is sent by its SHA1 in one pipeline, one call per key, so the keys may live
+     * on different cluster nodes. The releases Redis answered with NOSCRIPT are sent again with the full script,
+     * the others are not sent twice, so a key released by the first pipeline is not reported as not held.
+     *
+     * @param keys The keys
+     * @return The keys released
+     */
+    @Override
+    public Set<String> unlockAll(Collection<String> keys) {
+        Set<String> released = new HashSet<>();
+        if (keys.isEmpty()) {
+            return released;
+        }
+        List<String> batch = new ArrayList<>(keys);
+        List<LockReleaseEvent> events = new ArrayList<>(batch.size());
+        for (String key : batch) {
+            leases.remove(key);
+            LockReleaseEvent event = new LockReleaseEvent();
+            event.begin();
+            events.add(event);
+        }
+        List<Object> results = List.of();
+        try {
+            results = guarded(() -> {
+                List<Object> replies = retryNoScript(batch, unlockPipelined(batch, true));
+                for (Object reply : replies) {
+                    if (reply instanceof Exception e) {
+                        throw new RedisPipelineException(e, replies);
+                    }
+                }
+                return replies;
+            });
+        } catch (RedisPipelineException e) {
+            // Some releases failed, the others went through
+            results = e.getPipelineResult();
+            logFailure("Exception occurred while releasing locks.", e);
+        } catch (Exception e) {
+            logFailure("Exception occurred while releasing locks.", e);
         }
+        for (int i = 0; i < results.size(); i++) {
+            if (results.get(i) instanceof Long n && n > 0) {
+                released.add(batch.get(i));
+            }
+        }
+        for (int i = 0; i < batch.size(); i++) {
+            events.get(i).complete(batch.get(i), nodeId, released.contains(batch.get(i)));
+        }
+        return released;
+    }
 
+    /**
+     * Send again with EVAL only the releases whose EVALSHA was answered with NOSCRIPT
+     *
+     * @param keys    The keys of the pipeline
+     * @param replies The replies of the pipeline, the exception of each failed call
+     * @return The replies, the retried ones replaced by the replies of the EVAL
+     */
+    private List<Object> retryNoScript(List<String> keys, List<Object> replies) {
+        List<Integer> missing = new ArrayList<>();
+        for (int i = 0; i < replies.size(); i++) {
+            if (replies.get(i) instanceof Throwable t && isNoScript(t)) {
+                missing.add(i);
+            }
+        }
+        if (missing.isEmpty()) {
+            return replies;
+        }
+        List<Object> merged = new ArrayList<>(replies);
+        List<Object> retried = unlockPipelined(missing.stream().map(keys::get).toList(), false);
+        for (int i = 0; i < missing.size(); i++) {
+            merged.set(missing.get(i), retried.get(i));
+        }
+        return merged;
+    }
+
+    /**
+     * Send the unlock script for each key without waiting for the replies in between
+     * <p> Sent on the Lettuce connection directly: a Spring pipeline with a failed call throws away
+     * the replies of the calls that succeeded.
+     *
+     * @param keys  The keys
+     * @param bySha Whether to send the script by its SHA1
+     * @return The reply of each call, the exception if the call failed
+     */
+    @SuppressWarnings("unchecked")
+    private List<Object> unlockPipelined(List<String> keys, boolean bySha) {
+        return strRedis.execute((RedisCallback<List<Object>>) connection -> {
+            RedisClusterAsyncCommands<byte[], byte[]> commands =
+                    (RedisClusterAsyncCommands<byte[], byte[]>) connection.getNativeConnection();
+            byte[] token = owner().getBytes(StandardCharsets.UTF_8);
+            List<RedisFuture<Long>> futures = new ArrayList<>(keys.size());
+            for (String key : keys) {
+                byte[][] rawKeys = {key.getBytes(StandardCharsets.UTF_8)};
+                futures.add(bySha
+                        ? commands.evalsha(UNLOCK_SHA, ScriptOutputType.INTEGER, rawKeys, token)
+                        : commands.eval(UNLOCK_LUA.getBytes(StandardCharsets.UTF_8), ScriptOutputType.INTEGER, rawKeys, token));
+            }
+            List<Object> replies = new ArrayList<>(futures.size());
+            for (RedisFuture<Long> future : futures) {
+                try {
+                    replies.add(future.get());
+                } catch (ExecutionException e) {
+                    replies.add(e.getCause());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RedisSystemException("Interrupted while releasing locks", e);
+                }
+            }
+            return replies;
+        });
+    }
+
+    private static boolean isNoScript(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause.getMessage() != null && cause.getMessage().contains("NOSCRIPT")) {
+                return true;
+            }
+        }
         return false;
     }
 
@@ -97,22 +410,295 @@ public class RedisLock {
      * @param expire New expiration time
      * @return Whether the expiration time was refreshed successfully
      */
+    @Override
     public boolean refreshLockExpire(String key, Duration expire) {
+        long start = System.nanoTime();
         try {
-            Long result = strRedis.execute((RedisCallback<Long>) connection -> {
+            Long result = execute(connection -> {
                 RedisScriptingCommands commands = connection.scriptingCommands();
                 return commands.eval(EXPIRE_LUA.getBytes(StandardCharsets.UTF_8),
                         ReturnType.INTEGER, 1,
                         key.getBytes(StandardCharsets.UTF_8),
-                        nodeId.getBytes(StandardCharsets.UTF_8),
-                        String.valueOf(expire.toMillis() / 1000).getBytes(StandardCharsets.UTF_8));
+                        owner().getBytes(StandardCharsets.UTF_8),
+                        String.valueOf(expire.toMillis()).getBytes(StandardCharsets.UTF_8));
             });
 
-            return result != null && result > 0;
+            if (result != null && result > 0) {
+                leases.confirm(key, start, expire);
+                return true;
+            }
+            // The key is gone or held by someone else
+            leases.remove(key);
+            return false;
         } catch (Exception e) {
-            log.error("Exception occurred while refreshing lock expiration.", e);
+            logFailure("Exception occurred while refreshing lock expiration.", e);
         }
 
         return false;
     }
+
+    @Override
+    public boolean releaseAfter(String key, Duration remaining) {
+        boolean r = refreshLockExpire(key, remaining);
+        leases.remove(key);
+        return r;
+    }
+
+    /**
+     * Check whether the lock is currently held by this node
+     * <p> Unlike the other operations, errors are not swallowed, so a failed check is not mistaken for a lost lock.
+     *
+     * @param key The key
+     * @return Whether the value of the key is the current node Id
+     */
+    @Override
+    public boolean isOwner(String key) {
+        byte[] value = execute(connection -> connection.stringCommands().get(key.getBytes(StandardCharsets.UTF_8)));
+        if (value == null || !owner().equals(new String(value, StandardCharsets.UTF_8))) {
+            leases.remove(key);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Acquire lock, or mark it dirty if it is held by someone else
+     * <p> Both happen in one script, so a trigger arriving while the lock is held is never lost:
+     * the holder sees the dirty mark when it tries to release the lock.
+     *
+     * @param key    The key
+     * @param expire Expiration time, also of the dirty mark
+     * @return Whether the lock is acquired
+     */
+    @Override
+    public boolean lockOrMarkDirty(String key, Duration expire) {
+        return tryLockOrMarkDirty(key, expire).isAcquired();
+    }
+
+    @Override
+    public AcquireResult tryLockOrMarkDirty(String key, Duration expire) {
+        LockAcquireEvent event = new LockAcquireEvent();
+        event.begin();
+        AcquireResult result = session != null
+                ? acquireInSession(SESSION_LOCK_OR_MARK_DIRTY_LUA, key, expire, key, key + DIRTY_SUFFIX)
+                : setOrMarkDirty(key, expire);
+        event.complete(key, nodeId, result.isAcquired());
+        return result;
+    }
+
+    private AcquireResult setOrMarkDirty(String key, Duration expire) {
+        long start = System.nanoTime();
+        try {
+            Long result = execute(connection -> {
+                RedisScriptingCommands commands = connection.scriptingCommands();
+                return commands.eval(LOCK_OR_MARK_DIRTY_LUA.getBytes(StandardCharsets.UTF_8),
+                        ReturnType.INTEGER, 2,
+                        key.getBytes(StandardCharsets.UTF_8),
+                        (key + DIRTY_SUFFIX).getBytes(StandardCharsets.UTF_8),
+                        owner().getBytes(StandardCharsets.UTF_8),
+                        String.valueOf(expire.toMillis()).getBytes(StandardCharsets.UTF_8));
+            });
+            if (result != null && result > 0) {
+                leases.confirm(key, start, expire);
+                return AcquireResult.acquired();
+            }
+            if (result != null) {
+                return AcquireResult.contended(null, null);
+            }
+        } catch (Exception e) {
+            logFailure("Exception occurred while setting redis.", e);
+        }
+
+        return AcquireResult.error();
+    }
+
+    /**
+     * Release lock unless it was marked dirty meanwhile
+     * <p> If it was, the mark is cleared and the lock is kept with a new expiration time for one more run.
+     *
+     * @param key    The key
+     * @param expire New expiration time if the lock is kept
+     * @return true if the lock is kept for one more run, false if it was released or is not held
+     */
+    @Override
+    public boolean unlockUnlessDirty(String key, Duration expire) {
+        long start = System.nanoTime();
+        try {
+            Long result = execute(connection -> {
+                RedisScriptingCommands commands = connection.scriptingCommands();
+                return commands.eval(UNLOCK_UNLESS_DIRTY_LUA.getBytes(StandardCharsets.UTF_8),
+                        ReturnType.INTEGER, 2,
+                        key.getBytes(StandardCharsets.UTF_8),
+                        (key + DIRTY_SUFFIX).getBytes(StandardCharsets.UTF_8),
+                        owner().getBytes(StandardCharsets.UTF_8),
+                        String.valueOf(expire.toMillis()).getBytes(StandardCharsets.UTF_8));
+            });
+            if (result != null && result > 0) {
+                leases.confirm(key, start, expire);
+                return true;
+            }
+        } catch (Exception e) {
+            logFailure("Exception occurred while releasing lock.", e);
+        }
+
+        leases.remove(key);
+        return false;
+    }
+
+    @Override
+    public boolean isAvailable() {
+        return breaker == null || breaker.isCallPermitted();
+    }
+
+    @Override
+    public boolean isSessionBased() {
+        return session != null;
+    }
+
+    @Override
+    public boolean isHeld(String key) {
+        return leases.isHeld(key) && (session == null || session.isAlive());
+    }
+
+    /**
+     * Get locally the remaining lease of the lock
+     * <p> With a session this is the time until the expiration time of the lock, as long as the session is alive.
+     */
+    @Override
+    public Duration remainingLease(String key) {
+        return session == null || session.isAlive() ? leases.remainingLease(key) : Duration.ZERO;
+    }
+
+    /**
+     * Release every lock held by this node
+     * <p> The keys are checked and deleted by a multi-key script, all batches are sent in one pipeline,
+     * so the whole release costs a single round trip.
+     *
+     * @return The number of released locks
+     */
+    @Override
+    public int releaseAll() {
+        List<String> keys = new ArrayList<>(leases.keys());
+        if (keys.isEmpty()) {
+            return 0;
+        }
+
+        try {
+            List<Object> results = strRedis.executePipelined((RedisCallback<Object>) connection -> {
+                RedisScriptingCommands commands = connection.scriptingCommands();
+                byte[] token = owner().getBytes(StandardCharsets.UTF_8);
+                for (int from = 0; from < keys.size(); from += RELEASE_BATCH) {
+                    List<String> batch = keys.subList(from, Math.min(from + RELEASE_BATCH, keys.size()));
+                    byte[][] keysAndArgs = new byte[batch.size() + 1][];
+                    for (int i = 0; i < batch.size(); i++) {
+                        keysAndArgs[i] = batch.get(i).getBytes(StandardCharsets.UTF_8);
+                    }
+                    keysAndArgs[batch.size()] = token;
+                    commands.eval(RELEASE_ALL_LUA.getBytes(StandardCharsets.UTF_8),
+                            ReturnType.INTEGER, batch.size(), keysAndArgs);
+                }
+                return null;
+            });
+            keys.forEach(leases::remove);
+            return results.stream().mapToInt(r -> r instanceof Long n ? n.intValue() : 0).sum();
+        } catch (Exception e) {
+            log.error("Exception occurred while releasing all locks.", e);
+        }
+
+        return 0;
+    }
+
+    /**
+     * Value of the locks of this node: the node Id, or {@code <sessionId>|<nodeId>} with a session.
+     */
+    private String owner() {
+        return session == null ? nodeId : session.token(nodeId);
+    }
+
+    /**
+     * Acquire through a session script, see {@link #SESSION_LOCK_LUA}.
+     */
+    private boolean lockInSession(String script, String key, Duration expire, String... keys) {
+        return acquireInSession(script, key, expire, keys).isAcquired();
+    }
+
+    /**
+     * Run a session lock script, 1 if acquired, 0 if held by someone else, -1 if the session is gone
+     */
+    private AcquireResult acquireInSession(String script, String key, Duration expire, String... keys) {
+        long start = System.nanoTime();
+        try {
+            String sessionId = session.getId();
+            byte[][] keysAndArgs = new byte[keys.length + 4][];
+            for (int i = 0; i < keys.length; i++) {
+                keysAndArgs[i] = keys[i].getBytes(StandardCharsets.UTF_8);
+            }
+            keysAndArgs[keys.length] = (sessionId + "|" + nodeId).getBytes(StandardCharsets.UTF_8);
+            keysAndArgs[keys.length + 1] = String.valueOf(expire.toMillis()).getBytes(StandardCharsets.UTF_8);
+            keysAndArgs[keys.length + 2] = session.getKeyPrefix().getBytes(StandardCharsets.UTF_8);
+            keysAndArgs[keys.length + 3] = sessionId.getBytes(StandardCharsets.UTF_8);
+            Long result = execute(connection -> connection.scriptingCommands().eval(script.getBytes(StandardCharsets.UTF_8),
+                    ReturnType.INTEGER, keys.length, keysAndArgs));
+            if (result != null && result > 0) {
+                leases.confirm(key, start, expire);
+                return AcquireResult.acquired();
+            }
+            if (result != null && result == 0) {
+                return AcquireResult.contended(null, null);
+            }
+            if (result != null) {
+                log.warn("Lock session {} is gone, {} not acquired until the heartbeat starts a new one", sessionId, key);
+            }
+        } catch (Exception e) {
+            logFailure("Exception occurred while setting redis.", e);
+        }
+
+        return AcquireResult.error();
+    }
+
+    /**
+     * Execute a command directly, or through the batcher if one is configured.
+     */
+    private <T> T execute(Function<RedisConnection, T> command) {
+        return guarded(() -> send(command));
+    }
+
+    /**
+     * Make a call through the circuit breaker, if one is configured.
+     */
+    private <T> T guarded(Supplier<T> call) {
+        if (breaker == null) {
+            return call.get();
+        }
+        if (!breaker.tryAcquirePermission()) {
+            throw new LockUnavailableException("Lock circuit breaker is open");
+        }
+        long start = System.nanoTime();
+        try {
+            T result = call.get();
+            breaker.onResult(System.nanoTime() - start, false);
+            return result;
+        } catch (RuntimeException e) {
+            breaker.onResult(System.nanoTime() - start, true);
+            throw e;
+        }
+    }
+
+    private <T> T send(Function<RedisConnection, T> command) {
+        if (batcher != null) {
+            return batcher.submit(command).join();
+        }
+        return strRedis.execute((RedisCallback<T>) command::apply);
+    }
+
+    /**
+     * Log a failed command, a rejection by the open circuit breaker without the stack trace.
+     */
+    private static void logFailure(String message, Exception e) {
+        if (e instanceof LockUnavailableException) {
+            log.debug("{} {}", message, e.getMessage());
+            return;
+        }
+        log.error(message, e);
+    }
 }
@@ -0,0 +1,219 @@
+package com.example.redislock.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Cluster-wide single-flight loading of shared values
+ * <p> A value is computed by one caller in the cluster and published to Redis, everyone else reads it from there:
+ * <p>  - In the JVM, concurrent callers of the same key share one future, only one of them goes to Redis.
+ * <p>  - Across nodes, that caller reads the published value, or takes the load lock of the key and computes it.
+ * A caller finding the lock held waits for the holder to announce the value on a pub/sub channel, and rereads
+ * at the poll interval in case the announcement is lost. If the holder dies its lock expires and a waiter
+ * takes over.
+ * <p> Without Redis, or when the wait times out, the value is computed locally and not published.
+ */
+@Slf4j
+public class SingleFlightLoader implements MessageListener {
+
+    /**
+     * Loader sharing nothing, every value is computed by its caller
+     */
+    public static final SingleFlightLoader DISABLED = new SingleFlightLoader();
+
+    /**
+     * Computes a value, serialized as a string
+     */
+    @FunctionalInterface
+    public interface Loader {
+        String load() throws Throwable;
+    }
+
+    private final LockBackend lock;
+    private final StringRedisTemplate strRedis;
+    private final String keyPrefix;
+    private final String channel;
+    private final Duration pollInterval;
+
+    /**
+     * Key to the load running on this node
+     */
+    private final Map<String, CompletableFuture<String>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * Key to the signal of its next announcement, at most one waiter per key on this node
+     */
+    private final Map<String, CompletableFuture<Void>> announcements = new ConcurrentHashMap<>();
+
+    private SingleFlightLoader() {
+        this.lock = null;
+        this.strRedis = null;
+        this.keyPrefix = null;
+        this.channel = null;
+        this.pollInterval = null;
+    }
+
+    /**
+     * @param lock         Backend of the load locks
+     * @param strRedis     Redis template, used to store and announce the values
+     * @param container    Listener container, used to receive the announcements of other nodes
+     * @param keyPrefix    Prefix of the value and lock keys
+     * @param channel      Pub/sub channel of the announcements
+     * @param pollInterval Interval at which a waiter rereads the value without an announcement
+     */
+    public SingleFlightLoader(LockBackend lock, StringRedisTemplate strRedis, RedisMessageListenerContainer container,
+                              String keyPrefix, String channel, Duration pollInterval) {
+        this.lock = lock;
+        this.strRedis = strRedis;
+        this.keyPrefix = keyPrefix;
+        this.channel = channel;
+        this.pollInterval = pollInterval;
+        container.addMessageListener(this, new ChannelTopic(channel));
+    }
+
+    /**
+     * Get the shared value of a key, computed once in the cluster while it is not stored
+     *
+     * @param key     The key
+     * @param ttl     How long a computed value is stored
+     * @param timeout Maximum wait for the value computed by another node, also the lease of the load lock
+     * @param loader  Computes the value
+     * @return The value
+     * @throws Throwable The failure of the loader, if this node computed the value
+     */
+    public String load(String key, Duration ttl, Duration timeout, Loader loader) throws Throwable {
+        if (strRedis == null) {
+            return loader.load();
+        }
+        CompletableFuture<String> flight = new CompletableFuture<>();
+        CompletableFuture<String> current = inFlight.putIfAbsent(key, flight);
+        if (current == null) {
+            try {
+                flight.complete(loadShared(key, ttl, timeout, loader));
+            } catch (Throwable e) {
+                flight.completeExceptionally(e);
+            } finally {
+                inFlight.remove(key, flight);
+            }
+            current = flight;
+        }
+        try {
+            return current.join();
+        } catch (CompletionException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Number of loads running on this node
+     *
+     * @return The number of keys being loaded
+     */
+    public int inFlight() {
+        return inFlight.size();
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        signal(new String(message.getBody(), StandardCharsets.UTF_8));
+    }
+
+    private String loadShared(String key, Duration ttl, Duration timeout, Loader loader) throws Throwable {
+        String valueKey = keyPrefix + "value:" + key;
+        String lockKey = keyPrefix + "lock:" + key;
+        long deadline = System.nanoTime() + timeout.toNanos();
+        try {
+            while (true) {
+                // Registered before the read, so an announcement right after it is not missed
+                CompletableFuture<Void> announced = announcements.computeIfAbsent(key, k -> new CompletableFuture<>());
+                String value = read(valueKey);
+                if (value != null) {
+                    return value;
+                }
+                if (!lock.isAvailable()) {
+                    log.warn("Lock backend unavailable, {} loaded locally", key);
+                    return loader.load();
+                }
+                if (lock.lock(lockKey, timeout)) {
+                    return loadAndPublish(key, valueKey, lockKey, ttl, loader);
+                }
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    log.warn("Timed out waiting for the load of {} by another node, loaded locally", key);
+                    return loader.load();
+                }
+                try {
+                    announced.get(Math.min(remaining, pollInterval.toNanos()), TimeUnit.NANOSECONDS);
+                } catch (TimeoutException e) {
+                    // Reread without an announcement, the holder may be gone
+                }
+            }
+        } finally {
+            announcements.remove(key);
+        }
+    }
+
+    private String loadAndPublish(String key, String valueKey, String lockKey, Duration ttl, Loader loader) throws Throwable {
+        try {
+            // Published by the previous holder between the read and the lock
+            String value = read(valueKey);
+            if (value == null) {
+                value = loader.load();
+                write(valueKey, value, ttl);
+            }
+            return value;
+        } finally {
+            // Also on failure, so a waiter takes over at once
+            lock.unlock(lockKey);
+            announce(key);
+        }
+    }
+
+    private String read(String valueKey) {
+        try {
+            return strRedis.opsForValue().get(valueKey);
+        } catch (Exception e) {
+            log.warn("Failed to read {}: {}", valueKey, e.getMessage());
+            return null;
+        }
+    }
+
+    private void write(String valueKey, String value, Duration ttl) {
+        try {
+            strRedis.opsForValue().set(valueKey, value, ttl);
+        } catch (Exception e) {
+            // A waiter takes the lock after this node and loads the value again
+            log.warn("Failed to publish {}: {}", valueKey, e.getMessage());
+        }
+    }
+
+    private void announce(String key) {
+        signal(key);
+        try {
+            strRedis.convertAndSend(channel, key);
+        } catch (Exception e) {
+            // The waiters of other nodes reread at the poll interval
+            log.debug("Failed to announce load of {}: {}", key, e.getMessage());
+        }
+    }
+
+    private void signal(String key) {
+        CompletableFuture<Void> announced = announcements.remove(key);
+        if (announced != null) {
+            announced.complete(null);
+        }
+    }
+}
@@ -0,0 +1,388 @@
+package com.example.redislock.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisScriptingCommands;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Implement distributed locking in striped Redis hashes
+ * <p> Instead of one top-level key per lock, every lock is a field of one of a fixed number of bucket hashes,
+ * {@code <prefix>{<bucket>}}, with a per-field expiration (HPEXPIRE, Redis 7.4+).
+ * The per-key overhead of the keyspace and the expire dictionary is paid once per bucket, not once per lock.
+ * <p> The owner is stored as a binary token, the 16 bytes behind the base64 node Id,
+ * and keys longer than a threshold are replaced by a 16-byte digest.
+ * <p> Same semantics as {@link RedisLock}. The locks are not visible as keys,
+ * so they are not listed by the lock inspection and produce no keyspace notifications per lock.
+ */
+@Slf4j
+public class StripedRedisLock implements LockBackend {
+    /**
+     * Acquire script, the field is set only if it is absent or has expired
+     */
+    private static final String LOCK_LUA = "if redis.call(\"hsetnx\", KEYS[1], ARGV[1], ARGV[2]) == 1 then redis.call(\"hpexpire\", KEYS[1], ARGV[3], \"FIELDS\", 1, ARGV[1]) return 1 end return 0";
+
+    /**
+     * Unlock script
+     */
+    private static final String UNLOCK_LUA = "if redis.call(\"hget\", KEYS[1], ARGV[1]) == ARGV[2] then return redis.call(\"hdel\", KEYS[1], ARGV[1]) else return 0 end";
+
+    /**
+     * Update expiration time
+     */
+    private static final String EXPIRE_LUA = "if redis.call(\"hget\", KEYS[1], ARGV[1]) == ARGV[2] then return redis.call(\"hpexpire\", KEYS[1], ARGV[3], \"FIELDS\", 1, ARGV[1])[1] == 1 and 1 or 0 else return 0 end";
+
+    /**
+     * Release the fields of one bucket held by the node, returns the number of released fields
+     */
+    private static final String RELEASE_ALL_LUA = "local n = 0 for i = 2, #ARGV do if redis.call(\"hget\", KEYS[1], ARGV[i]) == ARGV[1] then n = n + redis.call(\"hdel\", KEYS[1], ARGV[i]) end end return n";
+
+    /**
+     * Acquire the lock, or mark it dirty if it is held, the mark is a field next to the lock field
+     */
+    private static final String LOCK_OR_MARK_DIRTY_LUA = "local dirty = ARGV[1] .. \":dirty\" if redis.call(\"hsetnx\", KEYS[1], ARGV[1], ARGV[2]) == 1 then redis.call(\"hpexpire\", KEYS[1], ARGV[3], \"FIELDS\", 1, ARGV[1]) redis.call(\"hdel\", KEYS[1], dirty) return 1 end redis.call(\"hset\", KEYS[1], dirty, \"1\") redis.call(\"hpexpire\", KEYS[1], ARGV[3], \"FIELDS\", 1, dirty) return 0";
+
+    /**
+     * Release the lock unless it was marked dirty, returns 1 if the lock is kept for one more run
+     */
+    private static final String UNLOCK_UNLESS_DIRTY_LUA = "local dirty = ARGV[1] .. \":dirty\" if redis.call(\"hget\", KEYS[1], ARGV[1]) ~= ARGV[2] then return -1 end if redis.call(\"hdel\", KEYS[1], dirty) == 1 then redis.call(\"hpexpire\", KEYS[1], ARGV[3], \"FIELDS\", 1, ARGV[1]) return 1 end redis.call(\"hdel\", KEYS[1], ARGV[1]) return 0";
+
+    /**
+     * Length of a key digest
+     */
+    private static final int DIGEST_LENGTH = 16;
+
+    /**
+     * Current node
+     */
+    private final String nodeId;
+
+    /**
+     * Binary owner token stored in the lock fields
+     */
+    private final byte[] owner;
+
+    private final StringRedisTemplate strRedis;
+
+    /**
+     * Optional batcher sharing pipeline flushes between threads, commands are sent directly if null
+     */
+    private final LockCommandBatcher batcher;
+
+    /**
+     * Optional circuit breaker rejecting commands while Redis is degraded, commands are always sent if null
+     */
+    private final LockCircuitBreaker breaker;
+
+    private final String bucketPrefix;
+    private final int buckets;
+
+    /**
+     * Keys longer than this many bytes are stored as a digest
+     */
+    private final int digestThreshold;
+
+    /**
+     * Leases of the keys locked by this node
+     */
+    private final LeaseTable leases = new LeaseTable();
+
+    /**
+     * @param nodeId          The node Id
+     * @param strRedis        Redis template
+     * @param batcher         Optional batcher, may be null
+     * @param breaker         Optional circuit breaker, may be null
+     * @param bucketPrefix    Prefix of the bucket keys
+     * @param buckets         Number of buckets
+     * @param digestThreshold Keys longer than this many bytes are stored as a digest, 0 to never digest
+     */
+    public StripedRedisLock(String nodeId, StringRedisTemplate strRedis, LockCommandBatcher batcher, LockCircuitBreaker breaker,
+                            String bucketPrefix, int buckets, int digestThreshold) {
+        this.nodeId = nodeId;
+        this.owner = ownerToken(nodeId);
+        this.strRedis = strRedis;
+        this.batcher = batcher;
+        this.breaker = breaker;
+        this.bucketPrefix = bucketPrefix;
+        this.buckets = Math.max(buckets, 1);
+        this.digestThreshold = digestThreshold;
+    }
+
+    @Override
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    @Override
+    public boolean lock(String key, Duration expire) {
+        long start = System.nanoTime();
+        try {
+            Long result = eval(LOCK_LUA, key, millis(expire));
+            if (result != null && result > 0) {
+                leases.confirm(key, start, expire);
+                return true;
+            }
+            return false;
+        } catch (Exception e) {
+            logFailure("Exception occurred while setting redis.", e);
+        }
+
+        return false;
+    }
+
+    @Override
+    public boolean unlock(String key) {
+        leases.remove(key);
+        try {
+            Long result = eval(UNLOCK_LUA, key);
+            return result != null && result > 0;
+        } catch (Exception e) {
+            logFailure("Exception occurred while releasing lock.", e);
+        }
+
+        return false;
+    }
+
+    @Override
+    public boolean refreshLockExpire(String key, Duration expire) {
+        long start = System.nanoTime();
+        try {
+            Long result = eval(EXPIRE_LUA, key, millis(expire));
+            if (result != null && result > 0) {
+                leases.confirm(key, start, expire);
+                return true;
+            }
+            // The field is gone or held by someone else
+            leases.remove(key);
+            return false;
+        } catch (Exception e) {
+            logFailure("Exception occurred while refreshing lock expiration.", e);
+        }
+
+        return false;
+    }
+
+    @Override
+    public boolean releaseAfter(String key, Duration remaining) {
+        boolean r = refreshLockExpire(key, remaining);
+        leases.remove(key);
+        return r;
+    }
+
+    @Override
+    public boolean lockOrMarkDirty(String key, Duration expire) {
+        return tryLockOrMarkDirty(key, expire).isAcquired();
+    }
+
+    @Override
+    public AcquireResult tryLockOrMarkDirty(String key, Duration expire) {
+        long start = System.nanoTime();
+        try {
+            Long result = eval(LOCK_OR_MARK_DIRTY_LUA, key, millis(expire));
+            if (result != null && result > 0) {
+                leases.confirm(key, start, expire);
+                return AcquireResult.acquired();
+            }
+            if (result != null) {
+                return AcquireResult.contended(null, null);
+            }
+        } catch (Exception e) {
+            logFailure("Exception occurred while setting redis.", e);
+        }
+
+        return AcquireResult.error();
+    }
+
+    @Override
+    public boolean unlockUnlessDirty(String key, Duration expire) {
+        long start = System.nanoTime();
+        try {
+            Long result = eval(UNLOCK_UNLESS_DIRTY_LUA, key, millis(expire));
+            if (result != null && result > 0) {
+                leases.confirm(key, start, expire);
+                return true;
+            }
+        } catch (Exception e) {
+            logFailure("Exception occurred while releasing lock.", e);
+        }
+
+        leases.remove(key);
+        return false;
+    }
+
+    @Override
+    public boolean isOwner(String key) {
+        byte[] value = execute(connection -> connection.hashCommands().hGet(bucket(key), field(key)));
+        if (!Arrays.equals(owner, value)) {
+            leases.remove(key);
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public boolean isAvailable() {
+        return breaker == null || breaker.isCallPermitted();
+    }
+
+    @Override
+    public boolean isHeld(String key) {
+        return leases.isHeld(key);
+    }
+
+    @Override
+    public Duration remainingLease(String key) {
+        return leases.remainingLease(key);
+    }
+
+    /**
+     * Release every lock held by this node
+     * <p> The fields are grouped by bucket, one script call per bucket, all sent in one pipeline.
+     *
+     * @return The number of released locks
+     */
+    @Override
+    public int releaseAll() {
+        List<String> keys = new ArrayList<>(leases.keys());
+        if (keys.isEmpty()) {
+            return 0;
+        }
+
+        Map<Integer, List<byte[]>> fieldsByBucket = new LinkedHashMap<>();
+        for (String key : keys) {
+            fieldsByBucket.computeIfAbsent(bucketIndex(key), b -> new ArrayList<>()).add(field(key));
+        }
+        try {
+            List<Object> results = strRedis.executePipelined((RedisCallback<Object>) connection -> {
+                RedisScriptingCommands commands = connection.scriptingCommands();
+                for (Map.Entry<Integer, List<byte[]>> entry : fieldsByBucket.entrySet()) {
+                    List<byte[]> fields = entry.getValue();
+                    byte[][] keysAndArgs = new byte[fields.size() + 2][];
+                    keysAndArgs[0] = bucketKey(entry.getKey());
+                    keysAndArgs[1] = owner;
+                    for (int i = 0; i < fields.size(); i++) {
+                        keysAndArgs[i + 2] = fields.get(i);
+                    }
+                    commands.eval(RELEASE_ALL_LUA.getBytes(StandardCharsets.UTF_8),
+                            ReturnType.INTEGER, 1, keysAndArgs);
+                }
+                return null;
+            });
+            keys.forEach(leases::remove);
+            return results.stream().mapToInt(r -> r instanceof Long n ? n.intValue() : 0).sum();
+        } catch (Exception e) {
+            log.error("Exception occurred while releasing all locks.", e);
+        }
+
+        return 0;
+    }
+
+    /**
+     * Evaluate a script on the bucket of the key, with the field and the owner token as the first arguments.
+     */
+    private Long eval(String script, String key, byte[]... args) {
+        byte[][] keysAndArgs = new byte[args.length + 3][];
+        keysAndArgs[0] = bucket(key);
+        keysAndArgs[1] = field(key);
+        keysAndArgs[2] = owner;
+        System.arraycopy(args, 0, keysAndArgs, 3, args.length);
+        return execute(connection -> connection.scriptingCommands().eval(script.getBytes(StandardCharsets.UTF_8),
+                ReturnType.INTEGER, 1, keysAndArgs));
+    }
+
+    /**
+     * Execute a command directly, or through the batcher if one is configured.
+     */
+    private <T> T execute(Function<RedisConnection, T> command) {
+        if (breaker == null) {
+            return send(command);
+        }
+        if (!breaker.tryAcquirePermission()) {
+            throw new LockUnavailableException("Lock circuit breaker is open");
+        }
+        long start = System.nanoTime();
+        try {
+            T result = send(command);
+            breaker.onResult(System.nanoTime() - start, false);
+            return result;
+        } catch (RuntimeException e) {
+            breaker.onResult(System.nanoTime() - start, true);
+            throw e;
+        }
+    }
+
+    private <T> T send(Function<RedisConnection, T> command) {
+        if (batcher != null) {
+            return batcher.submit(command).join();
+        }
+        return strRedis.execute((RedisCallback<T>) command::apply);
+    }
+
+    /**
+     * Log a failed command, a rejection by the open circuit breaker without the stack trace.
+     */
+    private static void logFailure(String message, Exception e) {
+        if (e instanceof LockUnavailableException) {
+            log.debug("{} {}", message, e.getMessage());
+            return;
+        }
+        log.error(message, e);
+    }
+
+    private byte[] bucket(String key) {
+        return bucketKey(bucketIndex(key));
+    }
+
+    private int bucketIndex(String key) {
+        return Math.floorMod(key.hashCode(), buckets);
+    }
+
+    private byte[] bucketKey(int index) {
+        return (bucketPrefix + "{" + index + "}").getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Field of the key in its bucket, the key itself or its digest if it is long
+     */
+    private byte[] field(String key) {
+        byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+        if (digestThreshold <= 0 || bytes.length <= digestThreshold) {
+            return bytes;
+        }
+        try {
+            return Arrays.copyOf(MessageDigest.getInstance("SHA-256").digest(bytes), DIGEST_LENGTH);
+        } catch (NoSuchAlgorithmException e) {
+            // Every JVM provides SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] millis(Duration expire) {
+        return String.valueOf(expire.toMillis()).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Binary owner token: the bytes behind a base64 node Id, or the UTF-8 bytes of any other node Id.
+     */
+    private static byte[] ownerToken(String nodeId) {
+        try {
+            return Base64.getDecoder().decode(nodeId);
+        } catch (IllegalArgumentException e) {
+            return nodeId.getBytes(StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.example.redislock.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.function.Supplier;
+
+/**
+ * Versions of keys in Redis, for optimistic concurrency control, see {@link LockMode#OPTIMISTIC}
+ * <p> A key without a version is at version 0. A commit increments the version only if it is still the one read
+ * before the work, in one script call, and keeps the version for the given expiration time.
+ */
+@Slf4j
+public class VersionStore {
+
+    /**
+     * Store without versions, every read fails, so optimistic requests fall back to locking
+     */
+    public static final VersionStore DISABLED = new VersionStore();
+
+    /**
+     * Commit result of a version changed since it was read
+     */
+    public static final long CONFLICT = 0;
+
+    /**
+     * Read or commit result of a failed command
+     */
+    public static final long FAILED = -1;
+
+    /**
+     * Increment the version if it is ARGV[1], returns the new version, or -1 if it changed
+     * <p> ARGV: expected version, expiration in milliseconds
+     */
+    private static final String COMPARE_AND_INCREMENT_LUA = "if (redis.call(\"get\", KEYS[1]) or \"0\") ~= ARGV[1] then return -1 end local v = redis.call(\"incr\", KEYS[1]) redis.call(\"pexpire\", KEYS[1], ARGV[2]) return v";
+
+    private final StringRedisTemplate strRedis;
+    private final LockCircuitBreaker breaker;
+
+    private VersionStore() {
+        this.strRedis = null;
+        this.breaker = null;
+    }
+
+    /**
+     * @param strRedis Redis template
+     * @param breaker  Circuit breaker shared with the locks, null if disabled
+     */
+    public VersionStore(StringRedisTemplate strRedis, LockCircuitBreaker breaker) {
+        this.strRedis = strRedis;
+        this.breaker = breaker;
+    }
+
+    /**
+     * Read the version of a key
+     *
+     * @param key The version key
+     * @return The version, 0 if the key has none, {@link #FAILED} if Redis failed
+     */
+    public long read(String key) {
+        if (strRedis == null) {
+            return FAILED;
+        }
+        try {
+            String version = guarded(() -> strRedis.opsForValue().get(key));
+            return version == null ? 0 : Long.parseLong(version);
+        } catch (Exception e) {
+            logFailure("Exception occurred while reading the version of " + key, e);
+        }
+        return FAILED;
+    }
+
+    /**
+     * Increment the version of a key, only if it is still the expected one
+     *
+     * @param key      The version key
+     * @param expected The version read before the work
+     * @param expire   How long the new version is kept
+     * @return The new version, {@link #CONFLICT} if the version changed, {@link #FAILED} if Redis failed
+     */
+    public long compareAndIncrement(String key, long expected, Duration expire) {
+        if (strRedis == null) {
+            return FAILED;
+        }
+        try {
+            Long version = guarded(() -> strRedis.execute((RedisCallback<Long>) connection -> connection.scriptingCommands().eval(
+                    COMPARE_AND_INCREMENT_LUA.getBytes(StandardCharsets.UTF_8),
+                    ReturnType.INTEGER, 1,
+                    key.getBytes(StandardCharsets.UTF_8),
+                    String.valueOf(expected).getBytes(StandardCharsets.UTF_8),
+                    String.valueOf(Math.max(expire.toMillis(), 1)).getBytes(StandardCharsets.UTF_8))));
+            if (version == null) {
+                return FAILED;
+            }
+            return version < 0 ? CONFLICT : version;
+        } catch (Exception e) {
+            logFailure("Exception occurred while committing the version of " + key, e);
+        }
+        return FAILED;
+    }
+
+    /**
+     * Make a call through the circuit breaker, if one is configured.
+     */
+    private <T> T guarded(Supplier<T> call) {
+        if (breaker == null) {
+            return call.get();
+        }
+        if (!breaker.tryAcquirePermission()) {
+            throw new LockUnavailableException("Lock circuit breaker is open");
+        }
+        long start = System.nanoTime();
+        try {
+            T result = call.get();
+            breaker.onResult(System.nanoTime() - start, false);
+            return result;
+        } catch (RuntimeException e) {
+            breaker.onResult(System.nanoTime() - start, true);
+            throw e;
+        }
+    }
+
+    private static void logFailure(String message, Exception e) {
+        if (e instanceof LockUnavailableException) {
+            log.debug("{} {}", message, e.getMessage());
+            return;
+        }
+        log.error(message, e);
+    }
+}
@@ -0,0 +1,48 @@
+package com.example.redislock.utils.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * Flight Recorder event of a lock acquisition, disabled by default
+ */
+@Name("com.example.redislock.LockAcquire")
+@Label("Lock Acquire")
+@Category({"Redis Lock"})
+@Description("Acquisition of a distributed lock, including the Redis round trip")
+@Enabled(false)
+@Threshold("10 ms")
+@StackTrace(false)
+public class LockAcquireEvent extends Event {
+    @Label("Key")
+    private String key;
+
+    @Label("Owner")
+    private String owner;
+
+    @Label("Acquired")
+    private boolean acquired;
+
+    /**
+     * Commit the event if it is enabled and above the threshold
+     *
+     * @param key      The lock key
+     * @param owner    The node Id
+     * @param acquired Whether the lock was acquired
+     */
+    public void complete(String key, String owner, boolean acquired) {
+        end();
+        if (shouldCommit()) {
+            this.key = key;
+            this.owner = owner;
+            this.acquired = acquired;
+            commit();
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.example.redislock.utils.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import org.aspectj.lang.Signature;
+
+/**
+ * Flight Recorder event of a call rejected because its lock is held elsewhere, disabled by default
+ */
+@Name("com.example.redislock.LockContention")
+@Label("Lock Contention")
+@Category({"Redis Lock"})
+@Description("A locked method or request turned away because the lock is held by someone else")
+@Enabled(false)
+@StackTrace(false)
+public class LockContentionEvent extends Event {
+    @Label("Key")
+    private String key;
+
+    @Label("Source")
+    @Description("The annotation and method guarded by the lock")
+    private String source;
+
+    /**
+     * Commit an instant event if it is enabled
+     *
+     * @param key    The lock key
+     * @param source The annotation and method guarded by the lock
+     */
+    public static void emit(String key, String source) {
+        LockContentionEvent event = new LockContentionEvent();
+        if (event.isEnabled()) {
+            event.key = key;
+            event.source = source;
+            event.commit();
+        }
+    }
+
+    /**
+     * Commit an instant event if it is enabled, the source is only formatted then
+     *
+     * @param key        The lock key
+     * @param annotation The annotation guarding the method
+     * @param signature  The method guarded by the lock
+     */
+    public static void emit(String key, String annotation, Signature signature) {
+        LockContentionEvent event = new LockContentionEvent();
+        if (event.isEnabled()) {
+            event.key = key;
+            event.source = annotation + " " + signature.toShortString();
+            event.commit();
+        }
+    }
+}
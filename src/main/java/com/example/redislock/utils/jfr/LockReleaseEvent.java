@@ -0,0 +1,48 @@
+package com.example.redislock.utils.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * Flight Recorder event of a lock release, disabled by default
+ */
+@Name("com.example.redislock.LockRelease")
+@Label("Lock Release")
+@Category({"Redis Lock"})
+@Description("Release of a distributed lock, including the Redis round trip")
+@Enabled(false)
+@Threshold("10 ms")
+@StackTrace(false)
+public class LockReleaseEvent extends Event {
+    @Label("Key")
+    private String key;
+
+    @Label("Owner")
+    private String owner;
+
+    @Label("Released")
+    private boolean released;
+
+    /**
+     * Commit the event if it is enabled and above the threshold
+     *
+     * @param key      The lock key
+     * @param owner    The node Id
+     * @param released Whether the lock was released, false if it was not held anymore
+     */
+    public void complete(String key, String owner, boolean released) {
+        end();
+        if (shouldCommit()) {
+            this.key = key;
+            this.owner = owner;
+            this.released = released;
+            commit();
+        }
+    }
+}
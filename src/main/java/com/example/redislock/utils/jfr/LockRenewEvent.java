@@ -0,0 +1,53 @@
+package com.example.redislock.utils.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * Flight Recorder event of a renewal sweep over the held locks, disabled by default
+ */
+@Name("com.example.redislock.LockRenew")
+@Label("Lock Renewal Sweep")
+@Category({"Redis Lock"})
+@Description("One scheduled sweep renewing the held locks")
+@Enabled(false)
+@Threshold("0 ms")
+@StackTrace(false)
+public class LockRenewEvent extends Event {
+    @Label("Sweep")
+    private String sweep;
+
+    @Label("Held Locks")
+    private int locks;
+
+    @Label("Renewed")
+    private int renewed;
+
+    @Label("Failed")
+    private int failed;
+
+    /**
+     * Commit the event if it is enabled and above the threshold
+     *
+     * @param sweep   Name of the sweep
+     * @param locks   Number of locks seen by the sweep
+     * @param renewed Number of renewed locks
+     * @param failed  Number of locks that could not be renewed
+     */
+    public void complete(String sweep, int locks, int renewed, int failed) {
+        end();
+        if (shouldCommit()) {
+            this.sweep = sweep;
+            this.locks = locks;
+            this.renewed = renewed;
+            this.failed = failed;
+            commit();
+        }
+    }
+}
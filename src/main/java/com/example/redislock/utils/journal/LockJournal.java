@@ -0,0 +1,220 @@
+package com.example.redislock.utils.journal;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Binary lock event journal
+ * <p> Lock events are written as fixed-size records into a memory-mapped ring file,
+ * so the full lock history is kept at the cost of a few memory writes on the caller thread,
+ * without formatting or appender contention.
+ * <p> A writer claims a slot with one atomic increment, writes the fields, then publishes the sequence number
+ * of the record last. A record whose sequence does not match its slot is torn or overwritten and is skipped by
+ * {@link LockJournalReader}.
+ * <p> Layout of the file, little endian:
+ * <p>  - Header ({@value #HEADER_SIZE} bytes): magic, version, record size, capacity
+ * <p>  - Records ({@value #RECORD_SIZE} bytes): sequence, epoch millis, duration nanos, key hash, op, outcome, owner
+ */
+@Slf4j
+public class LockJournal implements AutoCloseable {
+    static final int MAGIC = 0x4C4B4A31; // "LKJ1"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 64;
+    static final int RECORD_SIZE = 48;
+
+    static final int SEQUENCE_OFFSET = 0;
+    static final int TIME_OFFSET = 8;
+    static final int DURATION_OFFSET = 16;
+    static final int KEY_HASH_OFFSET = 24;
+    static final int OP_OFFSET = 28;
+    static final int OUTCOME_OFFSET = 29;
+    static final int OWNER_OFFSET = 32;
+    static final int OWNER_SIZE = 16;
+
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    /**
+     * Journal that records nothing
+     */
+    public static final LockJournal DISABLED = new LockJournal();
+
+    /**
+     * Lock operation
+     */
+    public enum Op {
+        LOCK, UNLOCK, RENEW, RELEASE_ALL
+    }
+
+    /**
+     * Outcome of the operation
+     */
+    public enum Outcome {
+        /**
+         * The operation succeeded
+         */
+        OK,
+        /**
+         * The lock is held by someone else, or no longer held by this node
+         */
+        REJECTED,
+        /**
+         * The operation failed with an error
+         */
+        ERROR
+    }
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+    private final AtomicLong sequence;
+
+    /**
+     * Owner id encoded to the fixed owner field, there are only a few owners per node
+     */
+    private final Map<String, byte[]> owners = new ConcurrentHashMap<>();
+
+    private LockJournal() {
+        this.channel = null;
+        this.buffer = null;
+        this.capacity = 0;
+        this.sequence = new AtomicLong();
+    }
+
+    private LockJournal(FileChannel channel, MappedByteBuffer buffer, int capacity, long lastSequence) {
+        this.channel = channel;
+        this.buffer = buffer;
+        this.capacity = capacity;
+        this.sequence = new AtomicLong(lastSequence);
+    }
+
+    /**
+     * Open the journal file, creating it if needed.
+     * <p> An existing journal with the same capacity is continued, otherwise it is overwritten.
+     *
+     * @param path     Journal file
+     * @param capacity Number of records kept before the oldest is overwritten
+     * @return The journal
+     * @throws IOException if the file cannot be mapped
+     */
+    public static LockJournal open(Path path, int capacity) throws IOException {
+        long size = HEADER_SIZE + (long) capacity * RECORD_SIZE;
+        if (capacity <= 0 || size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Invalid journal capacity: " + capacity);
+        }
+
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            boolean resume = channel.size() == size;
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            long lastSequence = 0;
+            if (resume && buffer.getInt(0) == MAGIC && buffer.getInt(4) == VERSION
+                    && buffer.getInt(8) == RECORD_SIZE && buffer.getInt(12) == capacity) {
+                for (int i = 0; i < capacity; i++) {
+                    lastSequence = Math.max(lastSequence, buffer.getLong(HEADER_SIZE + i * RECORD_SIZE));
+                }
+            } else {
+                for (int i = 0; i < capacity; i++) {
+                    buffer.putLong(HEADER_SIZE + i * RECORD_SIZE, 0L);
+                }
+                buffer.putInt(0, MAGIC).putInt(4, VERSION).putInt(8, RECORD_SIZE).putInt(12, capacity);
+            }
+            log.info("Lock journal {} opened, capacity {}, last sequence {}", path, capacity, lastSequence);
+            return new LockJournal(channel, buffer, capacity, lastSequence);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Check whether events are recorded.
+     *
+     * @return true if the journal is backed by a file
+     */
+    public boolean isEnabled() {
+        return buffer != null;
+    }
+
+    /**
+     * Append a lock event.
+     *
+     * @param op         Operation
+     * @param key        Lock key, only its hash is recorded
+     * @param owner      Id of the lock owner
+     * @param outcome    Outcome of the operation
+     * @param startNanos {@link System#nanoTime()} when the operation started
+     */
+    public void record(Op op, String key, String owner, Outcome outcome, long startNanos) {
+        if (buffer == null) {
+            return;
+        }
+        long duration = System.nanoTime() - startNanos;
+        long seq = sequence.incrementAndGet();
+        int offset = HEADER_SIZE + (int) ((seq - 1) % capacity) * RECORD_SIZE;
+
+        // Invalidate the slot first, so a reader never pairs the old sequence with new fields
+        LONGS.setRelease(buffer, offset + SEQUENCE_OFFSET, 0L);
+        buffer.putLong(offset + TIME_OFFSET, System.currentTimeMillis());
+        buffer.putLong(offset + DURATION_OFFSET, duration);
+        buffer.putInt(offset + KEY_HASH_OFFSET, keyHash(key));
+        buffer.put(offset + OP_OFFSET, (byte) op.ordinal());
+        buffer.put(offset + OUTCOME_OFFSET, (byte) outcome.ordinal());
+        buffer.put(offset + OWNER_OFFSET, owners.computeIfAbsent(owner, LockJournal::encodeOwner));
+        LONGS.setRelease(buffer, offset + SEQUENCE_OFFSET, seq);
+    }
+
+    /**
+     * Hash of the lock key as stored in the journal.
+     *
+     * @param key Lock key
+     * @return 32-bit FNV-1a hash of the UTF-8 key
+     */
+    public static int keyHash(String key) {
+        int h = 0x811C9DC5;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            h = (h ^ (b & 0xFF)) * 0x01000193;
+        }
+        return h;
+    }
+
+    /**
+     * Node ids are 22-char base64 UUIDs, decoded back to their 16 bytes. Other ids are truncated or zero padded.
+     */
+    static byte[] encodeOwner(String owner) {
+        try {
+            byte[] raw = Base64.getDecoder().decode(owner + "==");
+            if (raw.length == OWNER_SIZE) {
+                return raw;
+            }
+        } catch (IllegalArgumentException e) {
+            // Not a base64 node id
+        }
+        byte[] raw = new byte[OWNER_SIZE];
+        byte[] utf8 = owner.getBytes(StandardCharsets.UTF_8);
+        System.arraycopy(utf8, 0, raw, 0, Math.min(utf8.length, OWNER_SIZE));
+        return raw;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (buffer != null) {
+            buffer.force();
+            channel.close();
+        }
+    }
+}
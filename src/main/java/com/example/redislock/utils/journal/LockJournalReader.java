@@ -0,0 +1,101 @@
+package com.example.redislock.utils.journal;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.List;
+
+import static com.example.redislock.utils.journal.LockJournal.*;
+
+/**
+ * Decodes a {@link LockJournal} file
+ * <p> Usage: {@code java -cp <app.jar> com.example.redislock.utils.journal.LockJournalReader <journal> [lock key]}
+ * <p> Prints the records in sequence order, optionally only the records of one lock key.
+ */
+public class LockJournalReader {
+
+    /**
+     * A decoded journal record
+     *
+     * @param sequence       Sequence number
+     * @param time           Time the operation ended
+     * @param durationNanos  Duration of the operation
+     * @param keyHash        Hash of the lock key, see {@link LockJournal#keyHash(String)}
+     * @param op             Operation
+     * @param outcome        Outcome
+     * @param owner          Owner id
+     */
+    public record Entry(long sequence, Instant time, long durationNanos, int keyHash,
+                        LockJournal.Op op, LockJournal.Outcome outcome, String owner) {
+        @Override
+        public String toString() {
+            return String.format("%d %s %-11s %-8s key=%08x owner=%s %dns",
+                    sequence, time, op, outcome, keyHash, owner, durationNanos);
+        }
+    }
+
+    private LockJournalReader() {
+    }
+
+    /**
+     * Read all valid records of a journal, ordered by sequence.
+     *
+     * @param path Journal file
+     * @return Records
+     * @throws IOException if the file cannot be read or is not a journal
+     */
+    public static List<Entry> read(Path path) throws IOException {
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION
+                || buffer.getInt(8) != RECORD_SIZE) {
+            throw new IOException("Not a lock journal: " + path);
+        }
+
+        int capacity = buffer.getInt(12);
+        List<Entry> entries = new ArrayList<>();
+        for (int slot = 0; slot < capacity; slot++) {
+            int offset = HEADER_SIZE + slot * RECORD_SIZE;
+            long seq = buffer.getLong(offset + SEQUENCE_OFFSET);
+            // Empty, torn or overwritten slot
+            if (seq <= 0 || (seq - 1) % capacity != slot) {
+                continue;
+            }
+            byte[] owner = new byte[OWNER_SIZE];
+            buffer.get(offset + OWNER_OFFSET, owner);
+            entries.add(new Entry(seq,
+                    Instant.ofEpochMilli(buffer.getLong(offset + TIME_OFFSET)),
+                    buffer.getLong(offset + DURATION_OFFSET),
+                    buffer.getInt(offset + KEY_HASH_OFFSET),
+                    LockJournal.Op.values()[buffer.get(offset + OP_OFFSET)],
+                    LockJournal.Outcome.values()[buffer.get(offset + OUTCOME_OFFSET)],
+                    Base64.getEncoder().encodeToString(owner).substring(0, 22)));
+        }
+        entries.sort(Comparator.comparingLong(Entry::sequence));
+        return entries;
+    }
+
+    public static void main(String[] args) throws IOException {
+        PrintStream out = System.out;
+        if (args.length < 1) {
+            out.println("Usage: LockJournalReader <journal> [lock key]");
+            return;
+        }
+        Integer keyHash = args.length > 1 ? LockJournal.keyHash(args[1]) : null;
+        for (Entry entry : read(Path.of(args[0]))) {
+            if (keyHash == null || keyHash == entry.keyHash()) {
+                out.println(entry);
+            }
+        }
+    }
+}
@@ -1,13 +1,99 @@
 package com.example.redislock;
 
+import com.example.redislock.service.lock.base.ComplexLockService;
+import com.example.redislock.service.lock.base.LockService;
+import com.example.redislock.service.timer.shard.ShardedJobRunner;
+import com.example.redislock.support.EmbeddedRedisServer;
 import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationContext;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The application against the {@link EmbeddedRedisServer}, the lock scripts run on its Lua interpreter
+ * <p> The server lives as long as the JVM, the cached context still releases its locks on shutdown.
+ */
 @SpringBootTest
 class RedisLockExampleApplicationTests {
 
+    private static final EmbeddedRedisServer server = start();
+
+    @Autowired
+    private LockService lockService;
+
+    @Autowired
+    private ComplexLockService complexLockService;
+
+    @Autowired
+    private StringRedisTemplate strRedis;
+
+    @Autowired
+    private ApplicationContext context;
+
+    @DynamicPropertySource
+    static void redisProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.data.redis.host", server::getHost);
+        registry.add("spring.data.redis.port", server::getPort);
+    }
+
     @Test
     void contextLoads() {
     }
 
+    @Test
+    void lockServiceExcludesSecondAcquisition() {
+        assertTrue(lockService.lock("app:order:1", 30));
+        assertNotNull(strRedis.opsForValue().get("lock:app:order:1"));
+        assertFalse(lockService.lock("app:order:1", 30));
+
+        assertTrue(lockService.unlock("app:order:1"));
+        assertNull(strRedis.opsForValue().get("lock:app:order:1"));
+        assertTrue(lockService.lock("app:order:1", 30));
+        assertTrue(lockService.unlock("app:order:1"));
+    }
+
+    @Test
+    void dirtyMarkCoalescesTriggers() {
+        assertTrue(lockService.lockOrMarkDirty("app:job", 30));
+        assertFalse(lockService.lockOrMarkDirty("app:job", 30));
+        assertFalse(lockService.lockOrMarkDirty("app:job", 30));
+
+        assertTrue(lockService.unlockUnlessDirty("app:job", 30));
+        assertFalse(lockService.unlockUnlessDirty("app:job", 30));
+        assertFalse(lockService.isHeld("app:job"));
+    }
+
+    @Test
+    void complexLockServiceLocksOrders() {
+        assertTrue(complexLockService.lockOrder("app-1"));
+        assertFalse(complexLockService.lockOrder("app-1"));
+
+        complexLockService.unlockOrder("app-1");
+        assertTrue(complexLockService.lockOrder("app-1"));
+        complexLockService.unlockOrder("app-1");
+    }
+
+    @Test
+    void shardedJobsAreOffByDefault() {
+        assertNull(context.getBeanProvider(ShardedJobRunner.class).getIfAvailable());
+    }
+
+    private static EmbeddedRedisServer start() {
+        try {
+            return EmbeddedRedisServer.start();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
 }
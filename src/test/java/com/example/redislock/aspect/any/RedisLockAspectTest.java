@@ -0,0 +1,105 @@
+package com.example.redislock.aspect.any;
+
+import com.example.redislock.service.lock.base.LockService;
+import com.example.redislock.support.EmbeddedRedisServer;
+import com.example.redislock.utils.DegradePolicy;
+import com.example.redislock.utils.LocalFallbackLocks;
+import com.example.redislock.utils.RedisLock;
+import com.example.redislock.utils.exception.BizError;
+import com.example.redislock.utils.journal.LockJournal;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The coalescing {@link RedisLockAspect} against the {@link EmbeddedRedisServer}
+ */
+class RedisLockAspectTest {
+
+    private static EmbeddedRedisServer server;
+    private static LettuceConnectionFactory connectionFactory;
+    private static StringRedisTemplate strRedis;
+
+    private LockService lockService;
+    private Jobs jobs;
+    private AtomicInteger runs;
+
+    public static class Jobs {
+        final AtomicInteger runs = new AtomicInteger();
+
+        @com.example.redislock.aspect.any.RedisLock(key = "sync", coalesce = true)
+        public void sync() {
+            runs.incrementAndGet();
+        }
+
+        @com.example.redislock.aspect.any.RedisLock(key = "sync-local", coalesce = true, degrade = DegradePolicy.LOCAL)
+        public void syncLocal() {
+            runs.incrementAndGet();
+        }
+    }
+
+    @BeforeAll
+    static void startServer() throws Exception {
+        server = EmbeddedRedisServer.start();
+        connectionFactory = new LettuceConnectionFactory(new RedisStandaloneConfiguration(server.getHost(), server.getPort()));
+        connectionFactory.afterPropertiesSet();
+        connectionFactory.start();
+        strRedis = new StringRedisTemplate(connectionFactory);
+    }
+
+    @AfterAll
+    static void stopServer() throws Exception {
+        connectionFactory.destroy();
+        server.close();
+    }
+
+    @BeforeEach
+    void reset() {
+        server.flushAll();
+        server.failNext(0);
+        lockService = new LockService(nodeId -> new RedisLock(nodeId, strRedis), new LocalFallbackLocks(), LockJournal.DISABLED);
+        RedisLockAspect aspect = new RedisLockAspect();
+        ReflectionTestUtils.setField(aspect, "lockService", lockService);
+        Jobs target = new Jobs();
+        runs = target.runs;
+        AspectJProxyFactory factory = new AspectJProxyFactory(target);
+        factory.setProxyTargetClass(true);
+        factory.addAspect(aspect);
+        jobs = factory.getProxy();
+    }
+
+    @Test
+    void triggerDuringARunIsCoalesced() {
+        assertTrue(lockService.lockOrMarkDirty("sync", 30));
+
+        // Held elsewhere: marked dirty, the holder runs it
+        jobs.sync();
+        assertEquals(0, runs.get());
+    }
+
+    @Test
+    void failedBackendRejectsTheTriggerByDefault() {
+        server.failNext(1);
+        assertThrows(BizError.class, () -> jobs.sync());
+        assertEquals(0, runs.get());
+    }
+
+    @Test
+    void failedBackendRunsTheTriggerUnderTheDegradePolicy() {
+        server.failNext(1);
+        jobs.syncLocal();
+        assertEquals(1, runs.get());
+    }
+}
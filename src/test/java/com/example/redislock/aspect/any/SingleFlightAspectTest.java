@@ -0,0 +1,67 @@
+package com.example.redislock.aspect.any;
+
+import com.example.redislock.api.lock.ILockable;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Method;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Cache keys of {@link SingleFlightAspect}
+ */
+class SingleFlightAspectTest {
+
+    private final SingleFlightAspect aspect = new SingleFlightAspect();
+
+    record Customer(String id) implements ILockable {
+        @Override
+        public String getLockKey() {
+            return "customer:" + id;
+        }
+    }
+
+    static class Summaries {
+        @SingleFlight(key = "summary")
+        Object byCustomer(Customer customer) {
+            return null;
+        }
+
+        @SingleFlight(key = "summary", keyExpression = "#customerId + ':' + #p1")
+        Object byId(String customerId, int year) {
+            return null;
+        }
+
+        @SingleFlight(key = "summary")
+        Object byObject(Object filter) {
+            return null;
+        }
+    }
+
+    @Test
+    void lockableArgumentsUseTheirLockKeys() throws Exception {
+        Method method = Summaries.class.getDeclaredMethod("byCustomer", Customer.class);
+
+        assertEquals("summary:customer:c-1", aspect.toKey(annotation(method), method, new Object[]{new Customer("c-1")}));
+    }
+
+    @Test
+    void keyExpressionIsEvaluatedAgainstTheArguments() throws Exception {
+        Method method = Summaries.class.getDeclaredMethod("byId", String.class, int.class);
+
+        assertEquals("summary:c-1:2026", aspect.toKey(annotation(method), method, new Object[]{"c-1", 2026}));
+    }
+
+    @Test
+    void otherArgumentsAreRejected() throws Exception {
+        Method method = Summaries.class.getDeclaredMethod("byObject", Object.class);
+
+        assertThrows(IllegalArgumentException.class,
+                () -> aspect.toKey(annotation(method), method, new Object[]{new Object()}));
+    }
+
+    private static SingleFlight annotation(Method method) {
+        return method.getAnnotation(SingleFlight.class);
+    }
+}
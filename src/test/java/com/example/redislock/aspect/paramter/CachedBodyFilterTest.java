@@ -0,0 +1,88 @@
+package com.example.redislock.aspect.paramter;
+
+import com.example.redislock.config.RedisLockProperties;
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletInputStream;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * {@link CachedBodyFilter} reads a body into memory only on demand and up to the limit
+ */
+class CachedBodyFilterTest {
+
+    private static final byte[] BODY = "{\"orderId\":\"o-1\"}".getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    void bodyIsCachedOnDemandAndReadableTwice() throws Exception {
+        CachedBodyFilter.CachedBodyRequest request = filter(BODY, 1024);
+
+        assertArrayEquals(BODY, request.getBody());
+        assertArrayEquals(BODY, request.getInputStream().readAllBytes());
+        assertArrayEquals(BODY, request.getInputStream().readAllBytes());
+    }
+
+    @Test
+    void bodyIsNotCachedOnceStreamed() throws Exception {
+        CachedBodyFilter.CachedBodyRequest request = filter(BODY, 1024);
+
+        assertArrayEquals(BODY, request.getInputStream().readAllBytes());
+        assertNull(request.getBody());
+    }
+
+    @Test
+    void largeBodyIsLeftInTheStream() throws Exception {
+        CachedBodyFilter.CachedBodyRequest request = filter(BODY, BODY.length - 1);
+
+        assertNull(request.getBody());
+        assertArrayEquals(BODY, request.getInputStream().readAllBytes());
+    }
+
+    @Test
+    void readListenerIsNotifiedOfTheCachedBody() throws Exception {
+        CachedBodyFilter.CachedBodyRequest request = filter(BODY, 1024);
+        request.getBody();
+
+        List<String> events = new ArrayList<>();
+        ServletInputStream in = request.getInputStream();
+        in.setReadListener(new ReadListener() {
+            @Override
+            public void onDataAvailable() {
+                events.add("data");
+            }
+
+            @Override
+            public void onAllDataRead() {
+                events.add("done");
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                events.add("error");
+            }
+        });
+        assertEquals(List.of("data", "done"), events);
+    }
+
+    private static CachedBodyFilter.CachedBodyRequest filter(byte[] body, int maxBodySize) throws Exception {
+        RedisLockProperties properties = new RedisLockProperties();
+        properties.getEarlyLock().setMaxBodySize(maxBodySize);
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/order/book/submit");
+        request.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        request.setContent(body);
+        MockFilterChain chain = new MockFilterChain();
+        new CachedBodyFilter(properties).doFilter(request, new MockHttpServletResponse(), chain);
+        return (CachedBodyFilter.CachedBodyRequest) chain.getRequest();
+    }
+}
@@ -0,0 +1,153 @@
+package com.example.redislock.controller;
+
+import com.example.redislock.aspect.paramter.CachedBodyFilter;
+import com.example.redislock.service.lock.RedisLockCheckService;
+import com.example.redislock.support.EmbeddedRedisServer;
+import com.jayway.jsonpath.JsonPath;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultActions;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * {@link OrderController} through the web layer, the rate limit and lock aspects and the early lock included
+ */
+@SpringBootTest
+class OrderControllerTest {
+
+    private static final EmbeddedRedisServer server = start();
+
+    @Autowired
+    private WebApplicationContext context;
+
+    @Autowired
+    private CachedBodyFilter cachedBodyFilter;
+
+    @Autowired
+    private StringRedisTemplate strRedis;
+
+    private MockMvc mockMvc;
+
+    @DynamicPropertySource
+    static void redisProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.data.redis.host", server::getHost);
+        registry.add("spring.data.redis.port", server::getPort);
+    }
+
+    @BeforeEach
+    void setUp() {
+        server.flushAll();
+        mockMvc = MockMvcBuilders.webAppContextSetup(context).addFilters(cachedBodyFilter).build();
+    }
+
+    @Test
+    void submitSucceedsAndReleasesTheLock() throws Exception {
+        submit("o-1", "c-1").andExpect(jsonPath("$.resultCode").value("0"));
+        submit("o-1", "c-1").andExpect(jsonPath("$.resultCode").value("0"));
+    }
+
+    @Test
+    void heldOrderIsRejectedAsDuplicate() throws Exception {
+        strRedis.opsForValue().set(RedisLockCheckService.LOCK_PREFIX + "o-2", "other-node", Duration.ofSeconds(30));
+
+        submit("o-2", "c-2")
+                .andExpect(jsonPath("$.resultCode").value("ResultCode.DUPLICATE_MESSAGE"))
+                .andExpect(header().exists(HttpHeaders.RETRY_AFTER));
+    }
+
+    @Test
+    void customerOverTheRateIsLimited() throws Exception {
+        // burst = 10, a slow first request may have earned a few more permits
+        String resultCode = "0";
+        for (int i = 0; i < 30 && resultCode.equals("0"); i++) {
+            ResultActions result = submit("o-3-" + i, "c-3");
+            resultCode = JsonPath.read(result.andReturn().getResponse().getContentAsString(), "$.resultCode");
+            if (!resultCode.equals("0")) {
+                assertTrue(i >= 10);
+                result.andExpect(header().exists(HttpHeaders.RETRY_AFTER));
+            }
+        }
+        assertEquals("ResultCode.RATE_LIMITED", resultCode);
+    }
+
+    @Test
+    void limitedRequestDoesNotTakeTheOrderLock() throws Exception {
+        String resultCode = "0";
+        for (int i = 0; i < 30 && resultCode.equals("0"); i++) {
+            resultCode = JsonPath.read(submit("o-4-" + i, "c-4").andReturn().getResponse().getContentAsString(), "$.resultCode");
+        }
+        assertEquals("ResultCode.RATE_LIMITED", resultCode);
+
+        // The limit is checked first, a held order does not turn the rejection into a duplicate
+        strRedis.opsForValue().set(RedisLockCheckService.LOCK_PREFIX + "o-4", "other-node", Duration.ofSeconds(30));
+        submit("o-4", "c-4").andExpect(jsonPath("$.resultCode").value("ResultCode.RATE_LIMITED"));
+        assertEquals("other-node", strRedis.opsForValue().get(RedisLockCheckService.LOCK_PREFIX + "o-4"));
+    }
+
+    @Test
+    void earlyLockedRequestIsNotLockedAgainByTheAspect() throws Exception {
+        // A second lock on the key held by the interceptor would reject the request as a duplicate of itself
+        submit("o-5", "c-5").andExpect(jsonPath("$.resultCode").value("0"));
+        assertNull(strRedis.opsForValue().get(RedisLockCheckService.LOCK_PREFIX + "o-5"));
+    }
+
+    @Test
+    void bodyTooLargeForTheEarlyLockIsLockedByTheAspect() throws Exception {
+        String padding = "x".repeat(128 * 1024);
+        submit("o-6", "c-6", padding).andExpect(jsonPath("$.resultCode").value("0"));
+        assertNull(strRedis.opsForValue().get(RedisLockCheckService.LOCK_PREFIX + "o-6"));
+
+        strRedis.opsForValue().set(RedisLockCheckService.LOCK_PREFIX + "o-6", "other-node", Duration.ofSeconds(30));
+        submit("o-6", "c-6", padding).andExpect(jsonPath("$.resultCode").value("ResultCode.DUPLICATE_MESSAGE"));
+    }
+
+    @Test
+    void handlerWithoutLockCheckIsNotLocked() throws Exception {
+        mockMvc.perform(get("/admin/locks/hot"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.resultCode").value("0"));
+        assertEquals(0, server.size());
+    }
+
+    private ResultActions submit(String orderId, String customerId) throws Exception {
+        return submit(orderId, customerId, "");
+    }
+
+    private ResultActions submit(String orderId, String customerId, String remark) throws Exception {
+        return mockMvc.perform(post("/order/book/submit")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"orderId\":\"" + orderId + "\",\"customerId\":\"" + customerId
+                                + "\",\"remark\":\"" + remark + "\"}"))
+                .andExpect(status().isOk());
+    }
+
+    private static EmbeddedRedisServer start() {
+        try {
+            return EmbeddedRedisServer.start();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.example.redislock.service.lock;
+
+import com.example.redislock.api.lock.HeldLock;
+import com.example.redislock.service.lock.base.ComplexLockService;
+import com.example.redislock.support.EmbeddedRedisServer;
+import com.example.redislock.utils.LockSession;
+import com.example.redislock.utils.RedisLock;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * {@link LockInspectService} against the {@link EmbeddedRedisServer}
+ */
+class LockInspectServiceTest {
+
+    private static final Duration TTL = Duration.ofSeconds(30);
+
+    private static EmbeddedRedisServer server;
+    private static LettuceConnectionFactory connectionFactory;
+    private static StringRedisTemplate strRedis;
+
+    @BeforeAll
+    static void startServer() throws Exception {
+        server = EmbeddedRedisServer.start();
+        connectionFactory = new LettuceConnectionFactory(new RedisStandaloneConfiguration(server.getHost(), server.getPort()));
+        connectionFactory.afterPropertiesSet();
+        connectionFactory.start();
+        strRedis = new StringRedisTemplate(connectionFactory);
+    }
+
+    @AfterAll
+    static void stopServer() throws Exception {
+        connectionFactory.destroy();
+        server.close();
+    }
+
+    @BeforeEach
+    void reset() {
+        server.flushAll();
+    }
+
+    @Test
+    void scanSkipsDirtyMarksAndVersions() {
+        RedisLock a = new RedisLock("a", strRedis);
+        RedisLock b = new RedisLock("b", strRedis);
+        String job = ComplexLockService.LOCK_PREFIX + "job";
+        assertTrue(a.lockOrMarkDirty(job, TTL));
+        assertFalse(b.lockOrMarkDirty(job, TTL));
+        strRedis.opsForValue().set(RedisLockCheckService.LOCK_PREFIX + "1" + RedisLockCheckService.VERSION_SUFFIX, "3");
+
+        List<HeldLock> held = new ArrayList<>();
+        new LockInspectService(strRedis).scan(ComplexLockService.LOCK_PREFIX, null, 10, 0, held::addAll);
+        new LockInspectService(strRedis).scan(RedisLockCheckService.LOCK_PREFIX, null, 10, 0, held::addAll);
+
+        assertEquals(1, held.size());
+        assertEquals(job, held.get(0).getKey());
+        assertEquals("a", held.get(0).getOwner());
+    }
+
+    @Test
+    void sessionLocksAreMatchedByNodeId() {
+        LockSession session = new LockSession(strRedis, "lock-session:", Duration.ofSeconds(10), Duration.ofSeconds(3));
+        try {
+            RedisLock a = new RedisLock("a", strRedis, null, null, session);
+            assertTrue(a.lock(ComplexLockService.LOCK_PREFIX + "order:1", TTL));
+
+            List<HeldLock> held = new ArrayList<>();
+            new LockInspectService(strRedis).scan(ComplexLockService.LOCK_PREFIX, "a", 10, 0, held::addAll);
+            new LockInspectService(strRedis).scan(ComplexLockService.LOCK_PREFIX, "b", 10, 0, held::addAll);
+
+            assertEquals(1, held.size());
+            assertEquals("a", held.get(0).getOwner());
+            assertEquals(session.token("a"), held.get(0).getSession() + LockSession.TOKEN_SEPARATOR + "a");
+        } finally {
+            session.close();
+        }
+    }
+}
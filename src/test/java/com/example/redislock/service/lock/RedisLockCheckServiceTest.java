@@ -0,0 +1,169 @@
+package com.example.redislock.service.lock;
+
+import com.example.redislock.api.base.Response;
+import com.example.redislock.api.lock.LockKey;
+import com.example.redislock.aspect.paramter.RedisLockCheck;
+import com.example.redislock.support.EmbeddedRedisServer;
+import com.example.redislock.utils.AsyncLockReleaser;
+import com.example.redislock.utils.ConflictPolicy;
+import com.example.redislock.utils.LocalFallbackLocks;
+import com.example.redislock.utils.LockMode;
+import com.example.redislock.utils.LockWaitRegistry;
+import com.example.redislock.utils.OptimisticVersion;
+import com.example.redislock.utils.RedisLock;
+import com.example.redislock.utils.VersionStore;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * The optimistic mode of {@link RedisLockCheckService} against the {@link EmbeddedRedisServer}
+ */
+class RedisLockCheckServiceTest {
+
+    private static final String VERSION_KEY = RedisLockCheckService.LOCK_PREFIX + "1" + RedisLockCheckService.VERSION_SUFFIX;
+
+    private static EmbeddedRedisServer server;
+    private static LettuceConnectionFactory connectionFactory;
+    private static StringRedisTemplate strRedis;
+
+    private VersionStore versions;
+    private RedisLockCheckService service;
+
+    @BeforeAll
+    static void startServer() throws Exception {
+        server = EmbeddedRedisServer.start();
+        connectionFactory = new LettuceConnectionFactory(new RedisStandaloneConfiguration(server.getHost(), server.getPort()));
+        connectionFactory.afterPropertiesSet();
+        connectionFactory.start();
+        strRedis = new StringRedisTemplate(connectionFactory);
+    }
+
+    @AfterAll
+    static void stopServer() throws Exception {
+        connectionFactory.destroy();
+        server.close();
+    }
+
+    @BeforeEach
+    void reset() {
+        server.flushAll();
+        versions = new VersionStore(strRedis, null);
+        service = newService();
+    }
+
+    @Test
+    void handlerSeesTheVersionReadAndTheVersionIsCommitted() throws Throwable {
+        Object result = service.doLock(optimistic(ConflictPolicy.REJECT, 0), () -> OptimisticVersion.current());
+
+        assertEquals(new OptimisticVersion(VERSION_KEY, 0), result);
+        assertNull(OptimisticVersion.current());
+        assertEquals(1, versions.read(VERSION_KEY));
+    }
+
+    @Test
+    void conflictIsRejectedBeforeTheHandlerRuns() throws Throwable {
+        claimAfterReads(1);
+        AtomicInteger runs = new AtomicInteger();
+        Object result = service.doLock(optimistic(ConflictPolicy.REJECT, 0), () -> runs.incrementAndGet());
+
+        assertEquals(0, runs.get());
+        assertEquals("ResultCode.VERSION_CONFLICT", ((Response<?>) result).getResultCode());
+    }
+
+    @Test
+    void conflictIsClaimedOnTheNewVersionWithExplicitRetries() throws Throwable {
+        claimAfterReads(1);
+        AtomicInteger runs = new AtomicInteger();
+        Object result = service.doLock(optimistic(ConflictPolicy.RETRY, 1), () -> {
+            runs.incrementAndGet();
+            return OptimisticVersion.current().version();
+        });
+
+        assertEquals(1, runs.get());
+        assertEquals(1L, result);
+        assertEquals(2, versions.read(VERSION_KEY));
+    }
+
+    @Test
+    void retryWithoutExplicitRetriesDoesNotClaimAgain() throws Throwable {
+        assertEquals(0, RedisLockCheck.class.getMethod("retries").getDefaultValue());
+
+        claimAfterReads(1);
+        AtomicInteger runs = new AtomicInteger();
+        Object result = service.doLock(optimistic(ConflictPolicy.RETRY, 0), () -> runs.incrementAndGet());
+
+        assertEquals(0, runs.get());
+        assertEquals("ResultCode.VERSION_CONFLICT", ((Response<?>) result).getResultCode());
+    }
+
+    @Test
+    void requestThatRanIsNotRejected() throws Throwable {
+        Object result = service.doLock(optimistic(ConflictPolicy.REJECT, 0), () -> {
+            // The next request claims the following version while this one runs
+            OptimisticVersion read = OptimisticVersion.current();
+            versions.compareAndIncrement(read.key(), read.next(), Duration.ofSeconds(10));
+            return "done";
+        });
+
+        assertEquals("done", result);
+        assertEquals(2, versions.read(VERSION_KEY));
+    }
+
+    @Test
+    void failedClaimFallsBackToLocking() throws Throwable {
+        versions = new VersionStore(strRedis, null) {
+            @Override
+            public long compareAndIncrement(String key, long expected, Duration expire) {
+                return VersionStore.FAILED;
+            }
+        };
+        service = newService();
+        Object result = service.doLock(optimistic(ConflictPolicy.REJECT, 0), () -> OptimisticVersion.current());
+
+        assertNull(result);
+    }
+
+    /**
+     * Another request claims the version right after the next reads, before this request claims it
+     */
+    private void claimAfterReads(int count) {
+        AtomicInteger remaining = new AtomicInteger(count);
+        versions = new VersionStore(strRedis, null) {
+            @Override
+            public long read(String key) {
+                long version = super.read(key);
+                if (remaining.getAndDecrement() > 0) {
+                    super.compareAndIncrement(key, version, Duration.ofSeconds(10));
+                }
+                return version;
+            }
+        };
+        service = newService();
+    }
+
+    private RedisLockCheckService newService() {
+        return new RedisLockCheckService(nodeId -> new RedisLock(nodeId, strRedis), new LocalFallbackLocks(),
+                new HotKeyTracker(), LockWaitRegistry.DISABLED, AsyncLockReleaser.DISABLED, versions);
+    }
+
+    private static LockKey optimistic(ConflictPolicy onConflict, int retries) {
+        LockKey key = new LockKey();
+        key.setKey(RedisLockCheckService.LOCK_PREFIX + "1");
+        key.setTimeout(RedisLockCheckService.TIME_OUT);
+        key.setMode(LockMode.OPTIMISTIC);
+        key.setOnConflict(onConflict);
+        key.setRetries(retries);
+        return key;
+    }
+}
@@ -0,0 +1,128 @@
+package com.example.redislock.service.lock.base;
+
+import com.example.redislock.support.EmbeddedRedisServer;
+import com.example.redislock.utils.AcquireResult;
+import com.example.redislock.utils.DegradePolicy;
+import com.example.redislock.utils.LocalFallbackLocks;
+import com.example.redislock.utils.LockCircuitBreaker;
+import com.example.redislock.utils.RedisLock;
+import com.example.redislock.utils.journal.LockJournal;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Degraded locks of {@link LockService} against the {@link EmbeddedRedisServer}
+ */
+class LockServiceTest {
+
+    private static EmbeddedRedisServer server;
+    private static LettuceConnectionFactory connectionFactory;
+    private static StringRedisTemplate strRedis;
+
+    private LockCircuitBreaker breaker;
+    private LockService lockService;
+
+    @BeforeAll
+    static void startServer() throws Exception {
+        server = EmbeddedRedisServer.start();
+        connectionFactory = new LettuceConnectionFactory(new RedisStandaloneConfiguration(server.getHost(), server.getPort()));
+        connectionFactory.afterPropertiesSet();
+        connectionFactory.start();
+        strRedis = new StringRedisTemplate(connectionFactory);
+    }
+
+    @AfterAll
+    static void stopServer() throws Exception {
+        connectionFactory.destroy();
+        server.close();
+    }
+
+    @BeforeEach
+    void reset() {
+        server.flushAll();
+        server.failNext(0);
+        breaker = new LockCircuitBreaker(10, 5, 50, Duration.ofSeconds(1), Duration.ofMillis(100), 1);
+        lockService = new LockService(nodeId -> new RedisLock(nodeId, strRedis, null, breaker), new LocalFallbackLocks(),
+                LockJournal.DISABLED);
+    }
+
+    @Test
+    void overlappingAcquisitionsAreReleasedWhereTheyWereTaken() throws InterruptedException {
+        LockService.LockHandle inRedis = lockService.lock("job", 30, DegradePolicy.LOCAL);
+        assertNotNull(inRedis);
+        assertNull(inRedis.degradedTo());
+
+        openBreaker();
+        LockService.LockHandle degraded = lockService.lock("job", 30, DegradePolicy.LOCAL);
+        assertNotNull(degraded);
+        assertEquals(DegradePolicy.LOCAL, degraded.degradedTo());
+        // The fallback lock is held, a second degraded acquisition is rejected
+        assertNull(lockService.lock("job", 30, DegradePolicy.LOCAL));
+
+        // Half open, the Redis unlock goes through as a probe
+        TimeUnit.MILLISECONDS.sleep(150);
+        assertTrue(lockService.unlock(inRedis));
+        assertNull(strRedis.opsForValue().get(LockService.LOCK_PREFIX + "job"));
+
+        assertTrue(lockService.unlock(degraded));
+        assertFalse(lockService.unlock(degraded));
+    }
+
+    @Test
+    void failOpenTakesNoLock() {
+        openBreaker();
+        LockService.LockHandle handle = lockService.lock("job", 30, DegradePolicy.FAIL_OPEN);
+        assertNotNull(handle);
+        assertEquals(DegradePolicy.FAIL_OPEN, handle.degradedTo());
+        assertNull(lockService.lock("job", 30, DegradePolicy.FAIL_CLOSED));
+        assertTrue(lockService.unlock(handle));
+    }
+
+    @Test
+    void coalescingTellsADirtyMarkFromAFailure() {
+        assertEquals(AcquireResult.Status.ACQUIRED, lockService.tryLockOrMarkDirty("job", 30).status());
+        assertEquals(AcquireResult.Status.CONTENDED, lockService.tryLockOrMarkDirty("job", 30).status());
+
+        server.failNext(1);
+        assertEquals(AcquireResult.Status.ERROR, lockService.tryLockOrMarkDirty("job", 30).status());
+        openBreaker();
+        assertEquals(AcquireResult.Status.ERROR, lockService.tryLockOrMarkDirty("job", 30).status());
+    }
+
+    @Test
+    void shutdownLeavesAMinimumHoldToRedis() {
+        assertTrue(lockService.lock("job", 30));
+        assertTrue(lockService.unlockAfter("job", Duration.ofSeconds(10)));
+
+        // Handed over to Redis, the release on shutdown does not cut the hold short
+        assertEquals(0, lockService.releaseAll());
+        String key = LockService.LOCK_PREFIX + "job";
+        assertNotNull(strRedis.opsForValue().get(key));
+        long ttl = strRedis.getExpire(key, TimeUnit.MILLISECONDS);
+        assertTrue(ttl > 0 && ttl <= 10_000, "ttl " + ttl);
+    }
+
+    private void openBreaker() {
+        server.failNext(5);
+        for (int i = 0; i < 5; i++) {
+            assertFalse(lockService.lock("other:" + i, 30));
+        }
+        assertEquals(LockCircuitBreaker.State.OPEN, breaker.getState());
+        // Faults not consumed once the breaker opened
+        server.failNext(0);
+    }
+}
@@ -0,0 +1,111 @@
+package com.example.redislock.sim;
+
+import com.example.redislock.utils.LockBackend;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Lock backend adding a simulated network round trip to every remote operation
+ * <p> The round trip is {@code latency} plus a uniformly distributed {@code jitter}.
+ * Local checks ({@link #isHeld(String)}, {@link #remainingLease(String)}) stay free, as in the real backends.
+ */
+class LatencyLockBackend implements LockBackend {
+    private final LockBackend delegate;
+    private final long latencyNanos;
+    private final long jitterNanos;
+
+    /**
+     * Remote calls and renewals, shared by all backends of a simulation
+     */
+    private final LongAdder calls;
+    private final LongAdder renewals;
+
+    LatencyLockBackend(LockBackend delegate, Duration latency, Duration jitter, LongAdder calls, LongAdder renewals) {
+        this.delegate = delegate;
+        this.latencyNanos = latency.toNanos();
+        this.jitterNanos = jitter.toNanos();
+        this.calls = calls;
+        this.renewals = renewals;
+    }
+
+    @Override
+    public String getNodeId() {
+        return delegate.getNodeId();
+    }
+
+    @Override
+    public boolean lock(String key, Duration expire) {
+        roundTrip();
+        return delegate.lock(key, expire);
+    }
+
+    @Override
+    public boolean unlock(String key) {
+        roundTrip();
+        return delegate.unlock(key);
+    }
+
+    @Override
+    public boolean refreshLockExpire(String key, Duration expire) {
+        renewals.increment();
+        roundTrip();
+        return delegate.refreshLockExpire(key, expire);
+    }
+
+    @Override
+    public boolean releaseAfter(String key, Duration remaining) {
+        roundTrip();
+        return delegate.releaseAfter(key, remaining);
+    }
+
+    @Override
+    public boolean lockOrMarkDirty(String key, Duration expire) {
+        roundTrip();
+        return delegate.lockOrMarkDirty(key, expire);
+    }
+
+    @Override
+    public boolean unlockUnlessDirty(String key, Duration expire) {
+        roundTrip();
+        return delegate.unlockUnlessDirty(key, expire);
+    }
+
+    @Override
+    public boolean isOwner(String key) {
+        roundTrip();
+        return delegate.isOwner(key);
+    }
+
+    @Override
+    public boolean isHeld(String key) {
+        return delegate.isHeld(key);
+    }
+
+    @Override
+    public Duration remainingLease(String key) {
+        return delegate.remainingLease(key);
+    }
+
+    @Override
+    public int releaseAll() {
+        roundTrip();
+        return delegate.releaseAll();
+    }
+
+    private void roundTrip() {
+        calls.increment();
+        long delay = latencyNanos + (jitterNanos > 0 ? ThreadLocalRandom.current().nextLong(jitterNanos) : 0);
+        if (delay <= 0) {
+            return;
+        }
+        // parkNanos may return early, keep parking until the delay has passed
+        long deadline = System.nanoTime() + delay;
+        for (long left = delay; left > 0; left = deadline - System.nanoTime()) {
+            LockSupport.parkNanos(Math.min(left, TimeUnit.MILLISECONDS.toNanos(10)));
+        }
+    }
+}
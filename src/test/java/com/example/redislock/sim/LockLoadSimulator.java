@@ -0,0 +1,308 @@
+package com.example.redislock.sim;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import com.example.redislock.api.lock.LockKey;
+import com.example.redislock.service.lock.HotKeyTracker;
+import com.example.redislock.service.lock.RedisLockCheckService;
+import com.example.redislock.service.lock.base.ComplexLockService;
+import com.example.redislock.service.lock.base.LockService;
+import com.example.redislock.utils.AsyncLockReleaser;
+import com.example.redislock.utils.LocalFallbackLocks;
+import com.example.redislock.utils.LocalLockBackend;
+import com.example.redislock.utils.LocalLockStore;
+import com.example.redislock.utils.LockBackendFactory;
+import com.example.redislock.utils.LockExecutors;
+import com.example.redislock.utils.LockWaitRegistry;
+import com.example.redislock.utils.VersionStore;
+import com.example.redislock.utils.journal.LockJournal;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Macro load simulator for lock contention across a cluster
+ * <p> Starts several simulated nodes in one JVM, each with its own {@link LockService}, {@link ComplexLockService}
+ * and {@link RedisLockCheckService}, all locking against one shared {@link LocalLockStore} standing in for Redis,
+ * with an injected round-trip latency on every remote call. Each node periodically renews its
+ * {@link ComplexLockService} locks, as the scheduled renewal does in production.
+ * <p> Keys are drawn from a Zipf distribution, hold times from an exponential distribution.
+ * The report covers throughput, acquisition latency percentiles, fairness between nodes (Jain's index)
+ * and the share of remote calls spent on renewals.
+ * <p> Run the main method from the test classpath, options as {@code --name=value}:
+ * <pre>
+ * --nodes=4 --threads=8 --keys=1000 --zipf=1.1 --hold-ms=5 --latency-us=300 --jitter-us=100
+ * --duration-s=10 --renew-ms=500 --mix=simple:1,complex:1,check:1
+ * </pre>
+ */
+public class LockLoadSimulator {
+
+    private enum Service { SIMPLE, COMPLEX, CHECK }
+
+    private final Map<String, String> options;
+
+    private LockLoadSimulator(Map<String, String> options) {
+        this.options = options;
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        // Every rejected acquisition is logged as an error by the services, keep the report readable
+        ((Logger) LoggerFactory.getLogger(org.slf4j.Logger.ROOT_LOGGER_NAME)).setLevel(Level.WARN);
+        ((Logger) LoggerFactory.getLogger("com.example.redislock")).setLevel(Level.OFF);
+
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            String[] pair = arg.replaceFirst("^--", "").split("=", 2);
+            options.put(pair[0], pair.length > 1 ? pair[1] : "true");
+        }
+        new LockLoadSimulator(options).run();
+    }
+
+    private void run() throws InterruptedException {
+        int nodes = intOption("nodes", 4);
+        int threads = intOption("threads", 8);
+        int keys = intOption("keys", 1000);
+        double zipf = Double.parseDouble(options.getOrDefault("zipf", "1.1"));
+        double holdMs = Double.parseDouble(options.getOrDefault("hold-ms", "5"));
+        Duration latency = Duration.ofNanos(TimeUnit.MICROSECONDS.toNanos(intOption("latency-us", 300)));
+        Duration jitter = Duration.ofNanos(TimeUnit.MICROSECONDS.toNanos(intOption("jitter-us", 100)));
+        Duration duration = Duration.ofSeconds(intOption("duration-s", 10));
+        long renewMs = intOption("renew-ms", 500);
+        Service[] mix = parseMix(options.getOrDefault("mix", "simple:1,complex:1,check:1"));
+
+        double[] keyCdf = zipfCdf(keys, zipf);
+        LongAdder calls = new LongAdder();
+        LongAdder renewals = new LongAdder();
+
+        try (LocalLockStore store = new LocalLockStore(Duration.ofMillis(10), 512);
+             LocalFallbackLocks fallbacks = new LocalFallbackLocks()) {
+            LockBackendFactory backends = nodeId -> new LatencyLockBackend(new LocalLockBackend(nodeId, store),
+                    latency, jitter, calls, renewals);
+            ScheduledExecutorService renewer = Executors.newScheduledThreadPool(nodes);
+            List<Node> cluster = new ArrayList<>();
+            for (int n = 0; n < nodes; n++) {
+                Node node = new Node(backends, fallbacks);
+                renewer.scheduleWithFixedDelay(node.complex::refreshLockWithoutLimit, renewMs, renewMs, TimeUnit.MILLISECONDS);
+                cluster.add(node);
+            }
+
+            System.out.printf("Simulating %d nodes x %d threads, %d keys (zipf %.2f), hold %.1f ms, latency %d+%d us, %d s%n",
+                    nodes, threads, keys, zipf, holdMs, latency.toNanos() / 1000, jitter.toNanos() / 1000, duration.toSeconds());
+
+            long deadline = System.nanoTime() + duration.toNanos();
+            CountDownLatch done = new CountDownLatch(nodes * threads);
+            for (Node node : cluster) {
+                for (int t = 0; t < threads; t++) {
+                    Worker worker = new Worker(node, keyCdf, mix, holdMs, deadline);
+                    node.workers.add(worker);
+                    Thread thread = new Thread(() -> {
+                        try {
+                            worker.run();
+                        } finally {
+                            done.countDown();
+                        }
+                    }, "sim-worker");
+                    thread.setDaemon(true);
+                    thread.start();
+                }
+            }
+            done.await();
+            renewer.shutdownNow();
+            report(cluster, duration, calls.sum(), renewals.sum());
+        }
+    }
+
+    private void report(List<Node> cluster, Duration duration, long calls, long renewals) {
+        double seconds = duration.toNanos() / 1e9;
+        long[] latencies = cluster.stream()
+                .flatMap(node -> node.workers.stream())
+                .flatMapToLong(worker -> Arrays.stream(worker.latencies, 0, worker.count))
+                .sorted()
+                .toArray();
+        long acquired = 0;
+        long rejected = 0;
+        double sum = 0;
+        double sumOfSquares = 0;
+        for (Node node : cluster) {
+            long nodeAcquired = node.workers.stream().mapToLong(w -> w.acquired).sum();
+            acquired += nodeAcquired;
+            rejected += node.workers.stream().mapToLong(w -> w.rejected).sum();
+            sum += nodeAcquired;
+            sumOfSquares += (double) nodeAcquired * nodeAcquired;
+        }
+
+        System.out.printf("Throughput     %.0f acquisitions/s, %.0f rejections/s (%.1f%% contended)%n",
+                acquired / seconds, rejected / seconds, 100.0 * rejected / Math.max(acquired + rejected, 1));
+        System.out.printf("Acquire        p50 %s  p90 %s  p99 %s  p99.9 %s  max %s%n",
+                micros(latencies, 0.5), micros(latencies, 0.9), micros(latencies, 0.99), micros(latencies, 0.999),
+                micros(latencies, 1.0));
+        System.out.printf("Fairness       %.3f (Jain's index over %d nodes, 1.0 is perfectly fair)%n",
+                sumOfSquares == 0 ? 1.0 : sum * sum / (cluster.size() * sumOfSquares), cluster.size());
+        System.out.printf("Renewal        %.0f renewals/s, %.1f%% of %d remote calls%n",
+                renewals / seconds, 100.0 * renewals / Math.max(calls, 1), calls);
+    }
+
+    private static String micros(long[] sorted, double quantile) {
+        if (sorted.length == 0) {
+            return "-";
+        }
+        int index = (int) Math.min(sorted.length - 1, Math.ceil(quantile * sorted.length) - 1);
+        return String.format("%.0fus", sorted[Math.max(index, 0)] / 1e3);
+    }
+
+    private int intOption(String name, int defaultValue) {
+        return Integer.parseInt(options.getOrDefault(name, String.valueOf(defaultValue)));
+    }
+
+    /**
+     * Expand the weighted mix, e.g. {@code simple:2,check:1}, into a table to draw from.
+     */
+    private static Service[] parseMix(String mix) {
+        List<Service> table = new ArrayList<>();
+        for (String entry : mix.split(",")) {
+            String[] pair = entry.split(":");
+            Service service = Service.valueOf(pair[0].trim().toUpperCase());
+            int weight = pair.length > 1 ? Integer.parseInt(pair[1].trim()) : 1;
+            for (int i = 0; i < weight; i++) {
+                table.add(service);
+            }
+        }
+        return table.toArray(new Service[0]);
+    }
+
+    /**
+     * Cumulative distribution of key popularity, key {@code i} has weight {@code 1 / (i + 1)^s}.
+     */
+    private static double[] zipfCdf(int keys, double s) {
+        double[] cdf = new double[keys];
+        double total = 0;
+        for (int i = 0; i < keys; i++) {
+            total += 1 / Math.pow(i + 1, s);
+            cdf[i] = total;
+        }
+        for (int i = 0; i < keys; i++) {
+            cdf[i] /= total;
+        }
+        return cdf;
+    }
+
+    /**
+     * One simulated node with its own lock services
+     */
+    private static class Node {
+        private final LockService simple;
+        private final ComplexLockService complex;
+        private final RedisLockCheckService check;
+        private final List<Worker> workers = new ArrayList<>();
+
+        private Node(LockBackendFactory backends, LocalFallbackLocks fallbacks) {
+            HotKeyTracker hotKeys = new HotKeyTracker();
+            this.simple = new LockService(backends, fallbacks, LockJournal.DISABLED);
+            this.complex = new ComplexLockService(backends, hotKeys, LockJournal.DISABLED, LockExecutors.PLATFORM);
+            this.check = new RedisLockCheckService(backends, fallbacks, hotKeys, LockWaitRegistry.DISABLED,
+                    AsyncLockReleaser.DISABLED, VersionStore.DISABLED);
+        }
+    }
+
+    /**
+     * Worker thread of a node, locks random keys until the deadline
+     */
+    private static class Worker {
+        private final Node node;
+        private final double[] keyCdf;
+        private final Service[] mix;
+        private final double holdMs;
+        private final long deadline;
+
+        private long[] latencies = new long[1 << 14];
+        private int count = 0;
+        private long acquired = 0;
+        private long rejected = 0;
+
+        private Worker(Node node, double[] keyCdf, Service[] mix, double holdMs, long deadline) {
+            this.node = node;
+            this.keyCdf = keyCdf;
+            this.mix = mix;
+            this.holdMs = holdMs;
+            this.deadline = deadline;
+        }
+
+        private void run() {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            while (System.nanoTime() < deadline) {
+                int index = Arrays.binarySearch(keyCdf, random.nextDouble());
+                String key = "sim:" + (index < 0 ? -index - 1 : index);
+                long hold = (long) (-Math.log(1 - random.nextDouble()) * holdMs * 1e6);
+                Service service = mix[random.nextInt(mix.length)];
+                try {
+                    attempt(service, key, hold);
+                } catch (Throwable e) {
+                    rejected++;
+                }
+            }
+        }
+
+        private void attempt(Service service, String key, long holdNanos) throws Throwable {
+            long start = System.nanoTime();
+            switch (service) {
+                case SIMPLE -> {
+                    boolean locked = node.simple.lock(key, 60);
+                    record(start, locked);
+                    if (locked) {
+                        LockSupport.parkNanos(holdNanos);
+                        node.simple.unlock(key);
+                    }
+                }
+                case COMPLEX -> {
+                    boolean locked = node.complex.lock(key, 60);
+                    record(start, locked);
+                    if (locked) {
+                        LockSupport.parkNanos(holdNanos);
+                        node.complex.unlock(key);
+                    }
+                }
+                case CHECK -> {
+                    LockKey lockKey = new LockKey();
+                    lockKey.setKey(RedisLockCheckService.LOCK_PREFIX + key);
+                    lockKey.setTimeout(RedisLockCheckService.TIME_OUT);
+                    long[] acquiredAt = {0};
+                    Object result = node.check.doLock(lockKey, () -> {
+                        acquiredAt[0] = System.nanoTime();
+                        LockSupport.parkNanos(holdNanos);
+                        return Boolean.TRUE;
+                    });
+                    boolean locked = Boolean.TRUE.equals(result);
+                    record(start, locked, locked ? acquiredAt[0] : System.nanoTime());
+                }
+            }
+        }
+
+        private void record(long start, boolean locked) {
+            record(start, locked, System.nanoTime());
+        }
+
+        private void record(long start, boolean locked, long end) {
+            if (count == latencies.length) {
+                latencies = Arrays.copyOf(latencies, count * 2);
+            }
+            latencies[count++] = end - start;
+            if (locked) {
+                acquired++;
+            } else {
+                rejected++;
+            }
+        }
+    }
+}
@@ -0,0 +1,850 @@
+package com.example.redislock.support;
+
+import org.luaj.vm2.Globals;
+import org.luaj.vm2.LoadState;
+import org.luaj.vm2.LuaError;
+import org.luaj.vm2.LuaString;
+import org.luaj.vm2.LuaTable;
+import org.luaj.vm2.LuaValue;
+import org.luaj.vm2.Varargs;
+import org.luaj.vm2.compiler.LuaC;
+import org.luaj.vm2.lib.BaseLib;
+import org.luaj.vm2.lib.PackageLib;
+import org.luaj.vm2.lib.StringLib;
+import org.luaj.vm2.lib.TableLib;
+import org.luaj.vm2.lib.VarArgFunction;
+import org.luaj.vm2.lib.jse.JseMathLib;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+/**
+ * In-process Redis stand-in speaking RESP2, for tests and benchmarks without a Redis server
+ * <p> Implements the command subset used by the lock services: SET (NX/XX, EX/PX), SETEX, PSETEX, SETNX, GET, DEL, EXISTS,
+ * INCR, EXPIRE/PEXPIRE, TTL/PTTL, TIME, SCAN, PING, PUBLISH and (P)SUBSCRIBE, plus the connection handshake of Lettuce.
+ * <p> EVAL/EVALSHA run the shipped Lua scripts on a Lua interpreter (luaj) with the libraries of the Redis sandbox,
+ * {@code redis.call} and {@code redis.pcall} run the commands above, replies are converted as Redis converts them.
+ * Scripts are cached by SHA1 on EVAL and SCRIPT LOAD, EVALSHA of an unknown script fails with NOSCRIPT.
+ * <p> All commands run under one lock, so every command and script is atomic as in Redis.
+ * Latency and faults can be injected at runtime. Starts in a few milliseconds on an ephemeral port.
+ */
+public class EmbeddedRedisServer implements AutoCloseable {
+
+    private record Entry(String value, long expireAt) {
+        boolean isLive(long now) {
+            return expireAt == 0 || expireAt - now > 0;
+        }
+    }
+
+    /**
+     * Error reply
+     */
+    private record Error(String message) {
+    }
+
+    private final ServerSocket serverSocket;
+    private final Thread acceptor;
+    private final Set<Socket> clients = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger connections = new AtomicInteger();
+
+    /**
+     * Keys and values as ISO-8859-1 strings, guarded by this
+     */
+    private final Map<String, Entry> data = new HashMap<>();
+
+    /**
+     * Script texts by SHA1 and compiled scripts by text, guarded by this
+     */
+    private final Map<String, String> scripts = new HashMap<>();
+    private final Map<String, LuaValue> compiled = new HashMap<>();
+
+    /**
+     * Lua state shared by all scripts, guarded by this
+     */
+    private final Globals lua = newLua();
+
+    /**
+     * Subscriptions to channels and patterns
+     */
+    private final Map<String, List<Client>> channels = new ConcurrentHashMap<>();
+    private final Map<String, List<Client>> patterns = new ConcurrentHashMap<>();
+
+    private volatile long latencyNanos = 0;
+    private volatile long jitterNanos = 0;
+    private volatile double faultRate = 0;
+    private final AtomicInteger failNext = new AtomicInteger();
+
+    private volatile boolean closed = false;
+
+    private EmbeddedRedisServer(ServerSocket serverSocket) {
+        this.serverSocket = serverSocket;
+        this.acceptor = new Thread(this::accept, "embedded-redis-acceptor");
+        this.acceptor.setDaemon(true);
+        this.acceptor.start();
+    }
+
+    /**
+     * Start a server on an ephemeral port of the loopback interface
+     *
+     * @return The running server
+     * @throws IOException If the port cannot be bound
+     */
+    public static EmbeddedRedisServer start() throws IOException {
+        return new EmbeddedRedisServer(new ServerSocket(0, 50, InetAddress.getLoopbackAddress()));
+    }
+
+    public String getHost() {
+        return serverSocket.getInetAddress().getHostAddress();
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Delay every reply by {@code latency} plus a uniformly distributed {@code jitter}
+     */
+    public void setLatency(Duration latency, Duration jitter) {
+        this.latencyNanos = latency.toNanos();
+        this.jitterNanos = jitter.toNanos();
+    }
+
+    /**
+     * Fail this share of the commands with an error reply, from 0 to 1
+     */
+    public void setFaultRate(double faultRate) {
+        this.faultRate = faultRate;
+    }
+
+    /**
+     * Fail the next {@code count} commands with an error reply
+     */
+    public void failNext(int count) {
+        failNext.set(count);
+    }
+
+    /**
+     * Remove all keys
+     */
+    public synchronized void flushAll() {
+        data.clear();
+    }
+
+    /**
+     * Number of live keys
+     */
+    public synchronized int size() {
+        long now = now();
+        data.values().removeIf(entry -> !entry.isLive(now));
+        return data.size();
+    }
+
+    /**
+     * Number of connections accepted since the start
+     */
+    public int getConnections() {
+        return connections.get();
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        serverSocket.close();
+        for (Socket client : clients) {
+            client.close();
+        }
+    }
+
+    private void accept() {
+        while (!closed) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                clients.add(socket);
+                connections.incrementAndGet();
+                Thread thread = new Thread(() -> serve(socket), "embedded-redis-client");
+                thread.setDaemon(true);
+                thread.start();
+            } catch (IOException e) {
+                // Closed
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (socket) {
+            Client client = new Client(new BufferedOutputStream(socket.getOutputStream()));
+            InputStream in = new BufferedInputStream(socket.getInputStream());
+            while (!closed) {
+                List<String> command = readCommand(in);
+                delay();
+                Object reply = execute(client, command);
+                client.write(reply);
+            }
+        } catch (EOFException e) {
+            // Client disconnected
+        } catch (IOException e) {
+            // Connection reset or server closed
+        } finally {
+            clients.remove(socket);
+            channels.values().forEach(list -> list.removeIf(c -> c.socketClosed));
+            patterns.values().forEach(list -> list.removeIf(c -> c.socketClosed));
+        }
+    }
+
+    private void delay() {
+        long delay = latencyNanos + (jitterNanos > 0 ? ThreadLocalRandom.current().nextLong(jitterNanos) : 0);
+        if (delay > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private Object execute(Client client, List<String> command) {
+        if (command.isEmpty()) {
+            return new Error("ERR empty command");
+        }
+        String name = command.get(0).toUpperCase(Locale.ROOT);
+        List<String> args = command.subList(1, command.size());
+        if (isConnectionCommand(name)) {
+            return connectionCommand(client, name, args);
+        }
+        if (failNext.get() > 0 && failNext.getAndDecrement() > 0
+                || faultRate > 0 && ThreadLocalRandom.current().nextDouble() < faultRate) {
+            return new Error("ERR injected fault");
+        }
+        try {
+            synchronized (this) {
+                return dataCommand(name, args);
+            }
+        } catch (IndexOutOfBoundsException | NumberFormatException e) {
+            return new Error("ERR wrong number or type of arguments for '" + name.toLowerCase(Locale.ROOT) + "' command");
+        }
+    }
+
+    private static boolean isConnectionCommand(String name) {
+        return switch (name) {
+            case "HELLO", "CLIENT", "PING", "SELECT", "AUTH", "QUIT", "SUBSCRIBE", "PSUBSCRIBE", "UNSUBSCRIBE",
+                 "PUNSUBSCRIBE", "PUBLISH" -> true;
+            default -> false;
+        };
+    }
+
+    private Object connectionCommand(Client client, String name, List<String> args) {
+        switch (name) {
+            case "HELLO":
+                // Only RESP2, Lettuce falls back on this error
+                return new Error("ERR unknown command 'HELLO'");
+            case "PING":
+                return args.isEmpty() ? "+PONG" : args.get(0).getBytes(StandardCharsets.ISO_8859_1);
+            case "CLIENT", "SELECT", "AUTH", "QUIT":
+                return "+OK";
+            case "SUBSCRIBE", "PSUBSCRIBE": {
+                Map<String, List<Client>> target = name.equals("SUBSCRIBE") ? channels : patterns;
+                List<Object> replies = new ArrayList<>();
+                for (String channel : args) {
+                    target.computeIfAbsent(channel, c -> new CopyOnWriteArrayList<>()).add(client);
+                    client.subscriptions++;
+                    replies.add(List.of(bulk(name.toLowerCase(Locale.ROOT)), bulk(channel), (long) client.subscriptions));
+                }
+                return new Multi(replies);
+            }
+            case "UNSUBSCRIBE", "PUNSUBSCRIBE": {
+                Map<String, List<Client>> target = name.equals("UNSUBSCRIBE") ? channels : patterns;
+                List<String> names = args.isEmpty() ? new ArrayList<>(target.keySet()) : args;
+                List<Object> replies = new ArrayList<>();
+                for (String channel : names) {
+                    List<Client> subscribers = target.get(channel);
+                    if (subscribers != null && subscribers.remove(client)) {
+                        client.subscriptions--;
+                    }
+                    replies.add(List.of(bulk(name.toLowerCase(Locale.ROOT)), bulk(channel), (long) client.subscriptions));
+                }
+                return replies.isEmpty() ? List.of(bulk(name.toLowerCase(Locale.ROOT)), null, 0L) : new Multi(replies);
+            }
+            case "PUBLISH":
+                return publish(args.get(0), args.get(1));
+            default:
+                return new Error("ERR unknown command '" + name + "'");
+        }
+    }
+
+    /**
+     * Deliver a message to the subscribers of the channel and of matching patterns
+     *
+     * @return The number of receivers
+     */
+    public long publish(String channel, String message) {
+        long receivers = 0;
+        for (Client subscriber : channels.getOrDefault(channel, List.of())) {
+            subscriber.push(List.of(bulk("message"), bulk(channel), bulk(message)));
+            receivers++;
+        }
+        for (Map.Entry<String, List<Client>> pattern : patterns.entrySet()) {
+            if (!glob(pattern.getKey()).matcher(channel).matches()) {
+                continue;
+            }
+            for (Client subscriber : pattern.getValue()) {
+                subscriber.push(List.of(bulk("pmessage"), bulk(pattern.getKey()), bulk(channel), bulk(message)));
+                receivers++;
+            }
+        }
+        return receivers;
+    }
+
+    private Object dataCommand(String name, List<String> args) {
+        switch (name) {
+            case "GET":
+                return bulk(get(args.get(0)));
+            case "SET":
+                return setCommand(args);
+            case "SETEX":
+                set(args.get(0), args.get(2), TimeUnit.SECONDS.toMillis(Long.parseLong(args.get(1))));
+                return "+OK";
+            case "PSETEX":
+                set(args.get(0), args.get(2), Long.parseLong(args.get(1)));
+                return "+OK";
+            case "SETNX":
+                return setIfAbsent(args.get(0), args.get(1), 0) ? 1L : 0L;
+            case "DEL": {
+                long n = 0;
+                for (String key : args) {
+                    n += del(key);
+                }
+                return n;
+            }
+            case "EXISTS": {
+                long n = 0;
+                for (String key : args) {
+                    n += get(key) != null ? 1 : 0;
+                }
+                return n;
+            }
+            case "EXPIRE":
+                return pexpire(args.get(0), TimeUnit.SECONDS.toMillis(Long.parseLong(args.get(1))));
+            case "PEXPIRE":
+                return pexpire(args.get(0), Long.parseLong(args.get(1)));
+            case "PTTL":
+                return pttl(args.get(0));
+            case "TTL": {
+                long pttl = pttl(args.get(0));
+                return pttl < 0 ? pttl : (pttl + 500) / 1000;
+            }
+            case "INCR": {
+                String value = get(args.get(0));
+                long next = (value == null ? 0 : Long.parseLong(value)) + 1;
+                Entry entry = data.get(args.get(0));
+                data.put(args.get(0), new Entry(String.valueOf(next), entry == null ? 0 : entry.expireAt()));
+                return next;
+            }
+            case "TIME": {
+                Instant now = Instant.now();
+                return List.of(bulk(String.valueOf(now.getEpochSecond())), bulk(String.valueOf(now.getNano() / 1000)));
+            }
+            case "SCAN":
+                return scan(args);
+            case "FLUSHALL", "FLUSHDB":
+                data.clear();
+                return "+OK";
+            case "EVAL":
+                return eval(args.get(0), args.subList(1, args.size()));
+            case "EVALSHA": {
+                String text = scripts.get(args.get(0).toLowerCase(Locale.ROOT));
+                if (text == null) {
+                    return new Error("NOSCRIPT No matching script. Please use EVAL.");
+                }
+                return eval(text, args.subList(1, args.size()));
+            }
+            case "SCRIPT":
+                return scriptCommand(args);
+            default:
+                return new Error("ERR unknown command '" + name.toLowerCase(Locale.ROOT) + "'");
+        }
+    }
+
+    private Object setCommand(List<String> args) {
+        String key = args.get(0);
+        String value = args.get(1);
+        boolean nx = false;
+        boolean xx = false;
+        long ttl = 0;
+        for (int i = 2; i < args.size(); i++) {
+            switch (args.get(i).toUpperCase(Locale.ROOT)) {
+                case "NX" -> nx = true;
+                case "XX" -> xx = true;
+                case "PX" -> ttl = Long.parseLong(args.get(++i));
+                case "EX" -> ttl = TimeUnit.SECONDS.toMillis(Long.parseLong(args.get(++i)));
+                default -> {
+                    return new Error("ERR syntax error");
+                }
+            }
+        }
+        boolean exists = get(key) != null;
+        if (nx && exists || xx && !exists) {
+            return bulk((String) null);
+        }
+        set(key, value, ttl);
+        return "+OK";
+    }
+
+    private Object scan(List<String> args) {
+        Pattern match = null;
+        for (int i = 1; i < args.size(); i++) {
+            if (args.get(i).equalsIgnoreCase("MATCH")) {
+                match = glob(args.get(++i));
+            } else {
+                // COUNT and TYPE, the whole keyspace is returned in one page
+                i++;
+            }
+        }
+        long now = now();
+        List<Object> keys = new ArrayList<>();
+        for (Map.Entry<String, Entry> entry : data.entrySet()) {
+            if (entry.getValue().isLive(now) && (match == null || match.matcher(entry.getKey()).matches())) {
+                keys.add(bulk(entry.getKey()));
+            }
+        }
+        return List.of(bulk("0"), keys);
+    }
+
+    private Object scriptCommand(List<String> args) {
+        switch (args.get(0).toUpperCase(Locale.ROOT)) {
+            case "LOAD": {
+                String text = args.get(1);
+                String sha = sha1(text);
+                scripts.put(sha, text);
+                return bulk(sha);
+            }
+            case "EXISTS": {
+                List<Object> exists = new ArrayList<>();
+                for (String sha : args.subList(1, args.size())) {
+                    exists.add(scripts.containsKey(sha.toLowerCase(Locale.ROOT)) ? 1L : 0L);
+                }
+                return exists;
+            }
+            case "FLUSH":
+                scripts.clear();
+                compiled.clear();
+                return "+OK";
+            default:
+                return new Error("ERR unknown subcommand of 'script'");
+        }
+    }
+
+    // Lua scripting, called with the monitor held
+
+    private Object eval(String text, List<String> rest) {
+        int numKeys = Integer.parseInt(rest.get(0));
+        scripts.putIfAbsent(sha1(text), text);
+        try {
+            LuaValue script = compiled.computeIfAbsent(text, t -> lua.load(t, "@user_script"));
+            lua.set("KEYS", toLuaArray(rest.subList(1, 1 + numKeys)));
+            lua.set("ARGV", toLuaArray(rest.subList(1 + numKeys, rest.size())));
+            return toReply(script.call());
+        } catch (LuaError e) {
+            return new Error("ERR Error running script: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Lua state with the libraries of the Redis sandbox and the {@code redis} table
+     */
+    private Globals newLua() {
+        Globals globals = new Globals();
+        globals.load(new BaseLib());
+        globals.load(new PackageLib());
+        globals.load(new StringLib());
+        globals.load(new TableLib());
+        globals.load(new JseMathLib());
+        LoadState.install(globals);
+        LuaC.install(globals);
+        LuaValue string = globals.get("string");
+        string.set("format", new IntegerFormat(string.get("format")));
+
+        LuaTable redis = new LuaTable();
+        redis.set("call", new RedisCall(false));
+        redis.set("pcall", new RedisCall(true));
+        globals.set("redis", redis);
+        return globals;
+    }
+
+    /**
+     * {@code redis.call} and {@code redis.pcall}: raise or return an error reply
+     */
+    private class RedisCall extends VarArgFunction {
+        private final boolean protectedCall;
+
+        private RedisCall(boolean protectedCall) {
+            this.protectedCall = protectedCall;
+        }
+
+        @Override
+        public Varargs invoke(Varargs args) {
+            List<String> command = new ArrayList<>(args.narg());
+            for (int i = 1; i <= args.narg(); i++) {
+                command.add(fromLua(args.arg(i)));
+            }
+            String name = command.get(0).toUpperCase(Locale.ROOT);
+            Object reply;
+            try {
+                reply = dataCommand(name, command.subList(1, command.size()));
+            } catch (IndexOutOfBoundsException | NumberFormatException e) {
+                reply = new Error("ERR wrong number or type of arguments for '" + name.toLowerCase(Locale.ROOT) + "' command");
+            }
+            if (reply instanceof Error error && !protectedCall) {
+                throw new LuaError(error.message());
+            }
+            return toLua(reply);
+        }
+    }
+
+    /**
+     * {@code string.format} formatting {@code %d} as a 64-bit integer, as the Lua of Redis does; luaj truncates it to 32 bits
+     */
+    private static class IntegerFormat extends VarArgFunction {
+        private final LuaValue format;
+
+        private IntegerFormat(LuaValue format) {
+            this.format = format;
+        }
+
+        @Override
+        public Varargs invoke(Varargs args) {
+            String pattern = args.checkjstring(1);
+            StringBuilder rewritten = new StringBuilder();
+            LuaValue[] values = new LuaValue[args.narg()];
+            values[0] = LuaValue.NIL;
+            int arg = 2;
+            for (int i = 0; i < pattern.length(); i++) {
+                char c = pattern.charAt(i);
+                rewritten.append(c);
+                if (c != '%') {
+                    continue;
+                }
+                int conversion = i + 1;
+                while (conversion < pattern.length() && "-+ #0123456789.".indexOf(pattern.charAt(conversion)) >= 0) {
+                    conversion++;
+                }
+                if (conversion >= pattern.length()) {
+                    break;
+                }
+                char type = pattern.charAt(conversion);
+                rewritten.append(pattern, i + 1, conversion);
+                if (type == '%') {
+                    rewritten.append('%');
+                } else if ((type == 'd' || type == 'i') && arg <= args.narg()) {
+                    rewritten.append('s');
+                    values[arg - 1] = LuaValue.valueOf(String.valueOf((long) args.checkdouble(arg)));
+                    arg++;
+                } else {
+                    rewritten.append(type);
+                    if (arg <= args.narg()) {
+                        values[arg - 1] = args.arg(arg);
+                        arg++;
+                    }
+                }
+                i = conversion;
+            }
+            for (; arg <= args.narg(); arg++) {
+                values[arg - 1] = args.arg(arg);
+            }
+            values[0] = LuaValue.valueOf(rewritten.toString());
+            return format.invoke(LuaValue.varargsOf(values));
+        }
+    }
+
+    private static LuaTable toLuaArray(List<String> values) {
+        LuaTable table = new LuaTable();
+        for (int i = 0; i < values.size(); i++) {
+            table.set(i + 1, LuaValue.valueOf(values.get(i).getBytes(StandardCharsets.ISO_8859_1)));
+        }
+        return table;
+    }
+
+    /**
+     * Command argument from a Lua value, numbers as Redis formats them
+     */
+    private static String fromLua(LuaValue value) {
+        if (value.type() == LuaValue.TSTRING) {
+            LuaString string = value.checkstring();
+            byte[] bytes = new byte[string.length()];
+            string.copyInto(0, bytes, 0, bytes.length);
+            return new String(bytes, StandardCharsets.ISO_8859_1);
+        }
+        if (value.type() == LuaValue.TNUMBER) {
+            double n = value.todouble();
+            return n == Math.rint(n) && Math.abs(n) < 1e17 ? String.valueOf((long) n) : String.valueOf(n);
+        }
+        throw new LuaError("Lua redis() command arguments must be strings or integers");
+    }
+
+    /**
+     * Redis reply to Lua: integers to numbers, bulk strings to strings, nil to false,
+     * status and error replies to tables with an ok or err field, arrays to tables
+     */
+    private static LuaValue toLua(Object reply) {
+        if (reply == null) {
+            return LuaValue.FALSE;
+        }
+        if (reply instanceof Long n) {
+            return LuaValue.valueOf(n);
+        }
+        if (reply instanceof byte[] bytes) {
+            return LuaValue.valueOf(bytes);
+        }
+        if (reply instanceof String status) {
+            LuaTable table = new LuaTable();
+            table.set("ok", status.substring(1));
+            return table;
+        }
+        if (reply instanceof Error error) {
+            LuaTable table = new LuaTable();
+            table.set("err", error.message());
+            return table;
+        }
+        LuaTable table = new LuaTable();
+        List<?> list = (List<?>) reply;
+        for (int i = 0; i < list.size(); i++) {
+            table.set(i + 1, toLua(list.get(i)));
+        }
+        return table;
+    }
+
+    /**
+     * Lua value to a Redis reply: numbers truncated to integers, true to 1, false and nil to nil,
+     * tables with an ok or err field to status and error replies, other tables to arrays up to the first nil
+     */
+    private static Object toReply(LuaValue value) {
+        switch (value.type()) {
+            case LuaValue.TNUMBER:
+                return (long) value.todouble();
+            case LuaValue.TSTRING:
+                return bulk(fromLua(value));
+            case LuaValue.TBOOLEAN:
+                return value.toboolean() ? 1L : null;
+            case LuaValue.TTABLE: {
+                LuaValue ok = value.get("ok");
+                if (ok.isstring()) {
+                    return "+" + ok.tojstring();
+                }
+                LuaValue err = value.get("err");
+                if (err.isstring()) {
+                    return new Error(err.tojstring());
+                }
+                List<Object> list = new ArrayList<>();
+                for (int i = 1; !value.get(i).isnil(); i++) {
+                    list.add(toReply(value.get(i)));
+                }
+                return list;
+            }
+            default:
+                return null;
+        }
+    }
+
+    // Data operations, called with the monitor held
+
+    private String get(String key) {
+        Entry entry = data.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (!entry.isLive(now())) {
+            data.remove(key);
+            return null;
+        }
+        return entry.value();
+    }
+
+    private void set(String key, String value, long ttlMillis) {
+        data.put(key, new Entry(value, ttlMillis > 0 ? now() + ttlMillis : 0));
+    }
+
+    private boolean setIfAbsent(String key, String value, long ttlMillis) {
+        if (get(key) != null) {
+            return false;
+        }
+        set(key, value, ttlMillis);
+        return true;
+    }
+
+    private long del(String key) {
+        return get(key) != null && data.remove(key) != null ? 1 : 0;
+    }
+
+    private long pexpire(String key, long ttlMillis) {
+        String value = get(key);
+        if (value == null) {
+            return 0;
+        }
+        if (ttlMillis <= 0) {
+            data.remove(key);
+        } else {
+            data.put(key, new Entry(value, now() + ttlMillis));
+        }
+        return 1;
+    }
+
+    private long pttl(String key) {
+        if (get(key) == null) {
+            return -2;
+        }
+        Entry entry = data.get(key);
+        return entry.expireAt() == 0 ? -1 : Math.max(entry.expireAt() - now(), 0);
+    }
+
+    private static long now() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+    }
+
+    // RESP
+
+    private static List<String> readCommand(InputStream in) throws IOException {
+        int type = in.read();
+        if (type < 0) {
+            throw new EOFException();
+        }
+        if (type != '*') {
+            throw new IOException("Inline commands are not supported");
+        }
+        int count = Integer.parseInt(readLine(in));
+        List<String> command = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            if (in.read() != '$') {
+                throw new IOException("Expected a bulk string");
+            }
+            int length = Integer.parseInt(readLine(in));
+            byte[] bytes = in.readNBytes(length);
+            if (bytes.length < length) {
+                throw new EOFException();
+            }
+            readLine(in);
+            command.add(new String(bytes, StandardCharsets.ISO_8859_1));
+        }
+        return command;
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        for (int b = in.read(); b != '\r'; b = in.read()) {
+            if (b < 0) {
+                throw new EOFException();
+            }
+            line.write(b);
+        }
+        in.read();
+        return line.toString(StandardCharsets.ISO_8859_1);
+    }
+
+    private static byte[] bulk(String value) {
+        return value == null ? null : value.getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    private static Pattern glob(String glob) {
+        StringBuilder regex = new StringBuilder();
+        for (char c : glob.toCharArray()) {
+            switch (c) {
+                case '*' -> regex.append(".*");
+                case '?' -> regex.append('.');
+                default -> regex.append(Pattern.quote(String.valueOf(c)));
+            }
+        }
+        return Pattern.compile(regex.toString(), Pattern.DOTALL);
+    }
+
+    /**
+     * Several replies written one after another, e.g. one per channel of a SUBSCRIBE
+     */
+    private record Multi(List<Object> replies) {
+    }
+
+    private static class Client {
+        private final OutputStream out;
+        private int subscriptions = 0;
+        private volatile boolean socketClosed = false;
+
+        private Client(OutputStream out) {
+            this.out = out;
+        }
+
+        private synchronized void write(Object reply) throws IOException {
+            if (reply instanceof Multi multi) {
+                for (Object r : multi.replies()) {
+                    encode(r);
+                }
+            } else {
+                encode(reply);
+            }
+            out.flush();
+        }
+
+        private void push(Object message) {
+            try {
+                write(message);
+            } catch (IOException e) {
+                socketClosed = true;
+            }
+        }
+
+        private void encode(Object reply) throws IOException {
+            if (reply == null) {
+                out.write("$-1\r\n".getBytes(StandardCharsets.US_ASCII));
+            } else if (reply instanceof String status) {
+                out.write((status + "\r\n").getBytes(StandardCharsets.ISO_8859_1));
+            } else if (reply instanceof Error error) {
+                out.write(("-" + error.message() + "\r\n").getBytes(StandardCharsets.ISO_8859_1));
+            } else if (reply instanceof Long n) {
+                out.write((":" + n + "\r\n").getBytes(StandardCharsets.US_ASCII));
+            } else if (reply instanceof byte[] bytes) {
+                out.write(("$" + bytes.length + "\r\n").getBytes(StandardCharsets.US_ASCII));
+                out.write(bytes);
+                out.write("\r\n".getBytes(StandardCharsets.US_ASCII));
+            } else if (reply instanceof List<?> list) {
+                out.write(("*" + list.size() + "\r\n").getBytes(StandardCharsets.US_ASCII));
+                for (Object element : list) {
+                    encode(element);
+                }
+            } else {
+                throw new IllegalArgumentException("Unsupported reply " + reply);
+            }
+        }
+    }
+
+    private static String sha1(String text) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-1").digest(text.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
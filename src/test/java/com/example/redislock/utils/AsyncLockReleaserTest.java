@@ -0,0 +1,87 @@
+package com.example.redislock.utils;
+
+import com.example.redislock.support.EmbeddedRedisServer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * {@link AsyncLockReleaser} against the {@link EmbeddedRedisServer}
+ */
+class AsyncLockReleaserTest {
+
+    private static final Duration TTL = Duration.ofSeconds(30);
+
+    private static EmbeddedRedisServer server;
+    private static LettuceConnectionFactory connectionFactory;
+    private static StringRedisTemplate strRedis;
+
+    @BeforeAll
+    static void startServer() throws Exception {
+        server = EmbeddedRedisServer.start();
+        connectionFactory = new LettuceConnectionFactory(new RedisStandaloneConfiguration(server.getHost(), server.getPort()));
+        connectionFactory.afterPropertiesSet();
+        connectionFactory.start();
+        strRedis = new StringRedisTemplate(connectionFactory);
+    }
+
+    @AfterAll
+    static void stopServer() throws Exception {
+        connectionFactory.destroy();
+        server.close();
+    }
+
+    @BeforeEach
+    void reset() {
+        server.flushAll();
+    }
+
+    @Test
+    void releaseAfterTheLeaseIsReportedAsExpired() throws Exception {
+        RedisLock lock = new RedisLock("a", strRedis);
+        AsyncLockReleaser releaser = new AsyncLockReleaser(16, 8);
+        try {
+            assertTrue(lock.lock("order:1", TTL));
+            CompletableFuture<AsyncLockReleaser.Outcome> outcome = new CompletableFuture<>();
+            releaser.release(lock, "order:1", Duration.ZERO, outcome::complete);
+
+            assertEquals(AsyncLockReleaser.Outcome.EXPIRED, outcome.get(5, TimeUnit.SECONDS));
+        } finally {
+            releaser.close();
+        }
+    }
+
+    @Test
+    void stopSendsTheQueuedReleases() throws Exception {
+        RedisLock lock = new RedisLock("a", strRedis);
+        AsyncLockReleaser releaser = new AsyncLockReleaser(16, 8);
+        releaser.start();
+        assertTrue(lock.lock("order:1", TTL));
+        assertTrue(lock.lock("order:2", TTL));
+
+        CompletableFuture<AsyncLockReleaser.Outcome> first = new CompletableFuture<>();
+        CompletableFuture<AsyncLockReleaser.Outcome> second = new CompletableFuture<>();
+        releaser.release(lock, "order:1", TTL, first::complete);
+        releaser.release(lock, "order:2", TTL, second::complete);
+        releaser.stop();
+
+        assertFalse(releaser.isRunning());
+        assertEquals(0, releaser.pending());
+        assertEquals(AsyncLockReleaser.Outcome.RELEASED, first.getNow(null));
+        assertEquals(AsyncLockReleaser.Outcome.RELEASED, second.getNow(null));
+        assertFalse(lock.isHeld("order:1"));
+        assertFalse(lock.isHeld("order:2"));
+    }
+}
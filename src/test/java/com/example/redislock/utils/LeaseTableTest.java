@@ -0,0 +1,54 @@
+package com.example.redislock.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * {@link LeaseTable} forgets the leases that ran out without an unlock
+ */
+class LeaseTableTest {
+
+    private static final Duration TTL = Duration.ofSeconds(30);
+
+    @Test
+    void expiredLeaseIsForgottenWhenChecked() throws InterruptedException {
+        LeaseTable leases = new LeaseTable();
+        leases.confirm("order:1", System.nanoTime(), Duration.ofMillis(20));
+        TimeUnit.MILLISECONDS.sleep(30);
+
+        assertFalse(leases.isHeld("order:1"));
+        assertEquals(0, leases.size());
+    }
+
+    @Test
+    void keysExcludeExpiredLeases() throws InterruptedException {
+        LeaseTable leases = new LeaseTable();
+        leases.confirm("order:1", System.nanoTime(), Duration.ofMillis(20));
+        leases.confirm("order:2", System.nanoTime(), TTL);
+        TimeUnit.MILLISECONDS.sleep(30);
+
+        assertEquals(Set.of("order:2"), leases.keys());
+        assertEquals(1, leases.size());
+    }
+
+    @Test
+    void renewalsSweepExpiredLeases() throws InterruptedException {
+        LeaseTable leases = new LeaseTable(Duration.ofMillis(10));
+        for (int i = 0; i < 100; i++) {
+            leases.confirm("order:" + i, System.nanoTime(), Duration.ofMillis(20));
+        }
+        TimeUnit.MILLISECONDS.sleep(30);
+
+        // Renewing one lease sweeps the ones never unlocked
+        leases.confirm("order:0", System.nanoTime(), TTL);
+        assertEquals(1, leases.size());
+        assertTrue(leases.isHeld("order:0"));
+    }
+}
@@ -0,0 +1,99 @@
+package com.example.redislock.utils;
+
+import com.example.redislock.support.EmbeddedRedisServer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * {@link LockCommandBatcher} against the {@link EmbeddedRedisServer}
+ */
+class LockCommandBatcherTest {
+
+    private static EmbeddedRedisServer server;
+    private static LettuceConnectionFactory connectionFactory;
+    private static StringRedisTemplate strRedis;
+
+    @BeforeAll
+    static void startServer() throws Exception {
+        server = EmbeddedRedisServer.start();
+        connectionFactory = new LettuceConnectionFactory(new RedisStandaloneConfiguration(server.getHost(), server.getPort()));
+        connectionFactory.afterPropertiesSet();
+        connectionFactory.start();
+        strRedis = new StringRedisTemplate(connectionFactory);
+    }
+
+    @AfterAll
+    static void stopServer() throws Exception {
+        connectionFactory.destroy();
+        server.close();
+    }
+
+    @Test
+    void queuedCommandsGetTheirReplies() throws Exception {
+        LockCommandBatcher batcher = new LockCommandBatcher(strRedis, 16, Duration.ofMillis(1), 64);
+        try {
+            List<CompletableFuture<Long>> replies = new ArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                replies.add(batcher.submit(connection -> connection.stringCommands().incr(bytes("batched"))));
+            }
+            for (int i = 0; i < 10; i++) {
+                assertEquals(i + 1, replies.get(i).get(5, TimeUnit.SECONDS));
+            }
+        } finally {
+            batcher.close();
+        }
+    }
+
+    @Test
+    void commandsSubmittedWhileClosingComplete() throws Exception {
+        for (int round = 0; round < 20; round++) {
+            LockCommandBatcher batcher = new LockCommandBatcher(strRedis, 4, Duration.ZERO, 64);
+            List<CompletableFuture<Long>> replies = new ArrayList<>();
+            Thread submitter = new Thread(() -> {
+                for (int i = 0; i < 50; i++) {
+                    replies.add(batcher.submit(connection -> connection.stringCommands().incr(bytes("closing"))));
+                }
+            });
+            submitter.start();
+            batcher.close();
+            submitter.join();
+
+            for (CompletableFuture<Long> reply : replies) {
+                try {
+                    reply.get(5, TimeUnit.SECONDS);
+                } catch (Exception e) {
+                    // Failed because the batcher closed, but never left pending
+                    assertTrue(reply.isCompletedExceptionally(), e.toString());
+                }
+            }
+        }
+    }
+
+    @Test
+    void closedBatcherSendsDirectly() throws Exception {
+        LockCommandBatcher batcher = new LockCommandBatcher(strRedis, 16, Duration.ZERO, 64);
+        batcher.close();
+
+        CompletableFuture<Long> reply = batcher.submit(connection -> connection.stringCommands().incr(bytes("direct")));
+        assertTrue(reply.isDone());
+        assertEquals(1L, reply.join());
+    }
+
+    private static byte[] bytes(String key) {
+        return key.getBytes(StandardCharsets.UTF_8);
+    }
+}
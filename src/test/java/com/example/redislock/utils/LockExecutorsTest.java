@@ -0,0 +1,62 @@
+package com.example.redislock.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * {@link LockExecutors} drains the locked jobs before the locks are released on shutdown
+ */
+class LockExecutorsTest {
+
+    @Test
+    void runningJobsAreAwaited() throws InterruptedException {
+        try (LockExecutors executors = new LockExecutors(false, false, 1)) {
+            ExecutorService jobs = executors.newJobExecutor("job-", 1);
+            CountDownLatch started = new CountDownLatch(1);
+            AtomicBoolean done = new AtomicBoolean();
+            jobs.execute(() -> {
+                started.countDown();
+                sleep(100);
+                done.set(true);
+            });
+            started.await();
+
+            assertTrue(executors.awaitJobs(Duration.ofSeconds(5)));
+            assertTrue(done.get());
+        }
+    }
+
+    @Test
+    void jobOutlivingTheBudgetIsReported() throws InterruptedException {
+        try (LockExecutors executors = new LockExecutors(false, false, 1)) {
+            ExecutorService jobs = executors.newJobExecutor("job-", 1);
+            CountDownLatch release = new CountDownLatch(1);
+            jobs.execute(() -> {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+
+            assertFalse(executors.awaitJobs(Duration.ofMillis(50)));
+            release.countDown();
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            TimeUnit.MILLISECONDS.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
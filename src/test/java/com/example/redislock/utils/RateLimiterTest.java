@@ -0,0 +1,111 @@
+package com.example.redislock.utils;
+
+import com.example.redislock.support.EmbeddedRedisServer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * {@link RateLimiter} against the {@link EmbeddedRedisServer}, the GCRA script runs on its Lua interpreter
+ */
+class RateLimiterTest {
+
+    private static EmbeddedRedisServer server;
+    private static LettuceConnectionFactory connectionFactory;
+    private static StringRedisTemplate strRedis;
+
+    @BeforeAll
+    static void startServer() throws Exception {
+        server = EmbeddedRedisServer.start();
+        connectionFactory = new LettuceConnectionFactory(new RedisStandaloneConfiguration(server.getHost(), server.getPort()));
+        connectionFactory.afterPropertiesSet();
+        connectionFactory.start();
+        strRedis = new StringRedisTemplate(connectionFactory);
+    }
+
+    @AfterAll
+    static void stopServer() throws Exception {
+        connectionFactory.destroy();
+        server.close();
+    }
+
+    @BeforeEach
+    void reset() {
+        server.flushAll();
+        server.failNext(0);
+    }
+
+    @Test
+    void burstIsAllowedThenLimitedUntilTheNextPermit() {
+        RateLimiter limiter = new RateLimiter(strRedis, null, "rate-limit:");
+
+        for (int i = 0; i < 3; i++) {
+            assertTrue(limiter.tryAcquire("c-1", 1, Duration.ofMinutes(1), 3, 1).isAllowed());
+        }
+        RateLimitResult limited = limiter.tryAcquire("c-1", 1, Duration.ofMinutes(1), 3, 1);
+        assertEquals(RateLimitResult.Status.LIMITED, limited.status());
+        // The fourth permit is due one interval after the first
+        assertTrue(limited.retryAfter().compareTo(Duration.ofSeconds(59)) > 0);
+        assertTrue(limited.retryAfter().compareTo(Duration.ofMinutes(1)) <= 0);
+
+        // One prefix, the configured one
+        assertEquals(1, server.size());
+        assertTrue(strRedis.hasKey("rate-limit:c-1"));
+    }
+
+    @Test
+    void permitsComeBackAtTheRate() throws InterruptedException {
+        RateLimiter limiter = new RateLimiter(strRedis, null, "rate-limit:");
+
+        assertTrue(limiter.tryAcquire("c-1", 20, Duration.ofSeconds(1), 1, 1).isAllowed());
+        RateLimitResult limited = limiter.tryAcquire("c-1", 20, Duration.ofSeconds(1), 1, 1);
+        assertEquals(RateLimitResult.Status.LIMITED, limited.status());
+        assertTrue(limited.retryAfter().compareTo(Duration.ofMillis(50)) <= 0);
+
+        TimeUnit.MILLISECONDS.sleep(limited.retryAfter().toMillis() + 10);
+        assertTrue(limiter.tryAcquire("c-1", 20, Duration.ofSeconds(1), 1, 1).isAllowed());
+    }
+
+    @Test
+    void localBatchServesPermitsWithoutRoundTrips() {
+        RateLimiter limiter = new RateLimiter(strRedis, null, "rate-limit:");
+
+        assertTrue(limiter.tryAcquire("c-1", 1, Duration.ofMinutes(1), 10, 5).isAllowed());
+        // The other four permits of the batch are used locally, Redis is not asked
+        server.failNext(100);
+        for (int i = 0; i < 4; i++) {
+            assertTrue(limiter.tryAcquire("c-1", 1, Duration.ofMinutes(1), 10, 5).isAllowed());
+        }
+        assertEquals(RateLimitResult.Status.ERROR, limiter.tryAcquire("c-1", 1, Duration.ofMinutes(1), 10, 5).status());
+        server.failNext(0);
+
+        // The batch was counted in Redis, another node gets the rest of the burst only
+        RateLimiter other = new RateLimiter(strRedis, null, "rate-limit:");
+        for (int i = 0; i < 5; i++) {
+            assertTrue(other.tryAcquire("c-1", 1, Duration.ofMinutes(1), 10, 1).isAllowed());
+        }
+        assertEquals(RateLimitResult.Status.LIMITED, other.tryAcquire("c-1", 1, Duration.ofMinutes(1), 10, 1).status());
+    }
+
+    @Test
+    void localFallbackLimitsInTheJvm() {
+        RateLimiter limiter = new RateLimiter(strRedis, null, "rate-limit:");
+
+        assertTrue(limiter.tryAcquireLocally("c-1", 1, Duration.ofMinutes(1), 2).isAllowed());
+        assertTrue(limiter.tryAcquireLocally("c-1", 1, Duration.ofMinutes(1), 2).isAllowed());
+        RateLimitResult limited = limiter.tryAcquireLocally("c-1", 1, Duration.ofMinutes(1), 2);
+        assertEquals(RateLimitResult.Status.LIMITED, limited.status());
+        assertTrue(limited.retryAfter().compareTo(Duration.ofSeconds(59)) > 0);
+        assertEquals(0, server.size());
+    }
+}
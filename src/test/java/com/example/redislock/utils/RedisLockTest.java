@@ -0,0 +1,277 @@
+package com.example.redislock.utils;
+
+import com.example.redislock.support.EmbeddedRedisServer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * {@link RedisLock} against the {@link EmbeddedRedisServer}, no external Redis needed
+ */
+class RedisLockTest {
+
+    private static final Duration TTL = Duration.ofSeconds(30);
+
+    private static EmbeddedRedisServer server;
+    private static LettuceConnectionFactory connectionFactory;
+    private static StringRedisTemplate strRedis;
+
+    @BeforeAll
+    static void startServer() throws Exception {
+        server = EmbeddedRedisServer.start();
+        connectionFactory = new LettuceConnectionFactory(new RedisStandaloneConfiguration(server.getHost(), server.getPort()));
+        connectionFactory.afterPropertiesSet();
+        connectionFactory.start();
+        strRedis = new StringRedisTemplate(connectionFactory);
+    }
+
+    @AfterAll
+    static void stopServer() throws Exception {
+        connectionFactory.destroy();
+        server.close();
+    }
+
+    @BeforeEach
+    void reset() {
+        server.flushAll();
+        server.setLatency(Duration.ZERO, Duration.ZERO);
+        server.setFaultRate(0);
+        server.failNext(0);
+    }
+
+    @Test
+    void lockExcludesOtherNodes() {
+        RedisLock a = new RedisLock("a", strRedis);
+        RedisLock b = new RedisLock("b", strRedis);
+
+        assertTrue(a.lock("order:1", TTL));
+        assertFalse(b.lock("order:1", TTL));
+        assertFalse(b.unlock("order:1"));
+        assertTrue(a.isOwner("order:1"));
+        assertTrue(a.isHeld("order:1"));
+
+        assertTrue(a.unlock("order:1"));
+        assertFalse(a.isHeld("order:1"));
+        assertTrue(b.lock("order:1", TTL));
+    }
+
+    @Test
+    void expiredLockIsFree() throws InterruptedException {
+        RedisLock a = new RedisLock("a", strRedis);
+        RedisLock b = new RedisLock("b", strRedis);
+
+        assertTrue(a.lock("order:1", Duration.ofMillis(50)));
+        TimeUnit.MILLISECONDS.sleep(100);
+
+        assertFalse(a.isHeld("order:1"));
+        assertTrue(b.lock("order:1", TTL));
+        assertFalse(a.refreshLockExpire("order:1", TTL));
+    }
+
+    @Test
+    void refreshExtendsOwnLockOnly() {
+        RedisLock a = new RedisLock("a", strRedis);
+        RedisLock b = new RedisLock("b", strRedis);
+
+        assertTrue(a.lock("order:1", Duration.ofSeconds(1)));
+        assertFalse(b.refreshLockExpire("order:1", TTL));
+        assertTrue(a.refreshLockExpire("order:1", TTL));
+
+        Long pttl = strRedis.getExpire("order:1", TimeUnit.MILLISECONDS);
+        assertTrue(pttl != null && pttl > Duration.ofSeconds(1).toMillis());
+        assertTrue(a.remainingLease("order:1").compareTo(Duration.ofSeconds(1)) > 0);
+    }
+
+    @Test
+    void tryAcquireReportsHolderAndRemainingTtl() {
+        RedisLock a = new RedisLock("a", strRedis);
+        RedisLock b = new RedisLock("b", strRedis);
+
+        assertTrue(a.tryAcquire("order:1", TTL).isAcquired());
+        assertTrue(a.isHeld("order:1"));
+
+        AcquireResult contended = b.tryAcquire("order:1", TTL);
+        assertEquals(AcquireResult.Status.CONTENDED, contended.status());
+        assertEquals("a", contended.holder());
+        assertTrue(contended.remaining().compareTo(Duration.ZERO) > 0);
+        assertTrue(contended.remaining().compareTo(TTL) <= 0);
+
+        server.failNext(1);
+        assertEquals(AcquireResult.Status.ERROR, b.tryAcquire("order:2", TTL).status());
+    }
+
+    @Test
+    void batchedCommandsReturnTheDirectReplies() throws InterruptedException {
+        LockCommandBatcher batcher = new LockCommandBatcher(strRedis, 16, Duration.ofMillis(1), 64);
+        try {
+            RedisLock a = new RedisLock("a", strRedis, batcher);
+            RedisLock b = new RedisLock("b", strRedis, batcher);
+
+            assertTrue(a.tryAcquire("order:1", TTL).isAcquired());
+            assertTrue(a.isOwner("order:1"));
+            assertFalse(b.isOwner("order:1"));
+
+            AcquireResult contended = b.tryAcquire("order:1", TTL);
+            assertEquals(AcquireResult.Status.CONTENDED, contended.status());
+            assertEquals("a", contended.holder());
+            assertTrue(contended.remaining().compareTo(Duration.ZERO) > 0);
+        } finally {
+            batcher.close();
+        }
+    }
+
+    @Test
+    void dirtyMarkKeepsLockForOneMoreRun() {
+        RedisLock a = new RedisLock("a", strRedis);
+        RedisLock b = new RedisLock("b", strRedis);
+
+        assertTrue(a.lockOrMarkDirty("job", TTL));
+        assertFalse(b.lockOrMarkDirty("job", TTL));
+        assertFalse(b.lockOrMarkDirty("job", TTL));
+
+        // Two triggers collapse into one follow-up run
+        assertTrue(a.unlockUnlessDirty("job", TTL));
+        assertFalse(a.unlockUnlessDirty("job", TTL));
+        assertTrue(b.lockOrMarkDirty("job", TTL));
+    }
+
+    @Test
+    void releaseAllFreesOwnLocks() {
+        RedisLock a = new RedisLock("a", strRedis);
+        RedisLock b = new RedisLock("b", strRedis);
+
+        assertTrue(a.lock("k1", TTL));
+        assertTrue(a.lock("k2", TTL));
+        assertTrue(b.lock("k3", TTL));
+
+        assertEquals(2, a.releaseAll());
+        assertNull(strRedis.opsForValue().get("k1"));
+        assertNull(strRedis.opsForValue().get("k2"));
+        assertTrue(b.isOwner("k3"));
+    }
+
+    @Test
+    void unlockAllReleasesOwnLocksInOnePipeline() {
+        RedisLock a = new RedisLock("a", strRedis);
+        RedisLock b = new RedisLock("b", strRedis);
+
+        assertTrue(a.lock("k1", TTL));
+        assertTrue(a.lock("k2", TTL));
+        assertTrue(b.lock("k3", TTL));
+
+        assertEquals(Set.of("k1", "k2"), a.unlockAll(List.of("k1", "k2", "k3")));
+        assertFalse(a.isHeld("k1"));
+        assertNull(strRedis.opsForValue().get("k2"));
+        assertTrue(b.isOwner("k3"));
+    }
+
+    @Test
+    void unlockAllRetriesOnlyTheUnknownScripts() {
+        RedisLock a = new RedisLock("a", strRedis);
+
+        assertTrue(a.lock("k1", TTL));
+        assertTrue(a.lock("k2", TTL));
+        assertTrue(a.lock("k3", TTL));
+        strRedis.execute((RedisCallback<Object>) connection -> {
+            connection.scriptingCommands().scriptFlush();
+            return null;
+        });
+
+        // k1 fails for another reason and is not sent again, k2 and k3 are retried with EVAL
+        server.failNext(1);
+        assertEquals(Set.of("k2", "k3"), a.unlockAll(List.of("k1", "k2", "k3")));
+        assertTrue(a.isOwner("k1"));
+        assertNull(strRedis.opsForValue().get("k2"));
+        assertNull(strRedis.opsForValue().get("k3"));
+    }
+
+    @Test
+    void sessionLocksAreFreedWithTheSession() {
+        LockSession session = new LockSession(strRedis, "lock-session:", Duration.ofSeconds(10), Duration.ofSeconds(3));
+        RedisLock a = new RedisLock("a", strRedis, null, null, session);
+        RedisLock b = new RedisLock("b", strRedis);
+
+        assertTrue(a.lock("order:1", TTL));
+        assertFalse(b.lock("order:1", TTL));
+
+        session.close();
+        // The key is still there until it expires, but a session lock ignores holders of dead sessions
+        LockSession other = new LockSession(strRedis, "lock-session:", Duration.ofSeconds(10), Duration.ofSeconds(3));
+        try {
+            assertTrue(new RedisLock("c", strRedis, null, null, other).lock("order:1", TTL));
+        } finally {
+            other.close();
+        }
+    }
+
+    @Test
+    void faultsOpenTheCircuitBreaker() {
+        LockCircuitBreaker breaker = new LockCircuitBreaker(10, 5, 50, Duration.ofSeconds(1), Duration.ofMinutes(1), 1);
+        RedisLock a = new RedisLock("a", strRedis, null, breaker);
+
+        server.failNext(5);
+        for (int i = 0; i < 5; i++) {
+            assertFalse(a.lock("order:" + i, TTL));
+        }
+
+        assertFalse(a.isAvailable());
+        assertEquals(LockCircuitBreaker.State.OPEN, breaker.getState());
+        // Rejected without a round trip
+        assertFalse(a.lock("order:9", TTL));
+        assertNull(strRedis.opsForValue().get("order:9"));
+    }
+
+    @Test
+    void slowServerCountsAsFailure() {
+        LockCircuitBreaker breaker = new LockCircuitBreaker(2, 2, 50, Duration.ofMillis(20), Duration.ofMinutes(1), 1);
+        RedisLock a = new RedisLock("a", strRedis, null, breaker);
+
+        server.setLatency(Duration.ofMillis(40), Duration.ZERO);
+        a.lock("k1", TTL);
+        a.lock("k2", TTL);
+
+        assertFalse(a.isAvailable());
+    }
+
+    @Test
+    void publishReachesSubscribers() throws Exception {
+        BlockingQueue<String> received = new LinkedBlockingQueue<>();
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        container.addMessageListener((message, pattern) -> received.add(new String(message.getBody(), StandardCharsets.UTF_8)),
+                new ChannelTopic("lock-released"));
+        container.afterPropertiesSet();
+        container.start();
+        try {
+            // The subscription may still be on its way, publish until it is in place
+            String message = null;
+            for (int i = 0; i < 50 && message == null; i++) {
+                strRedis.convertAndSend("lock-released", "order:1");
+                message = received.poll(100, TimeUnit.MILLISECONDS);
+            }
+            assertEquals("order:1", message);
+        } finally {
+            container.destroy();
+        }
+    }
+}
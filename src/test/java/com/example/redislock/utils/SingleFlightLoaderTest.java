@@ -0,0 +1,159 @@
+package com.example.redislock.utils;
+
+import com.example.redislock.support.EmbeddedRedisServer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * {@link SingleFlightLoader} against the {@link EmbeddedRedisServer}, two loaders with their own locks act as two nodes
+ */
+class SingleFlightLoaderTest {
+
+    private static final Duration TTL = Duration.ofSeconds(30);
+    private static final Duration TIMEOUT = Duration.ofSeconds(5);
+
+    private static EmbeddedRedisServer server;
+    private static LettuceConnectionFactory connectionFactory;
+    private static StringRedisTemplate strRedis;
+    private static RedisMessageListenerContainer container;
+
+    @BeforeAll
+    static void startServer() throws Exception {
+        server = EmbeddedRedisServer.start();
+        connectionFactory = new LettuceConnectionFactory(new RedisStandaloneConfiguration(server.getHost(), server.getPort()));
+        connectionFactory.afterPropertiesSet();
+        connectionFactory.start();
+        strRedis = new StringRedisTemplate(connectionFactory);
+        container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        container.afterPropertiesSet();
+        container.start();
+    }
+
+    @AfterAll
+    static void stopServer() throws Exception {
+        container.destroy();
+        connectionFactory.destroy();
+        server.close();
+    }
+
+    @BeforeEach
+    void reset() {
+        server.flushAll();
+    }
+
+    @Test
+    void storedValueIsReturnedWithoutLoading() throws Throwable {
+        SingleFlightLoader loader = loader("a");
+        AtomicInteger loads = new AtomicInteger();
+
+        assertEquals("v1", loader.load("summary:1", TTL, TIMEOUT, () -> "v" + loads.incrementAndGet()));
+        assertEquals("v1", strRedis.opsForValue().get("single-flight:value:summary:1"));
+        assertEquals("v1", loader("b").load("summary:1", TTL, TIMEOUT, () -> "v" + loads.incrementAndGet()));
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void concurrentCallersShareOneLoad() throws Exception {
+        SingleFlightLoader loader = loader("a");
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+
+        List<CompletableFuture<String>> callers = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            callers.add(CompletableFuture.supplyAsync(() -> load(loader, "summary:1", () -> {
+                loads.incrementAndGet();
+                release.await();
+                return "v";
+            })));
+        }
+        while (loader.inFlight() == 0) {
+            TimeUnit.MILLISECONDS.sleep(5);
+        }
+        TimeUnit.MILLISECONDS.sleep(50);
+        release.countDown();
+
+        for (CompletableFuture<String> caller : callers) {
+            assertEquals("v", caller.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(1, loads.get());
+        assertEquals(0, loader.inFlight());
+    }
+
+    @Test
+    void otherNodeWaitsForTheLoadingNode() throws Exception {
+        SingleFlightLoader a = loader("a");
+        SingleFlightLoader b = loader("b");
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger loads = new AtomicInteger();
+
+        CompletableFuture<String> first = CompletableFuture.supplyAsync(() -> load(a, "summary:1", () -> {
+            loads.incrementAndGet();
+            loading.countDown();
+            release.await();
+            return "from-a";
+        }));
+        assertTrue(loading.await(5, TimeUnit.SECONDS));
+        CompletableFuture<String> second = CompletableFuture.supplyAsync(() -> load(b, "summary:1", () -> {
+            loads.incrementAndGet();
+            return "from-b";
+        }));
+        TimeUnit.MILLISECONDS.sleep(100);
+        release.countDown();
+
+        assertEquals("from-a", first.get(5, TimeUnit.SECONDS));
+        assertEquals("from-a", second.get(5, TimeUnit.SECONDS));
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void failedLoadLetsTheNextCallerLoad() throws Throwable {
+        SingleFlightLoader loader = loader("a");
+
+        assertThrows(IllegalStateException.class, () -> loader.load("summary:1", TTL, TIMEOUT, () -> {
+            throw new IllegalStateException("load failed");
+        }));
+        assertEquals("v", loader("b").load("summary:1", TTL, TIMEOUT, () -> "v"));
+    }
+
+    @Test
+    void disabledLoaderRunsEveryLoad() throws Throwable {
+        AtomicInteger loads = new AtomicInteger();
+
+        SingleFlightLoader.DISABLED.load("summary:1", TTL, TIMEOUT, () -> "v" + loads.incrementAndGet());
+        SingleFlightLoader.DISABLED.load("summary:1", TTL, TIMEOUT, () -> "v" + loads.incrementAndGet());
+        assertEquals(2, loads.get());
+    }
+
+    private static SingleFlightLoader loader(String nodeId) {
+        return new SingleFlightLoader(new RedisLock(nodeId, strRedis), strRedis, container,
+                "single-flight:", "single-flight-loaded", Duration.ofMillis(50));
+    }
+
+    private static String load(SingleFlightLoader loader, String key, SingleFlightLoader.Loader load) {
+        try {
+            return loader.load(key, TTL, TIMEOUT, load);
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.example.redislock.utils;
+
+import com.example.redislock.support.EmbeddedRedisServer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * {@link VersionStore} against the {@link EmbeddedRedisServer}
+ */
+class VersionStoreTest {
+
+    private static final Duration EXPIRE = Duration.ofSeconds(30);
+
+    private static EmbeddedRedisServer server;
+    private static LettuceConnectionFactory connectionFactory;
+    private static StringRedisTemplate strRedis;
+
+    @BeforeAll
+    static void startServer() throws Exception {
+        server = EmbeddedRedisServer.start();
+        connectionFactory = new LettuceConnectionFactory(new RedisStandaloneConfiguration(server.getHost(), server.getPort()));
+        connectionFactory.afterPropertiesSet();
+        connectionFactory.start();
+        strRedis = new StringRedisTemplate(connectionFactory);
+    }
+
+    @AfterAll
+    static void stopServer() throws Exception {
+        connectionFactory.destroy();
+        server.close();
+    }
+
+    @BeforeEach
+    void reset() {
+        server.flushAll();
+        server.failNext(0);
+    }
+
+    @Test
+    void compareAndIncrementCommitsOnlyTheVersionRead() {
+        VersionStore versions = new VersionStore(strRedis, null);
+
+        assertEquals(0, versions.read("order:1:version"));
+        assertEquals(1, versions.compareAndIncrement("order:1:version", 0, EXPIRE));
+        assertEquals(1, versions.read("order:1:version"));
+
+        // A second request that read version 0 lost the race
+        assertEquals(VersionStore.CONFLICT, versions.compareAndIncrement("order:1:version", 0, EXPIRE));
+        assertEquals(2, versions.compareAndIncrement("order:1:version", 1, EXPIRE));
+
+        Long pttl = strRedis.getExpire("order:1:version", TimeUnit.MILLISECONDS);
+        assertTrue(pttl != null && pttl > 0 && pttl <= EXPIRE.toMillis());
+    }
+
+    @Test
+    void failuresAreReportedAsFailed() {
+        VersionStore versions = new VersionStore(strRedis, null);
+
+        server.failNext(1);
+        assertEquals(VersionStore.FAILED, versions.read("order:1:version"));
+        server.failNext(1);
+        assertEquals(VersionStore.FAILED, versions.compareAndIncrement("order:1:version", 0, EXPIRE));
+
+        assertEquals(VersionStore.FAILED, VersionStore.DISABLED.read("order:1:version"));
+        assertEquals(VersionStore.FAILED, VersionStore.DISABLED.compareAndIncrement("order:1:version", 0, EXPIRE));
+    }
+}
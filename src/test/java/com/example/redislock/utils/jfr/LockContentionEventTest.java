@@ -0,0 +1,84 @@
+package com.example.redislock.utils.jfr;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.aspectj.lang.Signature;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * {@link LockContentionEvent} formats its source only while it is recorded
+ */
+class LockContentionEventTest {
+
+    @Test
+    void sourceIsNotFormattedWhileDisabled() {
+        CountingSignature signature = new CountingSignature();
+
+        LockContentionEvent.emit("order:1", "@RedisLock", signature);
+        assertEquals(0, signature.formatted.get());
+    }
+
+    @Test
+    void sourceIsRecordedWhileEnabled(@TempDir Path dir) throws Exception {
+        CountingSignature signature = new CountingSignature();
+        Path file = dir.resolve("contention.jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable(LockContentionEvent.class);
+            recording.start();
+            LockContentionEvent.emit("order:1", "@RedisLock", signature);
+            recording.stop();
+            recording.dump(file);
+        }
+
+        assertEquals(1, signature.formatted.get());
+        List<RecordedEvent> events = RecordingFile.readAllEvents(file).stream()
+                .filter(event -> event.getEventType().getName().equals("com.example.redislock.LockContention"))
+                .toList();
+        assertEquals(1, events.size());
+        assertEquals("order:1", events.get(0).getString("key"));
+        assertEquals("@RedisLock OrderService.submit(..)", events.get(0).getString("source"));
+    }
+
+    private static class CountingSignature implements Signature {
+        private final AtomicInteger formatted = new AtomicInteger();
+
+        @Override
+        public String toShortString() {
+            formatted.incrementAndGet();
+            return "OrderService.submit(..)";
+        }
+
+        @Override
+        public String toLongString() {
+            return toShortString();
+        }
+
+        @Override
+        public String getName() {
+            return "submit";
+        }
+
+        @Override
+        public int getModifiers() {
+            return 0;
+        }
+
+        @Override
+        public Class getDeclaringType() {
+            return Object.class;
+        }
+
+        @Override
+        public String getDeclaringTypeName() {
+            return "OrderService";
+        }
+    }
+}